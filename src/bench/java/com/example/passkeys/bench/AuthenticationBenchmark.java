@@ -0,0 +1,85 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.bench.BenchFixtures.ReplayableChallengeStore;
+import com.example.passkeys.bench.SoftwareAuthenticator.Algorithm;
+import com.example.passkeys.dto.AuthenticationFinishResponse;
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.WebAuthnService;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 认证仪式基准：WebAuthnService.finishAuthentication（签名校验 + 签名计数更新）
+ *
+ * 断言在准备阶段由软件认证器预先生成，挑战存储取出后不删除，
+ * 因此测量的是服务器端完整的 finish 路径，不包含客户端签名的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    private static final int POOL_SIZE = 64;
+
+    @Param({"ES256", "RS256", "EdDSA"})
+    public Algorithm algorithm;
+
+    private WebAuthnService service;
+    private final String[] requestIds = new String[POOL_SIZE];
+    private final PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>[] credentials =
+            newCredentialArray();
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        UserRepository repository = BenchFixtures.newRepository();
+        service = BenchFixtures.newService(repository,
+                new ReplayableChallengeStore<>(), new ReplayableChallengeStore<>());
+
+        SoftwareAuthenticator authenticator =
+                SoftwareAuthenticator.generate(algorithm, BenchFixtures.RP_ID, BenchFixtures.ORIGIN);
+        String userHandle = Ceremonies.register(service, authenticator, "bench-user");
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Map<String, Object> started = service.startAuthentication("");
+            AssertionRequest request = (AssertionRequest) started.get("request");
+            requestIds[i] = (String) started.get("requestId");
+            credentials[i] = PublicKeyCredential.parseAssertionResponseJson(authenticator.assertion(
+                    request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url(),
+                    userHandle));
+        }
+        // 确认预先生成的断言可以通过校验
+        finishAuthentication();
+    }
+
+    @Benchmark
+    public AuthenticationFinishResponse finishAuthentication() throws Exception {
+        int i = next++ & (POOL_SIZE - 1);
+        return service.finishAuthentication(credentials[i], requestIds[i]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>[]
+            newCredentialArray() {
+        return new PublicKeyCredential[POOL_SIZE];
+    }
+}
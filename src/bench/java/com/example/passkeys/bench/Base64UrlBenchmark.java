@@ -0,0 +1,74 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.Base64UrlUtils;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.exception.Base64UrlException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64UrlUtils 基准（与 Yubico ByteArray 的编解码对比）
+ *
+ * size=32 对应凭证 ID / 用户句柄，size=300 对应 RSA 公钥的 COSE 编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64UrlBenchmark {
+
+    private static final String APK_KEY_HASH =
+            "35:9E:3B:E6:83:AC:EC:78:AF:A6:23:C7:76:13:E1:0C:3F:D2:27:B6:49:2D:4E:5D:E5:B8:B9:01:AD:51:61:94";
+
+    @Param({"32", "300"})
+    public int size;
+
+    private byte[] bytes;
+    private String encoded;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new SecureRandom().nextBytes(bytes);
+        encoded = Base64UrlUtils.encode(bytes);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64UrlUtils.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base64UrlUtils.decode(encoded);
+    }
+
+    @Benchmark
+    public String byteArrayEncode() {
+        return new ByteArray(bytes).getBase64Url();
+    }
+
+    @Benchmark
+    public ByteArray byteArrayDecode() throws Base64UrlException {
+        return ByteArray.fromBase64Url(encoded);
+    }
+
+    @Benchmark
+    public String apkKeyHashToBase64Url() {
+        return Base64UrlUtils.apkKeyHashToBase64Url(APK_KEY_HASH);
+    }
+}
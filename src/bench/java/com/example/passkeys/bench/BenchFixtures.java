@@ -0,0 +1,145 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.Base64UrlUtils;
+import com.example.passkeys.SecureRandomPool;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.VerificationExecutor;
+import com.example.passkeys.service.WebAuthnService;
+import com.example.passkeys.store.ChallengeStore;
+import com.example.passkeys.store.SealedAssertionTokens;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试共用的组件（不启动 Spring 容器，直接组装服务）
+ */
+public final class BenchFixtures {
+
+    public static final String RP_ID = "localhost";
+
+    /**
+     * 与 WebAuthnConfig 中的 Android 应用来源一致
+     */
+    public static final String ORIGIN = "android:apk-key-hash:" + Base64UrlUtils.apkKeyHashToBase64Url(
+            "35:9E:3B:E6:83:AC:EC:78:AF:A6:23:C7:76:13:E1:0C:3F:D2:27:B6:49:2D:4E:5D:E5:B8:B9:01:AD:51:61:94");
+
+    private BenchFixtures() {
+    }
+
+    /**
+     * 内存模式的用户仓库（不启用持久化）
+     */
+    public static UserRepository newRepository() {
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        return new UserRepository(none.getBeanProvider(CredentialLog.class),
+                none.getBeanProvider(SignCountWriteBehind.class));
+    }
+
+    /**
+     * 与 WebAuthnConfig 相同设置的依赖方
+     */
+    public static RelyingParty newRelyingParty(CredentialRepository credentialRepository) {
+        return RelyingParty.builder()
+                .identity(RelyingPartyIdentity.builder().id(RP_ID).name("Passkeys Bench").build())
+                .credentialRepository(credentialRepository)
+                .origins(Set.of(ORIGIN))
+                .allowOriginPort(true)
+                .allowOriginSubdomain(true)
+                .build();
+    }
+
+    public static WebAuthnService newService(UserRepository userRepository,
+                                             ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests,
+                                             ChallengeStore<AssertionRequest> assertionRequests) {
+        return newService(userRepository, userRepository, registrationRequests, assertionRequests);
+    }
+
+    /**
+     * @param credentialRepository 依赖方查询凭证用的仓库（可以与保存凭证的仓库不同）
+     */
+    public static WebAuthnService newService(UserRepository userRepository,
+                                             CredentialRepository credentialRepository,
+                                             ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests,
+                                             ChallengeStore<AssertionRequest> assertionRequests) {
+        PasskeysMetrics metrics = newMetrics();
+        return new WebAuthnService(newRelyingParty(credentialRepository), userRepository,
+                registrationRequests, assertionRequests,
+                new StaticListableBeanFactory().getBeanProvider(SealedAssertionTokens.class),
+                metrics, new SecureRandomPool(0, 600), new VerificationExecutor(metrics, 0, 64, 10_000));
+    }
+
+    public static PasskeysMetrics newMetrics() {
+        return new PasskeysMetrics(new SimpleMeterRegistry());
+    }
+
+    /**
+     * 查不到任何已注册凭证 ID 的仓库视图
+     *
+     * 同一个预先生成的注册响应可以反复提交，不会因为凭证 ID 已注册而被依赖方拒绝
+     */
+    public static CredentialRepository withoutRegisteredIds(UserRepository userRepository) {
+        return new CredentialRepository() {
+            @Override
+            public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+                return userRepository.getCredentialIdsForUsername(username);
+            }
+
+            @Override
+            public Optional<ByteArray> getUserHandleForUsername(String username) {
+                return userRepository.getUserHandleForUsername(username);
+            }
+
+            @Override
+            public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+                return userRepository.getUsernameForUserHandle(userHandle);
+            }
+
+            @Override
+            public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+                return userRepository.lookup(credentialId, userHandle);
+            }
+
+            @Override
+            public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+                return Collections.emptySet();
+            }
+        };
+    }
+
+    /**
+     * 取出后不删除的挑战存储
+     *
+     * 同一个预先生成的响应可以反复提交，基准测试只测量校验路径，不受挑战一次性使用的限制
+     */
+    public static final class ReplayableChallengeStore<V> implements ChallengeStore<V> {
+
+        private final Map<String, V> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public void put(String key, V value, long ttlMillis) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public Optional<V> consume(String key) {
+            return Optional.ofNullable(entries.get(key));
+        }
+    }
+}
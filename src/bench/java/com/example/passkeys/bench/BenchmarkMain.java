@@ -0,0 +1,28 @@
+package com.example.passkeys.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH 入口（参数与 JMH 命令行相同）
+ *
+ * 未指定 -prof 时默认附带 GC 分析，输出每次操作的分配字节数（gc.alloc.rate.norm）和分配速率
+ * 例：mvn -Pbench test-compile exec:exec -Djmh.args="AuthenticationBenchmark -p algorithm=ES256"
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (commandLine.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.service.WebAuthnService;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+
+/**
+ * 在服务上直接完成仪式（准备基准数据用）
+ */
+final class Ceremonies {
+
+    private Ceremonies() {
+    }
+
+    /**
+     * 为用户注册软件认证器
+     *
+     * @return 用户句柄（Base64Url）
+     */
+    static String register(WebAuthnService service, SoftwareAuthenticator authenticator,
+                           String username) throws Exception {
+        PublicKeyCredentialCreationOptions options = service.startRegistration(username, username);
+        service.finishRegistration(PublicKeyCredential.parseRegistrationResponseJson(
+                authenticator.register(options.getChallenge().getBase64Url())), username);
+        return options.getUser().getId().getBase64Url();
+    }
+}
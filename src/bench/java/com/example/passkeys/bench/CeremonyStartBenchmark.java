@@ -0,0 +1,65 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.WebAuthnService;
+import com.example.passkeys.store.ExpiringChallengeStore;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 仪式开始阶段基准：生成挑战和选项并写入挑战存储
+ *
+ * 使用与生产相同的内存挑战存储；存储写满后按容量淘汰，与持续高负载时的状态一致。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CeremonyStartBenchmark {
+
+    private ExpiringChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests;
+    private ExpiringChallengeStore<AssertionRequest> assertionRequests;
+    private WebAuthnService service;
+
+    @Setup
+    public void setUp() throws Exception {
+        UserRepository repository = BenchFixtures.newRepository();
+        registrationRequests = new ExpiringChallengeStore<>("registration", 100000, 1000, 128);
+        assertionRequests = new ExpiringChallengeStore<>("assertion", 100000, 1000, 128);
+        service = BenchFixtures.newService(repository, registrationRequests, assertionRequests);
+        // 已有用户添加新通行密钥的路径（不创建用户）
+        service.startRegistration("bench-user", "bench-user");
+    }
+
+    @TearDown
+    public void tearDown() {
+        registrationRequests.close();
+        assertionRequests.close();
+    }
+
+    @Benchmark
+    public PublicKeyCredentialCreationOptions startRegistration() {
+        return service.startRegistration("bench-user", "bench-user");
+    }
+
+    @Benchmark
+    public Map<String, Object> startAuthentication() {
+        return service.startAuthentication("");
+    }
+}
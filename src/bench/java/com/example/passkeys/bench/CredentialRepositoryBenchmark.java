@@ -0,0 +1,107 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.repository.UserRepository;
+import com.yubico.webauthn.RegisteredCredential;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 凭证仓库查询基准：RelyingParty 在认证时调用的 CredentialRepository 方法
+ *
+ * 查询的 key 在准备阶段随机生成并按随机顺序访问，避免只命中 CPU 缓存中的少数条目
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CredentialRepositoryBenchmark {
+
+    private static final int KEY_COUNT = 1 << 14;
+
+    @Param({"10000", "200000"})
+    public int users;
+
+    private UserRepository repository;
+    private final ByteArray[] credentialIds = new ByteArray[KEY_COUNT];
+    private final ByteArray[] userHandles = new ByteArray[KEY_COUNT];
+    private final String[] usernames = new String[KEY_COUNT];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        repository = BenchFixtures.newRepository();
+        ByteArray publicKey = new ByteArray(SoftwareAuthenticator.generate(
+                SoftwareAuthenticator.Algorithm.ES256, BenchFixtures.RP_ID, BenchFixtures.ORIGIN).getCosePublicKey());
+        SecureRandom random = new SecureRandom();
+        long now = System.currentTimeMillis();
+
+        ByteArray[] allCredentialIds = new ByteArray[users];
+        ByteArray[] allUserHandles = new ByteArray[users];
+        for (int i = 0; i < users; i++) {
+            ByteArray userHandle = new ByteArray(randomBytes(random, 32));
+            ByteArray credentialId = new ByteArray(randomBytes(random, 32));
+            repository.saveUser(new User(userHandle.getBase64Url(), "user-" + i, "User " + i));
+            repository.saveAuthenticator(new Authenticator(credentialId, userHandle, publicKey, 0,
+                    null, now, now, null));
+            allCredentialIds[i] = credentialId;
+            allUserHandles[i] = userHandle;
+        }
+        for (int i = 0; i < KEY_COUNT; i++) {
+            int user = random.nextInt(users);
+            // 查询用的 key 是新的实例（与请求中解析出的 ByteArray 一样，不与仓库中的实例共享）
+            credentialIds[i] = new ByteArray(allCredentialIds[user].getBytes());
+            userHandles[i] = new ByteArray(allUserHandles[user].getBytes());
+            usernames[i] = "user-" + user;
+        }
+    }
+
+    @Benchmark
+    public Optional<RegisteredCredential> lookup() {
+        int i = next++ & (KEY_COUNT - 1);
+        return repository.lookup(credentialIds[i], userHandles[i]);
+    }
+
+    @Benchmark
+    public Set<RegisteredCredential> lookupAll() {
+        int i = next++ & (KEY_COUNT - 1);
+        return repository.lookupAll(credentialIds[i]);
+    }
+
+    @Benchmark
+    public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername() {
+        int i = next++ & (KEY_COUNT - 1);
+        return repository.getCredentialIdsForUsername(usernames[i]);
+    }
+
+    @Benchmark
+    public Optional<String> getUsernameForUserHandle() {
+        int i = next++ & (KEY_COUNT - 1);
+        return repository.getUsernameForUserHandle(userHandles[i]);
+    }
+
+    private static byte[] randomBytes(SecureRandom random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
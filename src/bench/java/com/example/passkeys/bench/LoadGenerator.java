@@ -0,0 +1,433 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.bench.SoftwareAuthenticator.Algorithm;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端压测工具：内置软件平台认证器，对运行中的服务器完成真实的注册 / 认证仪式
+ *
+ * 按固定到达速率（开环）发起仪式，延迟从“计划发起时刻”开始计算：服务器变慢时排队的请求
+ * 也计入延迟（修正协同遗漏，coordinated omission），同时输出未修正的服务时间作为对比。
+ * --rate 0 时为闭环模式（每个并发尽快发起下一次仪式），用于测量最大吞吐。
+ *
+ * 用法（参数均可省略）：
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.example.passkeys.bench.LoadGenerator \
+ *     -Dbench.args="--url http://localhost:8080 --scenario authenticate --users 1000 --rate 500 \
+ *                   --concurrency 64 --duration 60 --warmup 10 --algorithm ES256"
+ *
+ * --scenario：authenticate（预先注册 --users 个用户，只压测认证）、register（每次注册新用户）、
+ *             mixed（按 --register-ratio 的比例混合）
+ * --origin：客户端来源，默认与服务器 WebAuthnConfig 中的 Android 应用一致
+ * --rp-id：依赖方 ID，默认取服务器注册选项中的 rp.id
+ * --hdr-out：把修正后的完整延迟分布写入文件（HdrHistogram 格式，可用 HistogramLogAnalyzer 作图）
+ * --virtual-threads true：每次仪式一个虚拟线程，用于维持上万个进行中的仪式；
+ *                         闭环模式下并发数仍由 --concurrency 决定，开环模式下不限制并发
+ * --format：请求/响应体格式，json（默认）或 cbor（字节字段为 CBOR 字节串）；结果中输出每次仪式的平均请求/响应体字节数
+ * --server-pid：服务器进程号（须在同一台机器上），结果中输出测量期间服务器每次仪式消耗的 CPU 时间
+ */
+public final class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99, 100};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9", "p99.99", "max"};
+
+    private enum Ceremony {
+        AUTHENTICATE, REGISTER
+    }
+
+    /**
+     * 已注册的虚拟用户
+     */
+    private static final class VirtualUser {
+        final SoftwareAuthenticator authenticator;
+        final String userHandle;
+
+        VirtualUser(SoftwareAuthenticator authenticator, String userHandle) {
+            this.authenticator = authenticator;
+            this.userHandle = userHandle;
+        }
+    }
+
+    /**
+     * 每种仪式的统计
+     */
+    private static final class Stats {
+        // 从计划发起时刻开始（修正协同遗漏）
+        final Recorder corrected = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        // 从实际发起时刻开始（服务时间）
+        final Recorder uncorrected = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        final LongAdder errors = new LongAdder();
+        final Histogram totalCorrected = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        final Histogram totalUncorrected = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        // 成功仪式的请求体 / 响应体总字节数
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+    }
+
+    /**
+     * 一次仪式中收发的请求体 / 响应体字节数
+     */
+    private static final class Payload {
+        long sent;
+        long received;
+    }
+
+    private final WireFormat format;
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+    private final Algorithm algorithm;
+    private final String origin;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger usernameSeq = new AtomicInteger();
+    private final Map<String, LongAdder> errorTypes = new ConcurrentHashMap<>();
+
+    private SoftwareAuthenticator baseAuthenticator;
+    private String rpId;
+
+    private LoadGenerator(String baseUrl, Duration requestTimeout, Algorithm algorithm, String origin, String rpId,
+                          WireFormat format) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.algorithm = algorithm;
+        this.origin = origin;
+        this.rpId = rpId;
+        this.format = format;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String scenario = options.getOrDefault("scenario", "authenticate");
+        int users = Integer.parseInt(options.getOrDefault("users", "100"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "100"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+        double registerRatio = "register".equals(scenario) ? 1.0
+                : "mixed".equals(scenario) ? Double.parseDouble(options.getOrDefault("register-ratio", "0.1"))
+                : 0.0;
+
+        LoadGenerator generator = new LoadGenerator(
+                options.getOrDefault("url", "http://localhost:8080"),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout", "10"))),
+                Algorithm.valueOf(options.getOrDefault("algorithm", "ES256")),
+                options.getOrDefault("origin", BenchFixtures.ORIGIN),
+                options.get("rp-id"),
+                WireFormat.valueOf(options.getOrDefault("format", "json").toUpperCase()));
+
+        List<VirtualUser> population = registerRatio < 1.0 ? generator.prepareUsers(users) : List.of();
+        boolean virtualThreads = Boolean.parseBoolean(options.getOrDefault("virtual-threads", "false"));
+        Optional<ProcessHandle> server = options.containsKey("server-pid")
+                ? ProcessHandle.of(Long.parseLong(options.get("server-pid"))) : Optional.empty();
+        generator.run(population, registerRatio, rate, concurrency, virtualThreads,
+                TimeUnit.SECONDS.toNanos(warmupSeconds), TimeUnit.SECONDS.toNanos(durationSeconds),
+                options.get("hdr-out"), server);
+    }
+
+    // ========== 压测 ==========
+
+    /**
+     * 准备阶段：顺序注册用户（不计入结果）
+     */
+    private List<VirtualUser> prepareUsers(int count) throws Exception {
+        System.out.printf("注册 %d 个虚拟用户（%s）...%n", count, algorithm);
+        List<VirtualUser> population = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            population.add(register(new Payload()));
+        }
+        System.out.printf("准备完成 - rpId: %s, origin: %s%n", rpId, origin);
+        return population;
+    }
+
+    private void run(List<VirtualUser> population, double registerRatio, double rate, int concurrency,
+                     boolean virtualThreads, long warmupNanos, long durationNanos, String hdrOut,
+                     Optional<ProcessHandle> server) throws Exception {
+        Map<Ceremony, Stats> stats = new HashMap<>();
+        for (Ceremony ceremony : Ceremony.values()) {
+            stats.put(ceremony, new Stats());
+        }
+        ExecutorService workers = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(concurrency);
+        LongAdder completed = new LongAdder();
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        // 预热结束时记录一次服务器累计 CPU 时间
+        CompletableFuture<Optional<Duration>> cpuAtMeasureStart = CompletableFuture.supplyAsync(
+                () -> server.flatMap(process -> process.info().totalCpuDuration()),
+                CompletableFuture.delayedExecutor(warmupNanos, TimeUnit.NANOSECONDS));
+
+        System.out.printf("开始压测（%s） - 目标速率: %s, 并发: %s, 预热: %ds, 时长: %ds%n", format.getMediaType(),
+                rate > 0 ? rate + "/s" : "不限（闭环）",
+                virtualThreads && rate > 0 ? "不限（虚拟线程）" : concurrency + (virtualThreads ? "（虚拟线程）" : ""),
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+
+        Runnable reporter = () -> report(stats, completed, measureFrom);
+        Thread reporterThread = new Thread(() -> {
+            long next = System.nanoTime() + REPORT_INTERVAL_NANOS;
+            while (!Thread.currentThread().isInterrupted()) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                next += REPORT_INTERVAL_NANOS;
+                reporter.run();
+            }
+        }, "loadgen-reporter");
+        reporterThread.setDaemon(true);
+        reporterThread.start();
+
+        if (rate > 0) {
+            // 开环：按计划时刻发起，不等待前一次完成
+            long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            for (long i = 0; ; i++) {
+                long intended = start + i * intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                workers.execute(() -> runOnce(population, registerRatio, intended, measureFrom, stats, completed));
+            }
+        } else {
+            // 闭环：每个并发完成一次后立即发起下一次
+            for (int i = 0; i < concurrency; i++) {
+                workers.execute(() -> {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        runOnce(population, registerRatio, now, measureFrom, stats, completed);
+                    }
+                });
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        reporterThread.interrupt();
+        reporterThread.join();
+        reporter.run();
+
+        Optional<Duration> cpuAtEnd = server.flatMap(process -> process.info().totalCpuDuration());
+        Optional<Duration> serverCpu = cpuAtMeasureStart.get().flatMap(from -> cpuAtEnd.map(to -> to.minus(from)));
+        summarize(stats, (System.nanoTime() - measureFrom) / 1e9, rate, hdrOut, serverCpu);
+    }
+
+    private void runOnce(List<VirtualUser> population, double registerRatio, long intendedNanos,
+                         long measureFrom, Map<Ceremony, Stats> stats, LongAdder completed) {
+        Ceremony ceremony = population.isEmpty() || ThreadLocalRandom.current().nextDouble() < registerRatio
+                ? Ceremony.REGISTER : Ceremony.AUTHENTICATE;
+        Payload payload = new Payload();
+        long startedAt = System.nanoTime();
+        boolean ok;
+        try {
+            if (ceremony == Ceremony.REGISTER) {
+                register(payload);
+            } else {
+                authenticate(population.get(ThreadLocalRandom.current().nextInt(population.size())), payload);
+            }
+            ok = true;
+        } catch (Exception e) {
+            ok = false;
+            errorTypes.computeIfAbsent(describe(e), k -> new LongAdder()).increment();
+        }
+        long finishedAt = System.nanoTime();
+        if (intendedNanos < measureFrom) {
+            return;
+        }
+        Stats stat = stats.get(ceremony);
+        if (ok) {
+            stat.corrected.recordValue(Math.min(finishedAt - intendedNanos, HIGHEST_TRACKABLE_NANOS));
+            stat.uncorrected.recordValue(Math.min(finishedAt - startedAt, HIGHEST_TRACKABLE_NANOS));
+            stat.requestBytes.add(payload.sent);
+            stat.responseBytes.add(payload.received);
+            completed.increment();
+        } else {
+            stat.errors.increment();
+        }
+    }
+
+    // ========== 仪式 ==========
+
+    /**
+     * 注册一个新用户（register/start + register/finish）
+     */
+    private VirtualUser register(Payload payload) throws Exception {
+        String username = "loadgen-" + runId + "-" + usernameSeq.incrementAndGet();
+        ObjectNode request = format.createObjectNode()
+                .put("username", username)
+                .put("displayName", username);
+        JsonNode options = post("/passkeys/register/start", request, payload).path("options");
+        SoftwareAuthenticator authenticator = authenticatorFor(options.path("rp").path("id").asText());
+
+        ObjectNode finish = format.createObjectNode().put("username", username);
+        finish.set("credential", format.credential(
+                authenticator.register(WireFormat.base64Url(options.path("challenge")))));
+        post("/passkeys/register/finish", finish, payload);
+        return new VirtualUser(authenticator, WireFormat.base64Url(options.path("user").path("id")));
+    }
+
+    /**
+     * 以可发现凭证完成一次认证（authenticate/start + authenticate/finish）
+     */
+    private void authenticate(VirtualUser user, Payload payload) throws Exception {
+        JsonNode started = post("/passkeys/authenticate/start", format.createObjectNode(), payload);
+        String challenge = WireFormat.base64Url(started.path("options").path("challenge"));
+
+        ObjectNode finish = format.createObjectNode().put("requestId", started.path("requestId").asText());
+        finish.set("credential", format.credential(user.authenticator.assertion(challenge, user.userHandle)));
+        post("/passkeys/authenticate/finish", finish, payload);
+    }
+
+    /**
+     * 虚拟认证器：所有用户共用一个密钥对，各自使用不同的凭证 ID（RSA 密钥生成很慢）
+     */
+    private synchronized SoftwareAuthenticator authenticatorFor(String serverRpId) {
+        if (baseAuthenticator == null) {
+            if (rpId == null) {
+                rpId = serverRpId;
+            }
+            baseAuthenticator = SoftwareAuthenticator.generate(algorithm, rpId, origin);
+            return baseAuthenticator;
+        }
+        return baseAuthenticator.withNewCredentialId();
+    }
+
+    private JsonNode post(String path, JsonNode body, Payload payload) throws IOException, InterruptedException {
+        byte[] bytes = format.encode(body);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(requestTimeout)
+                .header("Content-Type", format.getMediaType())
+                .header("Accept", format.getMediaType())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(bytes))
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " " + path);
+        }
+        payload.sent += bytes.length;
+        payload.received += response.body().length;
+        return format.decode(response.body());
+    }
+
+    // ========== 报告 ==========
+
+    private static String describe(Exception e) {
+        String message = e.getMessage();
+        return message != null && message.startsWith("HTTP ") ? message : e.getClass().getSimpleName();
+    }
+
+    /**
+     * 每 5 秒输出一次区间统计
+     */
+    private void report(Map<Ceremony, Stats> stats, LongAdder completed, long measureFrom) {
+        StringBuilder line = new StringBuilder(System.nanoTime() < measureFrom ? "[预热] " : "[压测] ");
+        line.append("完成: ").append(completed.sum());
+        for (Map.Entry<Ceremony, Stats> entry : stats.entrySet()) {
+            Stats stat = entry.getValue();
+            Histogram interval;
+            synchronized (stat) {
+                interval = stat.corrected.getIntervalHistogram();
+                stat.totalCorrected.add(interval);
+                stat.totalUncorrected.add(stat.uncorrected.getIntervalHistogram());
+            }
+            if (interval.getTotalCount() == 0 && stat.errors.sum() == 0) {
+                continue;
+            }
+            line.append(String.format(" | %s: %d 次, %.0f/s, p50 %.1fms, p99 %.1fms, 错误 %d",
+                    entry.getKey().name().toLowerCase(), interval.getTotalCount(),
+                    interval.getTotalCount() * 1e9 / REPORT_INTERVAL_NANOS,
+                    interval.getValueAtPercentile(50) / 1e6, interval.getValueAtPercentile(99) / 1e6,
+                    stat.errors.sum()));
+        }
+        System.out.println(line);
+    }
+
+    private void summarize(Map<Ceremony, Stats> stats, double seconds, double rate, String hdrOut,
+                           Optional<Duration> serverCpu) throws IOException {
+        PrintStream out = System.out;
+        out.println();
+        out.printf("======== 结果（测量时长 %.1fs，含排空队列%s）========%n", seconds,
+                rate > 0 ? String.format("，目标速率 %.0f/s", rate) : "，闭环");
+        for (Map.Entry<Ceremony, Stats> entry : stats.entrySet()) {
+            Stats stat = entry.getValue();
+            Histogram corrected = stat.totalCorrected;
+            Histogram uncorrected = stat.totalUncorrected;
+            if (corrected.getTotalCount() == 0 && stat.errors.sum() == 0) {
+                continue;
+            }
+            out.printf("%n%s：成功 %d 次（%.1f/s），失败 %d 次%n", entry.getKey().name().toLowerCase(),
+                    corrected.getTotalCount(), corrected.getTotalCount() / seconds, stat.errors.sum());
+            if (corrected.getTotalCount() > 0) {
+                out.printf("  每次仪式请求体 %.0f 字节，响应体 %.0f 字节（%s）%n",
+                        stat.requestBytes.sum() / (double) corrected.getTotalCount(),
+                        stat.responseBytes.sum() / (double) corrected.getTotalCount(), format.getMediaType());
+            }
+            out.printf("  %-8s %14s %14s%n", "分位", "修正后(ms)", "服务时间(ms)");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.printf("  %-8s %14.2f %14.2f%n", PERCENTILE_LABELS[i],
+                        corrected.getValueAtPercentile(PERCENTILES[i]) / 1e6,
+                        uncorrected.getValueAtPercentile(PERCENTILES[i]) / 1e6);
+            }
+            if (hdrOut != null) {
+                String file = hdrOut + "." + entry.getKey().name().toLowerCase() + ".hgrm";
+                try (PrintStream hgrm = new PrintStream(Files.newOutputStream(Paths.get(file)))) {
+                    corrected.outputPercentileDistribution(hgrm, 1e6);
+                }
+                out.printf("  延迟分布已写入 %s%n", file);
+            }
+        }
+        long ceremonies = stats.values().stream().mapToLong(stat -> stat.totalCorrected.getTotalCount()).sum();
+        if (serverCpu.isPresent() && ceremonies > 0) {
+            out.printf("%n服务器 CPU：共 %.2fs，每次仪式 %.3fms（含排空队列期间）%n",
+                    serverCpu.get().toNanos() / 1e9, serverCpu.get().toNanos() / 1e6 / ceremonies);
+        }
+        if (!errorTypes.isEmpty()) {
+            out.printf("%n错误类型（含预热）：%n");
+            errorTypes.forEach((type, count) -> out.printf("  %s: %d%n", type, count.sum()));
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("参数格式：--名称 值，无法识别: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
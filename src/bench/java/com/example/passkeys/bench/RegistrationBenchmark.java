@@ -0,0 +1,79 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.bench.BenchFixtures.ReplayableChallengeStore;
+import com.example.passkeys.bench.SoftwareAuthenticator.Algorithm;
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.WebAuthnService;
+import com.yubico.webauthn.RegistrationResult;
+import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
+import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注册仪式基准：WebAuthnService.finishRegistration（attestation 校验 + 保存认证器）
+ *
+ * 每个用户一个预先生成的注册响应，循环提交。第一轮之后是对已有凭证的重复注册：
+ * 依赖方的“凭证 ID 已注册”检查（lookupAll）被屏蔽，其开销在 CredentialRepositoryBenchmark 中单独测量；
+ * 保存在内存模式下与新凭证的开销相同（都是复制一次用户快照）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmark {
+
+    private static final int POOL_SIZE = 256;
+
+    @Param({"ES256", "RS256", "EdDSA"})
+    public Algorithm algorithm;
+
+    private WebAuthnService service;
+    private final String[] usernames = new String[POOL_SIZE];
+    private final PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>[] credentials =
+            newCredentialArray();
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        UserRepository repository = BenchFixtures.newRepository();
+        service = BenchFixtures.newService(repository, BenchFixtures.withoutRegisteredIds(repository),
+                new ReplayableChallengeStore<>(), new ReplayableChallengeStore<>());
+
+        SoftwareAuthenticator authenticator =
+                SoftwareAuthenticator.generate(algorithm, BenchFixtures.RP_ID, BenchFixtures.ORIGIN);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            usernames[i] = "bench-user-" + i;
+            PublicKeyCredentialCreationOptions options = service.startRegistration(usernames[i], usernames[i]);
+            credentials[i] = PublicKeyCredential.parseRegistrationResponseJson(
+                    authenticator.withNewCredentialId().register(options.getChallenge().getBase64Url()));
+        }
+    }
+
+    @Benchmark
+    public RegistrationResult finishRegistration() throws Exception {
+        int i = next++ & (POOL_SIZE - 1);
+        return service.finishRegistration(credentials[i], usernames[i]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>[]
+            newCredentialArray() {
+        return new PublicKeyCredential[POOL_SIZE];
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.SecureRandomPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.DrbgParameters;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 挑战随机数基准：共用一个 SecureRandom 与 SecureRandomPool 的多线程吞吐
+ *
+ * 每次操作生成一个 32 字节挑战。sharedDefault 是原先 WebAuthnService（以及 RelyingParty 内部）的做法，
+ * sharedDrbg 是单个 DRBG 实例，pool 是分段的 DRBG。用 -t 指定线程数观察随核数的扩展，例：
+ * mvn -Pbench test-compile exec:exec -Djmh.args="SecureRandomBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecureRandomBenchmark {
+
+    private SecureRandom sharedDefault;
+    private SecureRandom sharedDrbg;
+    private SecureRandomPool pool;
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final byte[] challenge = new byte[32];
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        sharedDefault = new SecureRandom();
+        sharedDrbg = SecureRandom.getInstance("DRBG",
+                DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        pool = new SecureRandomPool(0, 600);
+    }
+
+    @Benchmark
+    public byte[] sharedDefault(Buffer buffer) {
+        sharedDefault.nextBytes(buffer.challenge);
+        return buffer.challenge;
+    }
+
+    @Benchmark
+    public byte[] sharedDrbg(Buffer buffer) {
+        sharedDrbg.nextBytes(buffer.challenge);
+        return buffer.challenge;
+    }
+
+    @Benchmark
+    public byte[] pool(Buffer buffer) {
+        pool.nextBytes(buffer.challenge);
+        return buffer.challenge;
+    }
+}
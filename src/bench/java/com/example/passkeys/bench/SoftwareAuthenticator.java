@@ -0,0 +1,329 @@
+package com.example.passkeys.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 软件实现的平台认证器（仅用于基准测试和压测）
+ *
+ * 生成密钥对，按 WebAuthn 规范构造注册响应（attestation fmt=none）和认证响应，
+ * 输出与 Android Credential Manager 相同结构的凭证 JSON，可以直接交给服务器解析和校验。
+ * 签名计数固定为 0（与同步型通行密钥一致），同一个断言可以重复校验。
+ */
+public final class SoftwareAuthenticator {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64URL_DECODER = Base64.getUrlDecoder();
+
+    // 标志位：UP | UV | BE | BS，注册时另加 AT
+    private static final int FLAGS_ASSERTION = 0x01 | 0x04 | 0x08 | 0x10;
+    private static final int FLAGS_ATTESTED = FLAGS_ASSERTION | 0x40;
+
+    public enum Algorithm {
+        ES256(-7, "SHA256withECDSA"),
+        RS256(-257, "SHA256withRSA"),
+        EdDSA(-8, "Ed25519");
+
+        private final int coseId;
+        private final String signatureAlgorithm;
+
+        Algorithm(int coseId, String signatureAlgorithm) {
+            this.coseId = coseId;
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+
+        public int getCoseId() {
+            return coseId;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final PrivateKey privateKey;
+    private final byte[] cosePublicKey;
+    private final byte[] credentialId;
+    private final byte[] rpIdHash;
+    private final String origin;
+
+    private SoftwareAuthenticator(Algorithm algorithm, PrivateKey privateKey, byte[] cosePublicKey,
+                                  byte[] credentialId, byte[] rpIdHash, String origin) {
+        this.algorithm = algorithm;
+        this.privateKey = privateKey;
+        this.cosePublicKey = cosePublicKey;
+        this.credentialId = credentialId;
+        this.rpIdHash = rpIdHash;
+        this.origin = origin;
+    }
+
+    /**
+     * 生成一个新的认证器（新密钥对和随机凭证 ID）
+     *
+     * @param rpId 依赖方 ID（服务器的 webauthn.rp.id）
+     * @param origin 客户端来源，Android 应用为 android:apk-key-hash:...
+     */
+    public static SoftwareAuthenticator generate(Algorithm algorithm, String rpId, String origin) {
+        KeyPair keyPair = generateKeyPair(algorithm);
+        return new SoftwareAuthenticator(algorithm, keyPair.getPrivate(), encodeCosePublicKey(algorithm, keyPair),
+                randomCredentialId(), sha256(rpId.getBytes(StandardCharsets.UTF_8)), origin);
+    }
+
+    /**
+     * 使用相同的密钥对和新的凭证 ID 复制一个认证器
+     *
+     * RSA 密钥生成很慢，需要大量凭证时共用密钥对即可（服务器只按凭证 ID 区分凭证）
+     */
+    public SoftwareAuthenticator withNewCredentialId() {
+        return new SoftwareAuthenticator(algorithm, privateKey, cosePublicKey, randomCredentialId(), rpIdHash, origin);
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getCredentialId() {
+        return BASE64URL.encodeToString(credentialId);
+    }
+
+    /**
+     * COSE 格式的公钥
+     */
+    public byte[] getCosePublicKey() {
+        return cosePublicKey.clone();
+    }
+
+    /**
+     * 构造注册响应（对应 navigator.credentials.create 的结果）
+     *
+     * @param challenge 注册选项中的 challenge（Base64Url）
+     * @return 凭证 JSON
+     */
+    public String register(String challenge) {
+        byte[] clientDataJson = clientDataJson("webauthn.create", challenge);
+
+        ByteArrayOutputStream authData = new ByteArrayOutputStream(256);
+        authData.writeBytes(rpIdHash);
+        authData.write(FLAGS_ATTESTED);
+        authData.writeBytes(new byte[4]);                   // signCount = 0
+        authData.writeBytes(new byte[16]);                  // AAGUID 全 0
+        authData.write(credentialId.length >> 8);
+        authData.write(credentialId.length);
+        authData.writeBytes(credentialId);
+        authData.writeBytes(cosePublicKey);
+
+        Cbor attestationObject = new Cbor()
+                .map(3)
+                .text("fmt").text("none")
+                .text("attStmt").map(0)
+                .text("authData").bytes(authData.toByteArray());
+
+        String id = getCredentialId();
+        return "{\"id\":\"" + id + "\",\"rawId\":\"" + id + "\",\"type\":\"public-key\","
+                + "\"authenticatorAttachment\":\"platform\","
+                + "\"response\":{\"clientDataJSON\":\"" + BASE64URL.encodeToString(clientDataJson) + "\","
+                + "\"attestationObject\":\"" + BASE64URL.encodeToString(attestationObject.toByteArray()) + "\","
+                + "\"transports\":[\"internal\",\"hybrid\"]},"
+                + "\"clientExtensionResults\":{\"credProps\":{\"rk\":true}}}";
+    }
+
+    /**
+     * 构造认证响应（对应 navigator.credentials.get 的结果）
+     *
+     * @param challenge 认证选项中的 challenge（Base64Url）
+     * @param userHandle 用户句柄（Base64Url，可发现凭证必须返回）
+     * @return 凭证 JSON
+     */
+    public String assertion(String challenge, String userHandle) {
+        byte[] clientDataJson = clientDataJson("webauthn.get", challenge);
+
+        byte[] authData = ByteBuffer.allocate(37)
+                .put(rpIdHash)
+                .put((byte) FLAGS_ASSERTION)
+                .putInt(0)
+                .array();
+
+        byte[] signature;
+        try {
+            Signature signer = Signature.getInstance(algorithm.signatureAlgorithm);
+            signer.initSign(privateKey);
+            signer.update(authData);
+            signer.update(sha256(clientDataJson));
+            signature = signer.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("签名失败", e);
+        }
+
+        String id = getCredentialId();
+        return "{\"id\":\"" + id + "\",\"rawId\":\"" + id + "\",\"type\":\"public-key\","
+                + "\"authenticatorAttachment\":\"platform\","
+                + "\"response\":{\"clientDataJSON\":\"" + BASE64URL.encodeToString(clientDataJson) + "\","
+                + "\"authenticatorData\":\"" + BASE64URL.encodeToString(authData) + "\","
+                + "\"signature\":\"" + BASE64URL.encodeToString(signature) + "\","
+                + "\"userHandle\":\"" + userHandle + "\"},"
+                + "\"clientExtensionResults\":{}}";
+    }
+
+    // ========== 辅助方法 ==========
+
+    private byte[] clientDataJson(String type, String challenge) {
+        // 校验 challenge 是合法的 Base64Url，避免构造出服务器无法解析的响应
+        BASE64URL_DECODER.decode(challenge);
+        return ("{\"type\":\"" + type + "\",\"challenge\":\"" + challenge + "\",\"origin\":\"" + origin
+                + "\",\"crossOrigin\":false}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static KeyPair generateKeyPair(Algorithm algorithm) {
+        try {
+            switch (algorithm) {
+                case ES256: {
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    return generator.generateKeyPair();
+                }
+                case RS256: {
+                    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                    generator.initialize(2048);
+                    return generator.generateKeyPair();
+                }
+                default:
+                    return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("生成密钥对失败: " + algorithm, e);
+        }
+    }
+
+    /**
+     * COSE_Key 编码（RFC 8152 / RFC 8230）
+     */
+    private static byte[] encodeCosePublicKey(Algorithm algorithm, KeyPair keyPair) {
+        Cbor cbor = new Cbor();
+        switch (algorithm) {
+            case ES256: {
+                ECPublicKey key = (ECPublicKey) keyPair.getPublic();
+                cbor.map(5)
+                        .integer(1).integer(2)                       // kty: EC2
+                        .integer(3).integer(algorithm.coseId)        // alg
+                        .integer(-1).integer(1)                      // crv: P-256
+                        .integer(-2).bytes(unsigned(key.getW().getAffineX(), 32))
+                        .integer(-3).bytes(unsigned(key.getW().getAffineY(), 32));
+                break;
+            }
+            case RS256: {
+                RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+                cbor.map(4)
+                        .integer(1).integer(3)                       // kty: RSA
+                        .integer(3).integer(algorithm.coseId)
+                        .integer(-1).bytes(unsigned(key.getModulus(), 0))
+                        .integer(-2).bytes(unsigned(key.getPublicExponent(), 0));
+                break;
+            }
+            default: {
+                // X.509 编码的 Ed25519 公钥最后 32 字节即原始公钥
+                byte[] encoded = keyPair.getPublic().getEncoded();
+                cbor.map(4)
+                        .integer(1).integer(1)                       // kty: OKP
+                        .integer(3).integer(algorithm.coseId)
+                        .integer(-1).integer(6)                      // crv: Ed25519
+                        .integer(-2).bytes(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length));
+                break;
+            }
+        }
+        return cbor.toByteArray();
+    }
+
+    /**
+     * 大整数的无符号大端编码
+     *
+     * @param length 固定长度（左侧补 0），0 表示最短编码
+     */
+    private static byte[] unsigned(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (length == 0 || bytes.length == length) {
+            return bytes;
+        }
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+        return padded;
+    }
+
+    private static byte[] randomCredentialId() {
+        byte[] id = new byte[32];
+        new SecureRandom().nextBytes(id);
+        return id;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 最小的 CBOR 编码器（只支持构造 attestationObject 和 COSE_Key 需要的类型）
+     */
+    private static final class Cbor {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        Cbor integer(long value) {
+            return value >= 0 ? head(0, value) : head(1, -1 - value);
+        }
+
+        Cbor bytes(byte[] value) {
+            head(2, value.length);
+            out.writeBytes(value);
+            return this;
+        }
+
+        Cbor text(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            head(3, utf8.length);
+            out.writeBytes(utf8);
+            return this;
+        }
+
+        Cbor map(int entries) {
+            return head(5, entries);
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private Cbor head(int majorType, long value) {
+            int major = majorType << 5;
+            if (value < 24) {
+                out.write(major | (int) value);
+            } else if (value < 0x100) {
+                out.write(major | 24);
+                out.write((int) value);
+            } else if (value < 0x10000) {
+                out.write(major | 25);
+                out.write((int) (value >> 8));
+                out.write((int) value);
+            } else {
+                out.write(major | 26);
+                out.writeBytes(ByteBuffer.allocate(4).putInt((int) value).array());
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.passkeys.bench;
+
+import com.example.passkeys.ratelimit.TokenBucketSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 准入控制基准：每个请求在 TokenBucketSketch 上取一次令牌的开销
+ *
+ * admitted：10 万个不同的客户端地址轮流请求，都在限额内（正常用户的路径）；
+ * rejected：同一个地址持续请求，桶已空（被限流客户端的路径）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBucketSketchBenchmark {
+
+    private static final int CLIENTS = 100_000;
+
+    private TokenBucketSketch generous;
+    private TokenBucketSketch strict;
+    private String[] addresses;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = ThreadLocalRandom.current().nextInt(CLIENTS);
+    }
+
+    @Setup
+    public void setUp() {
+        generous = new TokenBucketSketch(1_000_000, 1_000_000, 4, 16384);
+        strict = new TokenBucketSketch(1, 1, 4, 16384);
+        addresses = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            addresses[i] = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public long admitted(Cursor cursor) {
+        String address = addresses[cursor.next];
+        cursor.next = cursor.next + 1 == CLIENTS ? 0 : cursor.next + 1;
+        return generous.acquire(address);
+    }
+
+    @Benchmark
+    public long rejected() {
+        return strict.acquire("203.0.113.7");
+    }
+}
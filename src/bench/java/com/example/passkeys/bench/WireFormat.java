@@ -0,0 +1,80 @@
+package com.example.passkeys.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * 压测客户端的请求/响应格式
+ *
+ * CBOR 与 JSON 的结构相同，区别只是字节字段：JSON 中是 base64url 文本，
+ * CBOR 中是字节串（凭证的 id / rawId、response 下的各字节字段，响应中的挑战和用户 ID）。
+ */
+public enum WireFormat {
+
+    JSON("application/json", new ObjectMapper()),
+    CBOR("application/cbor", new CBORMapper());
+
+    private static final String[] CREDENTIAL_BYTE_FIELDS = {"id", "rawId"};
+    private static final String[] RESPONSE_BYTE_FIELDS = {
+            "clientDataJSON", "attestationObject", "authenticatorData", "signature", "userHandle"};
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64URL_DECODER = Base64.getUrlDecoder();
+
+    private final String mediaType;
+    private final ObjectMapper mapper;
+
+    WireFormat(String mediaType, ObjectMapper mapper) {
+        this.mediaType = mediaType;
+        this.mapper = mapper;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public ObjectNode createObjectNode() {
+        return mapper.createObjectNode();
+    }
+
+    /**
+     * 把 SoftwareAuthenticator 生成的凭证 JSON 转成本格式的凭证对象
+     */
+    public ObjectNode credential(String credentialJson) throws IOException {
+        ObjectNode credential = (ObjectNode) JSON.mapper.readTree(credentialJson);
+        if (this == CBOR) {
+            toBinary(credential, CREDENTIAL_BYTE_FIELDS);
+            toBinary((ObjectNode) credential.get("response"), RESPONSE_BYTE_FIELDS);
+        }
+        return credential;
+    }
+
+    public byte[] encode(JsonNode body) throws IOException {
+        return mapper.writeValueAsBytes(body);
+    }
+
+    public JsonNode decode(byte[] body) throws IOException {
+        return mapper.readTree(body);
+    }
+
+    /**
+     * 响应中的字节字段，统一返回 base64url 文本（SoftwareAuthenticator 的参数格式）
+     */
+    public static String base64Url(JsonNode field) throws IOException {
+        return field.isBinary() ? BASE64URL.encodeToString(field.binaryValue()) : field.asText();
+    }
+
+    private static void toBinary(ObjectNode node, String[] fields) {
+        for (String field : fields) {
+            JsonNode value = node.get(field);
+            if (value != null && value.isTextual()) {
+                node.put(field, BASE64URL_DECODER.decode(value.asText()));
+            }
+        }
+    }
+}
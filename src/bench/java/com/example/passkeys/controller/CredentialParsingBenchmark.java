@@ -0,0 +1,85 @@
+package com.example.passkeys.controller;
+
+import com.example.passkeys.bench.BenchFixtures;
+import com.example.passkeys.bench.SoftwareAuthenticator;
+import com.example.passkeys.bench.SoftwareAuthenticator.Algorithm;
+import com.example.passkeys.bench.WireFormat;
+import com.example.passkeys.controller.CredentialParser.AuthenticationFinish;
+import com.example.passkeys.controller.CredentialParser.RegistrationFinish;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * finish 请求体解析基准：从请求体字节到用户名/请求 ID 和 PublicKeyCredential
+ *
+ * 请求体与 PasskeysController 收到的相同（外层信封加 credential 对象），
+ * extensionsField=extensionsOutputs 时走 Android 客户端的字段重命名路径；
+ * format=CBOR 时请求体为 application/cbor（字节字段为 CBOR 字节串），同时输出两种格式的请求体大小。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CredentialParsingBenchmark {
+
+    @Param({"clientExtensionResults", "extensionsOutputs"})
+    public String extensionsField;
+
+    @Param({"JSON", "CBOR"})
+    public WireFormat format;
+
+    private CredentialParser parser;
+    private byte[] registrationBytes;
+    private byte[] assertionBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        parser = format == WireFormat.CBOR ? CredentialParser.cbor() : CredentialParser.json();
+
+        SoftwareAuthenticator authenticator =
+                SoftwareAuthenticator.generate(Algorithm.ES256, BenchFixtures.RP_ID, BenchFixtures.ORIGIN);
+        String challenge = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[32]);
+
+        ObjectNode registration = format.createObjectNode();
+        registration.put("username", "bench-user");
+        registration.set("credential", format.credential(rename(authenticator.register(challenge))));
+        ObjectNode assertion = format.createObjectNode();
+        assertion.put("requestId", challenge);
+        assertion.set("credential", format.credential(rename(authenticator.assertion(challenge, challenge))));
+
+        registrationBytes = format.encode(registration);
+        assertionBytes = format.encode(assertion);
+        System.out.printf("%n%s 请求体：注册 %d 字节，认证 %d 字节%n",
+                format.getMediaType(), registrationBytes.length, assertionBytes.length);
+    }
+
+    @Benchmark
+    public RegistrationFinish parseRegistration() throws Exception {
+        return parser.parseRegistrationFinish(registrationBytes);
+    }
+
+    @Benchmark
+    public AuthenticationFinish parseAssertion() throws Exception {
+        return parser.parseAuthenticationFinish(assertionBytes);
+    }
+
+    private String rename(String credentialJson) {
+        return credentialJson.replace("\"clientExtensionResults\"", "\"" + extensionsField + "\"");
+    }
+}
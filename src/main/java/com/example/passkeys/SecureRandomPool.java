@@ -0,0 +1,91 @@
+package com.example.passkeys;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * 分段的安全随机数源（挑战、用户 ID、请求 ID、令牌随机数）
+ *
+ * 共用一个 SecureRandom 时所有请求线程都在它的内部锁上排队（默认的 NativePRNG
+ * 即使创建多个实例也共用同一把全局锁）。这里维护多个互相独立的 DRBG 实例（NIST SP 800-90A），
+ * 每次调用随机选一个分段，竞争随分段数下降。不使用 ThreadLocal：虚拟线程模式下
+ * 每个请求都是新线程，为每个线程初始化一个 DRBG 反而更慢。
+ *
+ * 每个分段超过重新播种间隔后，由下一个取到它的线程从系统熵源重新播种，
+ * 同一时刻每个分段最多只有一个线程在播种。
+ */
+public final class SecureRandomPool {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final long reseedIntervalNanos;
+
+    private static final class Stripe {
+
+        final SecureRandom random;
+        // 下次重新播种的时刻（System.nanoTime）
+        final AtomicLong reseedAtNanos;
+
+        Stripe(SecureRandom random, long reseedAtNanos) {
+            this.random = random;
+            this.reseedAtNanos = new AtomicLong(reseedAtNanos);
+        }
+    }
+
+    /**
+     * @param stripes 分段数（向上取整到 2 的幂；0 表示 CPU 核数的两倍）
+     * @param reseedIntervalSeconds 每个分段的重新播种间隔（秒）
+     */
+    public SecureRandomPool(int stripes, long reseedIntervalSeconds) {
+        int requested = stripes > 0 ? stripes : 2 * Runtime.getRuntime().availableProcessors();
+        int count = requested <= 1 ? 1 : Integer.highestOneBit(requested - 1) << 1;
+        this.reseedIntervalNanos = TimeUnit.SECONDS.toNanos(reseedIntervalSeconds);
+        this.stripes = new Stripe[count];
+        this.mask = count - 1;
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            // 错开各分段的播种时刻，避免同时到期
+            this.stripes[i] = new Stripe(newDrbg(), now + reseedIntervalNanos + reseedIntervalNanos * i / count);
+        }
+    }
+
+    /**
+     * 用随机字节填满 bytes
+     */
+    public void nextBytes(byte[] bytes) {
+        Stripe stripe = stripes[ThreadLocalRandom.current().nextInt() & mask];
+        long reseedAt = stripe.reseedAtNanos.get();
+        long now = System.nanoTime();
+        if (now - reseedAt >= 0 && stripe.reseedAtNanos.compareAndSet(reseedAt, now + reseedIntervalNanos)) {
+            stripe.random.reseed();
+        }
+        stripe.random.nextBytes(bytes);
+    }
+
+    /**
+     * 生成 length 个随机字节
+     */
+    public byte[] nextBytes(int length) {
+        byte[] bytes = new byte[length];
+        nextBytes(bytes);
+        return bytes;
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前 JDK 不支持 DRBG 随机数生成器", e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.passkeys.config;
+
+import com.example.passkeys.SecureRandomPool;
+import com.example.passkeys.store.ChallengeCodec;
+import com.example.passkeys.store.ChallengeStore;
+import com.example.passkeys.store.ExpiringChallengeStore;
+import com.example.passkeys.store.RedisChallengeStore;
+import com.example.passkeys.store.RedisReplayFilter;
+import com.example.passkeys.store.ReplayFilter;
+import com.example.passkeys.store.RespConnection;
+import com.example.passkeys.store.SealedAssertionTokens;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * 挑战存储配置类
+ * 为进行中的注册 / 认证仪式提供带过期的临时存储
+ *
+ * passkeys.challenge.store=memory（默认）：单节点内存存储
+ * passkeys.challenge.store=redis：多节点共享存储，无需粘性会话
+ *
+ * passkeys.assertion.mode=sealed 时，认证请求不再写入存储，
+ * 而是加密封装在 requestId 中返回给客户端
+ */
+@Configuration
+public class ChallengeStoreConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ChallengeStoreConfig.class);
+
+    /**
+     * 无状态认证令牌（passkeys.assertion.mode=sealed）
+     *
+     * 使用 Redis 挑战存储时，已使用的令牌 ID 记录在同一个 Redis 中，所有节点共享；
+     * 否则只在本节点记录，仅适用于单节点部署
+     */
+    @Bean
+    @ConditionalOnProperty(name = "passkeys.assertion.mode", havingValue = "sealed")
+    public SealedAssertionTokens sealedAssertionTokens(
+            @Value("${passkeys.assertion.token-key:}") String tokenKey,
+            @Value("${passkeys.assertion.replay-partition-millis:10000}") long partitionMillis,
+            @Value("${passkeys.challenge.redis.key-prefix:passkeys:}") String keyPrefix,
+            @Value("${passkeys.challenge.redis.timeout-millis:2000}") int timeoutMillis,
+            ObjectProvider<RespConnection> challengeStoreConnection,
+            SecureRandomPool secureRandomPool) {
+        byte[] key;
+        if (tokenKey.isEmpty()) {
+            // 未配置密钥时每次启动随机生成：重启后旧令牌失效，且多节点之间无法互通
+            log.warn("未配置 passkeys.assertion.token-key，使用随机密钥（仅适用于单节点）");
+            key = secureRandomPool.nextBytes(32);
+        } else {
+            key = Base64.getDecoder().decode(tokenKey);
+        }
+        RespConnection connection = challengeStoreConnection.getIfAvailable();
+        ReplayFilter replayFilter;
+        if (connection != null) {
+            replayFilter = new RedisReplayFilter(partitionMillis, connection, keyPrefix + "used:", timeoutMillis);
+        } else {
+            if (!tokenKey.isEmpty()) {
+                log.warn("sealed 模式使用本节点的重放过滤器，多节点部署时令牌可以在其他节点重放；"
+                        + "请配置 passkeys.challenge.store=redis");
+            }
+            replayFilter = new ReplayFilter(partitionMillis);
+        }
+        return new SealedAssertionTokens(key, replayFilter, secureRandomPool);
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "passkeys.challenge.store", havingValue = "memory", matchIfMissing = true)
+    static class InMemory {
+
+        @Value("${passkeys.challenge.capacity:100000}")
+        private int capacity;
+
+        @Value("${passkeys.challenge.tick-millis:1000}")
+        private long tickMillis;
+
+        @Value("${passkeys.challenge.wheel-size:128}")
+        private int wheelSize;
+
+        /**
+         * 注册请求存储（Key: username）
+         */
+        @Bean(destroyMethod = "close")
+        public ExpiringChallengeStore<PublicKeyCredentialCreationOptions> registrationChallengeStore() {
+            return new ExpiringChallengeStore<>("registration", capacity, tickMillis, wheelSize);
+        }
+
+        /**
+         * 认证请求存储（Key: requestId）
+         */
+        @Bean(destroyMethod = "close")
+        public ExpiringChallengeStore<AssertionRequest> assertionChallengeStore() {
+            return new ExpiringChallengeStore<>("assertion", capacity, tickMillis, wheelSize);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "passkeys.challenge.store", havingValue = "redis")
+    static class Redis {
+
+        @Value("${passkeys.challenge.redis.host:localhost}")
+        private String host;
+
+        @Value("${passkeys.challenge.redis.port:6379}")
+        private int port;
+
+        @Value("${passkeys.challenge.redis.key-prefix:passkeys:}")
+        private String keyPrefix;
+
+        @Value("${passkeys.challenge.redis.timeout-millis:2000}")
+        private int timeoutMillis;
+
+        @Bean(destroyMethod = "close")
+        public RespConnection challengeStoreConnection() {
+            return new RespConnection(host, port, timeoutMillis, timeoutMillis);
+        }
+
+        /**
+         * 注册请求存储（Key: username）
+         */
+        @Bean
+        public ChallengeStore<PublicKeyCredentialCreationOptions> registrationChallengeStore(
+                RespConnection connection) {
+            return new RedisChallengeStore<>(connection, keyPrefix + "reg:",
+                    new ChallengeCodec<>() {
+                        @Override
+                        public String encode(PublicKeyCredentialCreationOptions value) throws IOException {
+                            return value.toJson();
+                        }
+
+                        @Override
+                        public PublicKeyCredentialCreationOptions decode(String encoded) throws IOException {
+                            return PublicKeyCredentialCreationOptions.fromJson(encoded);
+                        }
+                    },
+                    timeoutMillis);
+        }
+
+        /**
+         * 认证请求存储（Key: requestId）
+         */
+        @Bean
+        public ChallengeStore<AssertionRequest> assertionChallengeStore(RespConnection connection) {
+            return new RedisChallengeStore<>(connection, keyPrefix + "auth:",
+                    new ChallengeCodec<>() {
+                        @Override
+                        public String encode(AssertionRequest value) throws IOException {
+                            return value.toJson();
+                        }
+
+                        @Override
+                        public AssertionRequest decode(String encoded) throws IOException {
+                            return AssertionRequest.fromJson(encoded);
+                        }
+                    },
+                    timeoutMillis);
+        }
+    }
+}
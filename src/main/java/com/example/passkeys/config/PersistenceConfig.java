@@ -0,0 +1,51 @@
+package com.example.passkeys.config;
+
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 持久化配置类
+ * 配置 passkeys.storage.dir 后启用本地预写日志和快照，否则仅使用内存存储
+ */
+@Configuration
+@ConditionalOnProperty(name = "passkeys.storage.dir")
+public class PersistenceConfig {
+
+    @Value("${passkeys.storage.dir}")
+    private String storageDir;
+
+    @Value("${passkeys.storage.max-batch:4096}")
+    private int maxBatch;
+
+    @Value("${passkeys.storage.snapshot-interval-seconds:300}")
+    private long snapshotIntervalSeconds;
+
+    @Value("${passkeys.storage.snapshot-threshold:100000}")
+    private long snapshotThreshold;
+
+    @Value("${passkeys.storage.sign-count-flush-millis:1000}")
+    private long signCountFlushMillis;
+
+    @Value("${passkeys.storage.sign-count-flush-threshold:10000}")
+    private int signCountFlushThreshold;
+
+    @Bean(destroyMethod = "close")
+    public CredentialLog credentialLog() {
+        return new CredentialLog(Paths.get(storageDir), maxBatch,
+                snapshotIntervalSeconds * 1000, snapshotThreshold);
+    }
+
+    /**
+     * 签名计数延迟写入（关闭时先于日志关闭，把剩余的计数写完）
+     */
+    @Bean(destroyMethod = "close")
+    public SignCountWriteBehind signCountWriteBehind(CredentialLog credentialLog) {
+        return new SignCountWriteBehind(credentialLog, signCountFlushMillis, signCountFlushThreshold);
+    }
+}
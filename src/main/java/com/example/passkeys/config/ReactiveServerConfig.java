@@ -0,0 +1,139 @@
+package com.example.passkeys.config;
+
+import com.example.passkeys.SecureRandomPool;
+import com.example.passkeys.controller.ReactivePasskeysHandler;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.ratelimit.AdmissionControl;
+import com.example.passkeys.repository.ReactiveUserRepository;
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.ReactiveWebAuthnService;
+import com.example.passkeys.store.ChallengeStore;
+import com.example.passkeys.store.ReactiveChallengeStore;
+import com.example.passkeys.store.SealedAssertionTokens;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsWebFilter;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+
+/**
+ * 响应式接口配置（passkeys.reactive.enabled=true）
+ *
+ * 在独立端口上用 Reactor Netty 提供与 PasskeysController 相同的 /passkeys 接口，
+ * 应用本身仍以 Servlet 模式运行，两套接口共用仓库、挑战存储和依赖方配置。
+ *
+ * 线程数固定：passkeys.reactive.event-loop-threads 个事件循环线程处理所有连接的 I/O，
+ * passkeys.reactive.verify-threads 个线程执行签名校验。慢速连接只占用连接本身的缓冲区，
+ * 请求体超过 passkeys.reactive.max-body-bytes 时直接拒绝，空闲连接超时关闭。
+ */
+@Configuration
+@ConditionalOnProperty(name = "passkeys.reactive.enabled", havingValue = "true")
+public class ReactiveServerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveServerConfig.class);
+
+    @Value("${passkeys.reactive.port:8081}")
+    private int port;
+
+    @Value("${passkeys.reactive.event-loop-threads:0}")
+    private int eventLoopThreads;
+
+    @Value("${passkeys.reactive.verify-threads:0}")
+    private int verifyThreads;
+
+    @Value("${passkeys.reactive.max-body-bytes:65536}")
+    private int maxBodyBytes;
+
+    @Value("${passkeys.reactive.idle-timeout-seconds:60}")
+    private long idleTimeoutSeconds;
+
+    /**
+     * 签名校验调度器（固定线程数，0 表示 CPU 核数）
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler verificationScheduler() {
+        int threads = verifyThreads > 0 ? verifyThreads : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newParallel("passkeys-verify", threads, true);
+    }
+
+    @Bean
+    public ReactiveWebAuthnService reactiveWebAuthnService(
+            RelyingParty relyingParty, UserRepository userRepository,
+            ChallengeStore<PublicKeyCredentialCreationOptions> registrationChallengeStore,
+            ChallengeStore<AssertionRequest> assertionChallengeStore,
+            ObjectProvider<SealedAssertionTokens> sealedTokens,
+            PasskeysMetrics metrics, Scheduler verificationScheduler, SecureRandomPool secureRandomPool) {
+        return new ReactiveWebAuthnService(relyingParty, new ReactiveUserRepository(userRepository),
+                new ReactiveChallengeStore<>(registrationChallengeStore),
+                new ReactiveChallengeStore<>(assertionChallengeStore),
+                sealedTokens.getIfAvailable(), metrics, verificationScheduler, secureRandomPool);
+    }
+
+    /**
+     * 事件循环线程（0 表示 CPU 核数）
+     */
+    @Bean(destroyMethod = "dispose")
+    public LoopResources reactiveLoopResources() {
+        int threads = eventLoopThreads > 0 ? eventLoopThreads : Runtime.getRuntime().availableProcessors();
+        return LoopResources.create("passkeys-reactive", 1, threads, true);
+    }
+
+    @Bean(destroyMethod = "disposeNow")
+    public DisposableServer reactivePasskeysServer(ReactiveWebAuthnService reactiveWebAuthnService,
+                                                   ObjectMapper objectMapper, PasskeysMetrics metrics,
+                                                   AdmissionControl admissionControl,
+                                                   LoopResources reactiveLoopResources) {
+        ReactivePasskeysHandler handler = new ReactivePasskeysHandler(reactiveWebAuthnService, objectMapper,
+                metrics, admissionControl);
+
+        // 与 PasskeysController 上的 @CrossOrigin(origins = "*") 一致
+        CorsConfiguration cors = new CorsConfiguration();
+        cors.addAllowedOrigin("*");
+        cors.addAllowedMethod("*");
+        cors.addAllowedHeader("*");
+        UrlBasedCorsConfigurationSource corsSource = new UrlBasedCorsConfigurationSource();
+        corsSource.registerCorsConfiguration("/passkeys/**", cors);
+
+        // 使用 Spring 的 ObjectMapper，响应格式与 Servlet 接口相同
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                    codecs.defaultCodecs().maxInMemorySize(maxBodyBytes);
+                })
+                .webFilter(new CorsWebFilter(corsSource))
+                .build();
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(handler.routes(), strategies);
+
+        DisposableServer server = HttpServer.create()
+                .port(port)
+                .runOn(reactiveLoopResources)
+                .idleTimeout(Duration.ofSeconds(idleTimeoutSeconds))
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+        log.info("响应式接口已启动 - 端口: {}, 请求体上限: {} 字节", server.port(), maxBodyBytes);
+        return server;
+    }
+}
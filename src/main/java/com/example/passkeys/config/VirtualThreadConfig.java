@@ -0,0 +1,88 @@
+package com.example.passkeys.config;
+
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程执行模式（passkeys.threads.virtual=true）
+ *
+ * Tomcat 的每个请求在新的虚拟线程上执行，不再受 server.tomcat.threads.max 限制：
+ * 请求在 Redis 挑战存储、签名计数落盘等 I/O 上等待时只占用一个虚拟线程，载体线程可以继续处理其他请求。
+ * 进行中的请求数由 server.tomcat.max-connections 限制，这个模式下默认放宽到 10000（等待队列 1000），
+ * 平台线程模式仍使用 Spring Boot 的默认值。
+ *
+ * StreamingResponseBody 等异步响应使用的 applicationTaskExecutor 同样换成虚拟线程。
+ */
+@Configuration
+@ConditionalOnProperty(name = "passkeys.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        log.info("请求处理使用虚拟线程（JDK {}）", Runtime.version().feature());
+        return executor;
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    /**
+     * 连接上限：显式配置了 server.tomcat.max-connections / accept-count 时使用配置值，否则使用虚拟线程模式的默认值
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadConnectionLimits(
+            @Value("${server.tomcat.max-connections:10000}") int maxConnections,
+            @Value("${server.tomcat.accept-count:1000}") int acceptCount) {
+        return new ConnectionLimits(maxConnections, acceptCount);
+    }
+
+    /**
+     * 替换 Spring Boot 默认的线程池（同名 Bean），MVC 异步请求处理使用它
+     */
+    @Bean(name = "applicationTaskExecutor")
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+
+    /**
+     * 在 Spring Boot 应用 server.tomcat.* 的定制器（order 0）之后执行，否则会被它的默认值覆盖
+     */
+    private record ConnectionLimits(int maxConnections, int acceptCount)
+            implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, Ordered {
+
+        @Override
+        public void customize(TomcatServletWebServerFactory factory) {
+            factory.addConnectorCustomizers(connector -> {
+                if (connector.getProtocolHandler() instanceof AbstractProtocol<?> protocol) {
+                    protocol.setMaxConnections(maxConnections);
+                    protocol.setAcceptCount(acceptCount);
+                    log.info("虚拟线程模式连接上限 - 最大连接数: {}，等待队列: {}", maxConnections, acceptCount);
+                }
+            });
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
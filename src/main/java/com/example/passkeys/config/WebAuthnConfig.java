@@ -1,6 +1,7 @@
 package com.example.passkeys.config;
 
 import com.example.passkeys.Base64UrlUtils;
+import com.example.passkeys.SecureRandomPool;
 import com.example.passkeys.repository.UserRepository;
 import com.yubico.webauthn.RelyingParty;
 import com.yubico.webauthn.data.RelyingPartyIdentity;
@@ -33,6 +34,19 @@ public class WebAuthnConfig {
 
     private static final Logger log = LoggerFactory.getLogger(WebAuthnConfig.class);
 
+    /**
+     * 挑战、用户 ID 和请求 ID 的随机数源
+     * RelyingParty 内部的挑战生成器不可替换，WebAuthnService 自行组装选项时从这里取挑战
+     */
+    @Bean
+    public SecureRandomPool secureRandomPool(
+            @Value("${passkeys.random.stripes:0}") int stripes,
+            @Value("${passkeys.random.reseed-interval-seconds:600}") long reseedIntervalSeconds) {
+        SecureRandomPool pool = new SecureRandomPool(stripes, reseedIntervalSeconds);
+        log.info("随机数源 - 分段数: {}, 重新播种间隔: {}s", pool.stripeCount(), reseedIntervalSeconds);
+        return pool;
+    }
+
     /**
      * 配置 RelyingParty（依赖方）
      * 这是 WebAuthn 服务器的核心配置
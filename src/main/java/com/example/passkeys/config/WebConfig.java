@@ -1,10 +1,25 @@
 package com.example.passkeys.config;
 
+import com.example.passkeys.controller.AssetLinksDocument;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.ratelimit.AdaptiveConcurrencyLimiter;
+import com.example.passkeys.ratelimit.AdmissionControl;
+import com.example.passkeys.ratelimit.AdmissionInterceptor;
+import com.example.passkeys.ratelimit.ConcurrencyLimitInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Web 配置类
  * 配置静态资源访问路径
@@ -12,16 +27,59 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     
+    @Value("${passkeys.assetlinks.max-age-seconds:3600}")
+    private long wellKnownMaxAgeSeconds;
+    
+    private final AdmissionControl admissionControl;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final PasskeysMetrics metrics;
+    private final ObjectMapper objectMapper;
+    
+    public WebConfig(AdmissionControl admissionControl, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                     PasskeysMetrics metrics, ObjectMapper objectMapper) {
+        this.admissionControl = admissionControl;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * 内存中的 assetlinks.json（由 WellKnownController 提供）
+     * 配置了 path 时从文件加载并热更新，否则使用 classpath 中的文件
+     */
+    @Bean
+    public AssetLinksDocument assetLinksDocument(
+            @Value("${passkeys.assetlinks.path:}") String path,
+            @Value("${passkeys.assetlinks.reload-check-millis:2000}") long reloadCheckMillis) {
+        return new AssetLinksDocument(path.isBlank() ? null : Path.of(path),
+                Duration.ofMillis(reloadCheckMillis), objectMapper);
+    }
+    
+    /**
+     * 仪式接口的客户端限流和认证接口的过载保护（在控制器之前按注册顺序执行）
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (admissionControl.isEnabled()) {
+            registry.addInterceptor(new AdmissionInterceptor(admissionControl, metrics, objectMapper))
+                    .addPathPatterns("/passkeys/register/*", "/passkeys/authenticate/*");
+        }
+        if (concurrencyLimiter.isEnabled()) {
+            registry.addInterceptor(new ConcurrencyLimitInterceptor(concurrencyLimiter, metrics, objectMapper))
+                    .addPathPatterns("/passkeys/authenticate/*");
+        }
+    }
+    
     /**
      * 配置静态资源处理器
      * 使 .well-known 目录可以在根路径访问
      */
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // 配置 .well-known 路径
+        // 配置 .well-known 路径（assetlinks.json 由 WellKnownController 处理，其余文件与它使用相同的缓存时间）
         registry.addResourceHandler("/.well-known/**")
                 .addResourceLocations("classpath:/static/.well-known/")
-                .setCachePeriod(0);  // 开发环境不缓存
+                .setCacheControl(CacheControl.maxAge(wellKnownMaxAgeSeconds, TimeUnit.SECONDS).cachePublic());
         
         // 保留默认的静态资源配置
         registry.addResourceHandler("/**")
@@ -29,4 +87,3 @@ public class WebConfig implements WebMvcConfigurer {
                 .setCachePeriod(0);
     }
 }
-
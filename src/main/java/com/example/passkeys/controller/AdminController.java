@@ -0,0 +1,147 @@
+package com.example.passkeys.controller;
+
+import com.example.passkeys.service.CredentialExportService;
+import com.example.passkeys.service.CredentialImportService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运维管理接口（迁移导入、导出和在线备份）
+ * 
+ * 这些接口可以直接写入任意用户的凭证，默认不启用；
+ * 设置 passkeys.admin.enabled=true 后才会注册，并且应只在内网开放
+ */
+@RestController
+@RequestMapping("/passkeys/admin")
+@ConditionalOnProperty(name = "passkeys.admin.enabled", havingValue = "true")
+public class AdminController {
+    
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+    
+    private final CredentialImportService importService;
+    private final CredentialExportService exportService;
+    
+    public AdminController(CredentialImportService importService, CredentialExportService exportService) {
+        this.importService = importService;
+        this.exportService = exportService;
+    }
+    
+    /**
+     * 批量导入凭证（NDJSON）
+     * 
+     * POST /passkeys/admin/import
+     * Content-Type: application/x-ndjson
+     * 例：curl -X POST -H 'Content-Type: application/x-ndjson' --data-binary @credentials.ndjson ...
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Map<String, Object>> importNdjson(InputStream body) {
+        try {
+            return ResponseEntity.ok(success(importService.importNdjson(body)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("导入凭证失败", e);
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("导入凭证失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 批量导入凭证（凭证归档）
+     * 
+     * POST /passkeys/admin/import
+     * Content-Type: application/octet-stream
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> importArchive(InputStream body) {
+        try {
+            return ResponseEntity.ok(success(importService.importArchive(body)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("导入凭证失败", e);
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("导入凭证失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 导出全部用户和凭证（导出开始时刻的一致视图，导出期间不影响登录）
+     * 
+     * GET /passkeys/admin/export?format=archive|ndjson
+     * archive 格式可以直接 POST 到 /passkeys/admin/import 恢复
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "archive") String format) {
+        boolean ndjson = "ndjson".equals(format);
+        if (!ndjson && !"archive".equals(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            if (ndjson) {
+                exportService.writeNdjson(out);
+            } else {
+                exportService.writeArchive(out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"credentials." + (ndjson ? "ndjson" : "pkar") + "\"")
+                .body(body);
+    }
+    
+    /**
+     * 在线备份到服务器本地的备份目录（passkeys.backup.dir）
+     * 
+     * POST /passkeys/admin/backup
+     */
+    @PostMapping("/backup")
+    public ResponseEntity<Map<String, Object>> backup() {
+        try {
+            return ResponseEntity.ok(success(exportService.backup()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (IOException e) {
+            log.error("备份失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("备份失败: " + e.getMessage()));
+        }
+    }
+    
+    // ========== 辅助方法 ==========
+    
+    private Map<String, Object> success(Map<String, Object> result) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", true);
+        response.putAll(result);
+        return response;
+    }
+    
+    /**
+     * 创建错误响应
+     */
+    private Map<String, Object> createErrorResponse(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", message);
+        response.put("timestamp", System.currentTimeMillis());
+        return response;
+    }
+}
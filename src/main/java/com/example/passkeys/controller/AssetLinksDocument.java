@@ -0,0 +1,250 @@
+package com.example.passkeys.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 内存中的 assetlinks.json（Digital Asset Links）
+ * 
+ * 文件只在启动和变化时读取一次，同时准备好原文、gzip 和 brotli 三种表示，
+ * 每种表示有自己的强 ETag（内容的 SHA-256），请求时只按 Accept-Encoding 选一个返回。
+ * brotli 没有 Java 实现可用，只在同目录下有预压缩的 assetlinks.json.br
+ * （且不早于 assetlinks.json）时提供；gzip 比原文还大时不提供。
+ * 
+ * 配置了文件路径时支持热更新：请求时最多每隔 checkInterval 检查一次文件的修改时间和大小，
+ * 由抢到检查权的那个请求重新加载，其余请求继续使用旧内容。
+ * 新内容不是合法 JSON（例如正在写入）时保留旧内容。
+ */
+public final class AssetLinksDocument {
+    
+    private static final Logger log = LoggerFactory.getLogger(AssetLinksDocument.class);
+    
+    private static final String CLASSPATH_LOCATION = "static/.well-known/assetlinks.json";
+    private static final String BROTLI_SUFFIX = ".br";
+    
+    /**
+     * 一种表示：响应体、强 ETag 和 Content-Encoding（原文为 null）
+     */
+    public record Representation(byte[] body, String etag, String contentEncoding, long lastModified) {
+    }
+    
+    /**
+     * 用于判断文件是否变化的修改时间和大小（.br 不存在时 brotli 为 null）
+     */
+    private record Stamp(FileTime modified, long size, FileTime brotli) {
+    }
+    
+    private record Snapshot(Representation identity, Representation gzip, Representation brotli, Stamp stamp) {
+    }
+    
+    private final Path path;
+    private final long checkIntervalNanos;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong nextCheckNanos;
+    private volatile Snapshot snapshot;
+    
+    /**
+     * @param path 文件路径；null 表示使用 classpath 中的 static/.well-known/assetlinks.json（不热更新）
+     * @param checkInterval 检查文件变化的最短间隔
+     */
+    public AssetLinksDocument(Path path, Duration checkInterval, ObjectMapper objectMapper) {
+        this.path = path;
+        this.checkIntervalNanos = checkInterval.toNanos();
+        this.objectMapper = objectMapper;
+        this.nextCheckNanos = new AtomicLong(System.nanoTime() + checkIntervalNanos);
+        try {
+            this.snapshot = path != null ? loadFile(null) : loadClasspath();
+        } catch (IOException e) {
+            throw new IllegalStateException("无法加载 assetlinks.json: " + (path != null ? path : CLASSPATH_LOCATION), e);
+        }
+        if (snapshot == null) {
+            log.warn("未找到 assetlinks.json: {}", path != null ? path : CLASSPATH_LOCATION);
+        } else {
+            log.info("已加载 assetlinks.json - 来源: {}, {} 字节, gzip: {}, brotli: {}",
+                    path != null ? path : "classpath", snapshot.identity().body().length,
+                    snapshot.gzip() != null, snapshot.brotli() != null);
+        }
+    }
+    
+    /**
+     * 按 Accept-Encoding 选择表示；文件不存在时返回 null
+     */
+    public Representation select(String acceptEncoding) {
+        Snapshot current = current();
+        if (current == null) {
+            return null;
+        }
+        double brotli = current.brotli() != null ? quality(acceptEncoding, "br") : 0;
+        double gzip = current.gzip() != null ? quality(acceptEncoding, "gzip") : 0;
+        if (brotli > 0 && brotli >= gzip) {
+            return current.brotli();
+        }
+        if (gzip > 0) {
+            return current.gzip();
+        }
+        return current.identity();
+    }
+    
+    private Snapshot current() {
+        if (path != null) {
+            long now = System.nanoTime();
+            long next = nextCheckNanos.get();
+            if (now - next >= 0 && nextCheckNanos.compareAndSet(next, now + checkIntervalNanos)) {
+                reloadIfChanged();
+            }
+        }
+        return snapshot;
+    }
+    
+    private void reloadIfChanged() {
+        Snapshot previous = snapshot;
+        try {
+            Snapshot loaded = loadFile(previous);
+            if (loaded != previous) {
+                snapshot = loaded;
+                if (loaded == null) {
+                    log.warn("assetlinks.json 已被删除: {}", path);
+                } else {
+                    log.info("assetlinks.json 已重新加载 - {} 字节, ETag: {}",
+                            loaded.identity().body().length, loaded.identity().etag());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("重新加载 assetlinks.json 失败，继续使用旧内容: {}", e.toString());
+        }
+    }
+    
+    /**
+     * 读取文件；与 previous 的修改时间和大小都相同时直接返回 previous
+     */
+    private Snapshot loadFile(Snapshot previous) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Path brotliPath = path.resolveSibling(path.getFileName() + BROTLI_SUFFIX);
+        FileTime brotliModified = Files.exists(brotliPath) ? Files.getLastModifiedTime(brotliPath) : null;
+        Stamp stamp = new Stamp(attributes.lastModifiedTime(), attributes.size(), brotliModified);
+        if (previous != null && stamp.equals(previous.stamp())) {
+            return previous;
+        }
+        
+        byte[] content = Files.readAllBytes(path);
+        // 预压缩文件早于原文说明还没有重新生成，不能使用
+        byte[] brotli = brotliModified != null && brotliModified.compareTo(stamp.modified()) >= 0
+                ? Files.readAllBytes(brotliPath) : null;
+        return build(content, brotli, stamp.modified().toMillis(), stamp);
+    }
+    
+    private Snapshot loadClasspath() throws IOException {
+        Resource resource = new ClassPathResource(CLASSPATH_LOCATION);
+        if (!resource.exists()) {
+            return null;
+        }
+        // 使用 InputStream 而不是 getFile()，这样在 JAR 中也能工作
+        byte[] content;
+        try (InputStream in = resource.getInputStream()) {
+            content = in.readAllBytes();
+        }
+        Resource brotliResource = new ClassPathResource(CLASSPATH_LOCATION + BROTLI_SUFFIX);
+        byte[] brotli = null;
+        if (brotliResource.exists()) {
+            try (InputStream in = brotliResource.getInputStream()) {
+                brotli = in.readAllBytes();
+            }
+        }
+        // 打包在 JAR 中的修改时间不可靠，以加载时刻作为 Last-Modified
+        return build(content, brotli, System.currentTimeMillis(), null);
+    }
+    
+    private Snapshot build(byte[] content, byte[] brotli, long lastModified, Stamp stamp) throws IOException {
+        // 校验是合法的 JSON，避免把写了一半的文件发给验证方
+        objectMapper.readTree(content);
+        
+        String hash = sha256(content);
+        // HTTP 日期只精确到秒
+        long modified = lastModified / 1000 * 1000;
+        Representation identity = new Representation(content, "\"" + hash + "\"", null, modified);
+        byte[] gzipped = gzip(content);
+        Representation gzip = gzipped.length < content.length
+                ? new Representation(gzipped, "\"" + hash + "-gzip\"", "gzip", modified) : null;
+        Representation br = brotli != null
+                ? new Representation(brotli, "\"" + hash + "-br\"", "br", modified) : null;
+        return new Snapshot(identity, gzip, br, stamp);
+    }
+    
+    /**
+     * Accept-Encoding 中 coding 的权重（q 值）；未列出时取 * 的权重，都没有则为 0
+     */
+    static double quality(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return 0;
+        }
+        double wildcard = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equals(coding)) {
+                return q;
+            }
+            if (name.equals("*")) {
+                wildcard = q;
+            }
+        }
+        return wildcard;
+    }
+    
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+    
+    private static String sha256(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
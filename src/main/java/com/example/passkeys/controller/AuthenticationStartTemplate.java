@@ -0,0 +1,226 @@
+package com.example.passkeys.controller;
+
+import com.example.passkeys.dto.AuthenticationStartResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.yubico.webauthn.data.AssertionExtensionInputs;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * /authenticate/start 响应的预渲染模板
+ * 
+ * 可发现凭证登录的认证选项除挑战和超时时间外都由依赖方配置决定，每次请求都相同。
+ * 第一次请求时用占位值完整序列化一次响应，按占位值的位置切成固定片段；
+ * 之后每次请求只把挑战、requestId 和超时时间填进片段之间，一次分配出完整的响应字节。
+ * 选项的其余部分与模板不一致（例如依赖方配置变化）时重新渲染模板；
+ * requestId 含有需要转义的字符时退回到完整序列化。
+ */
+final class AuthenticationStartTemplate {
+    
+    private static final ByteArray CHALLENGE_SLOT = new ByteArray(
+            "passkeys-template-challenge".getBytes(StandardCharsets.US_ASCII));
+    private static final String REQUEST_ID_SLOT = "passkeys-template-request-id";
+    private static final long TIMEOUT_SLOT = 987654321987654321L;
+    
+    private enum Slot { CHALLENGE, REQUEST_ID, TIMEOUT }
+    
+    /**
+     * 占位值在渲染结果中的位置
+     */
+    private record Position(int start, int length, Slot slot) {
+    }
+    
+    private final ObjectWriter writer;
+    private volatile Template template;
+    
+    /**
+     * @param writer AuthenticationStartResponse 的 ObjectWriter（不缩进）
+     */
+    AuthenticationStartTemplate(ObjectWriter writer) {
+        this.writer = writer;
+    }
+    
+    byte[] render(String requestId, PublicKeyCredentialRequestOptions options) throws JsonProcessingException {
+        if (!isPlainJsonString(requestId)) {
+            return writer.writeValueAsBytes(AuthenticationStartResponse.of(requestId, options));
+        }
+        Template current = template;
+        if (current == null || !current.fits(options)) {
+            current = Template.render(writer, options);
+            template = current;
+        }
+        return current.fill(requestId, options);
+    }
+    
+    /**
+     * 可以原样放进 JSON 字符串的文本（只含不需要转义的 ASCII 字符）
+     */
+    private static boolean isPlainJsonString(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 渲染好的片段：literals[i] 之后填入 slots[i]，最后接 literals[slots.length]
+     */
+    private static final class Template {
+        
+        private final byte[][] literals;
+        private final Slot[] slots;
+        private final int literalLength;
+        
+        // 渲染模板时的选项（挑战和超时时间以外的部分）
+        private final String rpId;
+        private final boolean hasTimeout;
+        private final Optional<UserVerificationRequirement> userVerification;
+        private final Optional<List<PublicKeyCredentialDescriptor>> allowCredentials;
+        private final AssertionExtensionInputs extensions;
+        
+        private Template(byte[][] literals, Slot[] slots, PublicKeyCredentialRequestOptions options) {
+            this.literals = literals;
+            this.slots = slots;
+            this.literalLength = Arrays.stream(literals).mapToInt(literal -> literal.length).sum();
+            this.rpId = options.getRpId();
+            this.hasTimeout = options.getTimeout().isPresent();
+            this.userVerification = options.getUserVerification();
+            this.allowCredentials = options.getAllowCredentials();
+            this.extensions = options.getExtensions();
+        }
+        
+        static Template render(ObjectWriter writer, PublicKeyCredentialRequestOptions options)
+                throws JsonProcessingException {
+            PublicKeyCredentialRequestOptions.PublicKeyCredentialRequestOptionsBuilder sample =
+                    options.toBuilder().challenge(CHALLENGE_SLOT);
+            if (options.getTimeout().isPresent()) {
+                sample.timeout(TIMEOUT_SLOT);
+            }
+            byte[] rendered = writer.writeValueAsBytes(AuthenticationStartResponse.of(REQUEST_ID_SLOT, sample.build()));
+            
+            // 按占位值在输出中的位置排序后切分
+            List<Position> positions = new ArrayList<>();
+            addPosition(positions, rendered, CHALLENGE_SLOT.getBase64Url(), Slot.CHALLENGE);
+            addPosition(positions, rendered, REQUEST_ID_SLOT, Slot.REQUEST_ID);
+            if (options.getTimeout().isPresent()) {
+                addPosition(positions, rendered, Long.toString(TIMEOUT_SLOT), Slot.TIMEOUT);
+            }
+            positions.sort(Comparator.comparingInt(Position::start));
+            
+            byte[][] literals = new byte[positions.size() + 1][];
+            Slot[] slots = new Slot[positions.size()];
+            int from = 0;
+            for (int i = 0; i < positions.size(); i++) {
+                Position position = positions.get(i);
+                literals[i] = Arrays.copyOfRange(rendered, from, position.start());
+                slots[i] = position.slot();
+                from = position.start() + position.length();
+            }
+            literals[slots.length] = Arrays.copyOfRange(rendered, from, rendered.length);
+            return new Template(literals, slots, options);
+        }
+        
+        boolean fits(PublicKeyCredentialRequestOptions options) {
+            Optional<Long> timeout = options.getTimeout();
+            return hasTimeout == timeout.isPresent()
+                    && (!hasTimeout || timeout.get() >= 0)
+                    && rpId.equals(options.getRpId())
+                    && userVerification.equals(options.getUserVerification())
+                    && allowCredentials.equals(options.getAllowCredentials())
+                    && extensions.equals(options.getExtensions());
+        }
+        
+        byte[] fill(String requestId, PublicKeyCredentialRequestOptions options) {
+            String challenge = options.getChallenge().getBase64Url();
+            long timeout = hasTimeout ? options.getTimeout().get() : 0;
+            
+            int length = literalLength;
+            for (Slot slot : slots) {
+                length += switch (slot) {
+                    case CHALLENGE -> challenge.length();
+                    case REQUEST_ID -> requestId.length();
+                    case TIMEOUT -> decimalLength(timeout);
+                };
+            }
+            
+            byte[] out = new byte[length];
+            int offset = 0;
+            for (int i = 0; i < slots.length; i++) {
+                System.arraycopy(literals[i], 0, out, offset, literals[i].length);
+                offset += literals[i].length;
+                offset = switch (slots[i]) {
+                    case CHALLENGE -> putAscii(out, offset, challenge);
+                    case REQUEST_ID -> putAscii(out, offset, requestId);
+                    case TIMEOUT -> putDecimal(out, offset, timeout);
+                };
+            }
+            byte[] last = literals[slots.length];
+            System.arraycopy(last, 0, out, offset, last.length);
+            return out;
+        }
+    }
+    
+    /**
+     * 记录占位值的位置；占位值必须恰好出现一次
+     */
+    private static void addPosition(List<Position> positions, byte[] rendered, String marker, Slot slot) {
+        byte[] needle = marker.getBytes(StandardCharsets.US_ASCII);
+        int index = indexOf(rendered, needle, 0);
+        if (index < 0 || indexOf(rendered, needle, index + 1) >= 0) {
+            throw new IllegalStateException("无法生成认证选项模板: 占位值 " + slot + " 位置不唯一");
+        }
+        positions.add(new Position(index, needle.length, slot));
+    }
+    
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int i = from; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    private static int putAscii(byte[] out, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            out[offset++] = (byte) value.charAt(i);
+        }
+        return offset;
+    }
+    
+    private static int decimalLength(long value) {
+        int length = 1;
+        while (value >= 10) {
+            value /= 10;
+            length++;
+        }
+        return length;
+    }
+    
+    private static int putDecimal(byte[] out, int offset, long value) {
+        int end = offset + decimalLength(value);
+        int i = end;
+        do {
+            out[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return end;
+    }
+}
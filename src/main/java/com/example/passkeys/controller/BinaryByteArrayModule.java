@@ -0,0 +1,71 @@
+package com.example.passkeys.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.exception.Base64UrlException;
+
+import java.io.IOException;
+
+/**
+ * CBOR 编解码用：ByteArray 按原始字节串读写
+ * 
+ * Yubico 的 ByteArray 默认序列化成 base64url 文本。CBOR 请求/响应里挑战、凭证 ID、
+ * clientDataJSON、attestationObject 等字段直接是 CBOR 字节串（major type 2），
+ * 不再有 base64url 编解码和三分之一的体积膨胀。读取时仍然接受 base64url 文本，
+ * 客户端可以逐个字段迁移。
+ */
+final class BinaryByteArrayModule extends SimpleModule {
+    
+    BinaryByteArrayModule() {
+        super("passkeys-binary-byte-array");
+        addSerializer(ByteArray.class, new Serializer());
+        addDeserializer(ByteArray.class, new Deserializer());
+    }
+    
+    private static final class Serializer extends StdScalarSerializer<ByteArray> {
+        
+        Serializer() {
+            super(ByteArray.class);
+        }
+        
+        @Override
+        public void serialize(ByteArray value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException {
+            byte[] bytes = value.getBytes();
+            generator.writeBinary(bytes, 0, bytes.length);
+        }
+    }
+    
+    private static final class Deserializer extends StdScalarDeserializer<ByteArray> {
+        
+        Deserializer() {
+            super(ByteArray.class);
+        }
+        
+        @Override
+        public ByteArray deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                Object embedded = parser.getEmbeddedObject();
+                if (embedded instanceof byte[]) {
+                    return new ByteArray((byte[]) embedded);
+                }
+            } else if (token == JsonToken.VALUE_STRING) {
+                String text = parser.getText();
+                try {
+                    return ByteArray.fromBase64Url(text);
+                } catch (Base64UrlException e) {
+                    return (ByteArray) context.handleWeirdStringValue(ByteArray.class, text, "不是 base64url 编码");
+                }
+            }
+            return (ByteArray) context.handleUnexpectedToken(ByteArray.class, parser);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.passkeys.controller;
+
+import com.example.passkeys.dto.AuthenticationFinishResponse;
+import com.example.passkeys.dto.AuthenticationStartResponse;
+import com.example.passkeys.dto.ErrorResponse;
+import com.example.passkeys.dto.RegistrationFinishResponse;
+import com.example.passkeys.dto.RegistrationStartResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import org.springframework.http.MediaType;
+
+/**
+ * 仪式接口的响应序列化（Servlet 接口和响应式接口共用）
+ * 
+ * 每种响应类型一个预先创建的 ObjectWriter，配置与 Spring 的 ObjectMapper 相同但不缩进，
+ * 直接序列化成字节数组返回，不经过消息转换器按类型查找序列化器。
+ * JSON 格式下 /authenticate/start 的响应由 AuthenticationStartTemplate 填充预渲染的模板；
+ * CBOR 格式（cbor()）的 ByteArray 字段写成字节串，长度前缀随内容变化，不使用模板。
+ */
+final class CeremonyResponses {
+    
+    private final MediaType mediaType;
+    private final ObjectWriter errorWriter;
+    private final ObjectWriter registrationStartWriter;
+    private final ObjectWriter registrationFinishWriter;
+    private final ObjectWriter authenticationStartWriter;
+    private final ObjectWriter authenticationFinishWriter;
+    private final AuthenticationStartTemplate authenticationStart;
+    
+    private CeremonyResponses(MediaType mediaType, ObjectMapper mapper, boolean template) {
+        ObjectWriter compact = mapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.mediaType = mediaType;
+        this.errorWriter = compact.forType(ErrorResponse.class);
+        this.registrationStartWriter = compact.forType(RegistrationStartResponse.class);
+        this.registrationFinishWriter = compact.forType(RegistrationFinishResponse.class);
+        this.authenticationStartWriter = compact.forType(AuthenticationStartResponse.class);
+        this.authenticationFinishWriter = compact.forType(AuthenticationFinishResponse.class);
+        this.authenticationStart = template ? new AuthenticationStartTemplate(authenticationStartWriter) : null;
+    }
+    
+    /**
+     * application/json 响应
+     */
+    static CeremonyResponses json(ObjectMapper objectMapper) {
+        return new CeremonyResponses(MediaType.APPLICATION_JSON, objectMapper, true);
+    }
+    
+    /**
+     * application/cbor 响应：沿用 Spring ObjectMapper 的配置和模块，换成 CBOR 编码
+     */
+    static CeremonyResponses cbor(ObjectMapper objectMapper) {
+        ObjectMapper cbor = objectMapper.copyWith(new CBORFactory())
+                .registerModule(new BinaryByteArrayModule());
+        return new CeremonyResponses(MediaType.APPLICATION_CBOR, cbor, false);
+    }
+    
+    MediaType mediaType() {
+        return mediaType;
+    }
+    
+    byte[] error(String message) {
+        return write(errorWriter, ErrorResponse.of(message));
+    }
+    
+    byte[] registrationStart(PublicKeyCredentialCreationOptions options) {
+        return write(registrationStartWriter, RegistrationStartResponse.of(options));
+    }
+    
+    byte[] registrationFinish(String username, String credentialId) {
+        return write(registrationFinishWriter, RegistrationFinishResponse.of(username, credentialId));
+    }
+    
+    byte[] authenticationStart(String requestId, PublicKeyCredentialRequestOptions options) {
+        if (authenticationStart == null) {
+            return write(authenticationStartWriter, AuthenticationStartResponse.of(requestId, options));
+        }
+        try {
+            return authenticationStart.render(requestId, options);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("响应序列化失败", e);
+        }
+    }
+    
+    byte[] authenticationFinish(AuthenticationFinishResponse response) {
+        return write(authenticationFinishWriter, response);
+    }
+    
+    private static byte[] write(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("响应序列化失败", e);
+        }
+    }
+}
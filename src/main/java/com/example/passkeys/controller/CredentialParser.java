@@ -0,0 +1,261 @@
+package com.example.passkeys.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.cfg.MapperBuilder;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yubico.webauthn.data.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * finish 请求体的解析（Servlet 接口和响应式接口共用）
+ * 
+ * JSON 和 CBOR 请求体的结构相同，各用一个实例（json() / cbor()）。
+ * 直接从请求字节流一次解析出 PublicKeyCredential，不构建 JsonNode、不重新序列化；
+ * 解析过程中把 Android 客户端使用的 extensionsOutputs 字段当作 clientExtensionResults
+ * （两者同时存在时以 clientExtensionResults 为准）。
+ */
+class CredentialParser {
+    
+    private static final String CLIENT_EXTENSION_RESULTS = "clientExtensionResults";
+    private static final String EXTENSIONS_OUTPUTS = "extensionsOutputs";
+    
+    private static final TypeReference<PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>>
+            REGISTRATION_TYPE = new TypeReference<>() {
+            };
+    
+    private static final TypeReference<PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>>
+            ASSERTION_TYPE = new TypeReference<>() {
+            };
+    
+    private static final CredentialParser JSON = new CredentialParser(configure(JsonMapper.builder())
+            .defaultBase64Variant(Base64Variants.MODIFIED_FOR_URL)
+            .build());
+    
+    private static final CredentialParser CBOR = new CredentialParser(configure(CBORMapper.builder())
+            .addModule(new BinaryByteArrayModule())
+            .build());
+    
+    private final ObjectMapper mapper;
+    private final ObjectReader registrationReader;
+    private final ObjectReader assertionReader;
+    
+    private CredentialParser(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.registrationReader = mapper.readerFor(REGISTRATION_TYPE);
+        this.assertionReader = mapper.readerFor(ASSERTION_TYPE);
+    }
+    
+    /**
+     * application/json 请求体（字节字段为 base64url 文本）
+     */
+    static CredentialParser json() {
+        return JSON;
+    }
+    
+    /**
+     * application/cbor 请求体（字节字段为 CBOR 字节串，也接受 base64url 文本）
+     */
+    static CredentialParser cbor() {
+        return CBOR;
+    }
+    
+    /**
+     * 与 PublicKeyCredential.parse*ResponseJson 相同的配置（那两个方法每次调用都会新建一个 ObjectMapper）
+     */
+    private static <M extends ObjectMapper, B extends MapperBuilder<M, B>> B configure(B builder) {
+        return builder
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true)
+                .serializationInclusion(JsonInclude.Include.NON_ABSENT)
+                .addModule(new Jdk8Module())
+                .addModule(new JavaTimeModule())
+                // 解析错误信息里不附带请求体内容
+                .disable(StreamReadFeature.INCLUDE_SOURCE_IN_LOCATION);
+    }
+    
+    /**
+     * 注册完成请求：{ "username": "...", "credential": {...} }
+     */
+    record RegistrationFinish(
+            String username,
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential) {
+    }
+    
+    /**
+     * 认证完成请求：{ "requestId": "...", "credential": {...} }
+     */
+    record AuthenticationFinish(
+            String requestId,
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential) {
+    }
+    
+    RegistrationFinish parseRegistrationFinish(InputStream body) throws IOException {
+        try (JsonParser parser = mapper.createParser(body)) {
+            return parseRegistrationFinish(parser);
+        }
+    }
+    
+    RegistrationFinish parseRegistrationFinish(byte[] body) throws IOException {
+        try (JsonParser parser = mapper.createParser(body)) {
+            return parseRegistrationFinish(parser);
+        }
+    }
+    
+    AuthenticationFinish parseAuthenticationFinish(InputStream body) throws IOException {
+        try (JsonParser parser = mapper.createParser(body)) {
+            return parseAuthenticationFinish(parser);
+        }
+    }
+    
+    AuthenticationFinish parseAuthenticationFinish(byte[] body) throws IOException {
+        try (JsonParser parser = mapper.createParser(body)) {
+            return parseAuthenticationFinish(parser);
+        }
+    }
+    
+    private RegistrationFinish parseRegistrationFinish(JsonParser parser) throws IOException {
+        Envelope<PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs>> envelope =
+                parseEnvelope(parser, "username", registrationReader);
+        return new RegistrationFinish(envelope.key, envelope.credential);
+    }
+    
+    private AuthenticationFinish parseAuthenticationFinish(JsonParser parser) throws IOException {
+        Envelope<PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>> envelope =
+                parseEnvelope(parser, "requestId", assertionReader);
+        return new AuthenticationFinish(envelope.key, envelope.credential);
+    }
+    
+    /**
+     * 逐个读取外层字段：keyField 取文本值，credential 交给 reader 直接反序列化，其余字段跳过
+     */
+    private <C> Envelope<C> parseEnvelope(JsonParser parser, String keyField, ObjectReader reader)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw JsonMappingException.from(parser, "请求体必须是对象");
+        }
+        Envelope<C> envelope = new Envelope<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (keyField.equals(field) && value.isScalarValue()) {
+                envelope.key = parser.getText();
+            } else if ("credential".equals(field) && value == JsonToken.START_OBJECT) {
+                envelope.credential = reader.readValue(new ExtensionsFieldRenamer(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (envelope.key == null) {
+            throw JsonMappingException.from(parser, "缺少 " + keyField + " 字段");
+        }
+        if (envelope.credential == null) {
+            throw JsonMappingException.from(parser, "缺少 credential 字段");
+        }
+        return envelope;
+    }
+    
+    private static final class Envelope<C> {
+        private String key;
+        private C credential;
+    }
+    
+    /**
+     * 凭证对象第一层的 extensionsOutputs 字段名读作 clientExtensionResults
+     * 
+     * 创建时底层解析器位于凭证对象的 START_OBJECT 上；只跟踪嵌套深度，不缓冲任何内容。
+     * clientExtensionResults 在前时跳过之后的 extensionsOutputs；extensionsOutputs 在前时
+     * 之后的 clientExtensionResults 覆盖它（同名属性以后出现的为准）。
+     */
+    private static final class ExtensionsFieldRenamer extends JsonParserDelegate {
+        
+        // 相对凭证对象的嵌套深度，1 表示凭证对象的直接字段
+        private int depth = 1;
+        private boolean renamed;
+        private boolean seenClientExtensionResults;
+        
+        ExtensionsFieldRenamer(JsonParser parser) {
+            super(parser);
+        }
+        
+        @Override
+        public JsonToken nextToken() throws IOException {
+            renamed = false;
+            JsonToken token = delegate.nextToken();
+            if (token == null) {
+                return null;
+            }
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> depth++;
+                case END_OBJECT, END_ARRAY -> depth--;
+                case FIELD_NAME -> {
+                    if (depth == 1) {
+                        String name = delegate.currentName();
+                        if (CLIENT_EXTENSION_RESULTS.equals(name)) {
+                            seenClientExtensionResults = true;
+                        } else if (EXTENSIONS_OUTPUTS.equals(name)) {
+                            if (seenClientExtensionResults) {
+                                // 已有标准字段：跳过这个字段及其值
+                                delegate.nextToken();
+                                delegate.skipChildren();
+                                return nextToken();
+                            }
+                            renamed = true;
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+            return token;
+        }
+        
+        @Override
+        public JsonToken nextValue() throws IOException {
+            JsonToken token = nextToken();
+            return token == JsonToken.FIELD_NAME ? nextToken() : token;
+        }
+        
+        @Override
+        public JsonParser skipChildren() throws IOException {
+            if (delegate.currentToken() == JsonToken.START_OBJECT || delegate.currentToken() == JsonToken.START_ARRAY) {
+                delegate.skipChildren();
+                depth--;
+            }
+            return this;
+        }
+        
+        @Override
+        public String currentName() throws IOException {
+            return renamed ? CLIENT_EXTENSION_RESULTS : delegate.currentName();
+        }
+        
+        @Override
+        public String getCurrentName() throws IOException {
+            return currentName();
+        }
+        
+        @Override
+        public String getText() throws IOException {
+            return renamed ? CLIENT_EXTENSION_RESULTS : delegate.getText();
+        }
+        
+        @Override
+        public String getValueAsString() throws IOException {
+            return renamed ? CLIENT_EXTENSION_RESULTS : delegate.getValueAsString();
+        }
+    }
+}
@@ -1,31 +1,59 @@
 package com.example.passkeys.controller;
 
+import com.example.passkeys.controller.CredentialParser.AuthenticationFinish;
+import com.example.passkeys.controller.CredentialParser.RegistrationFinish;
 import com.example.passkeys.dto.AuthenticationRequest;
 import com.example.passkeys.dto.RegistrationRequest;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Ceremony;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import com.example.passkeys.model.User;
+import com.example.passkeys.ratelimit.AdmissionControl;
+import com.example.passkeys.service.CeremonyException;
+import com.example.passkeys.service.VerificationExecutor;
 import com.example.passkeys.service.WebAuthnService;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yubico.webauthn.AssertionRequest;
-import com.yubico.webauthn.RegistrationResult;
 import com.yubico.webauthn.data.*;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.AUTHENTICATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.REGISTRATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.PARSE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Step.FINISH;
+import static com.example.passkeys.metrics.PasskeysMetrics.Step.START;
 
 /**
  * 通行密钥 REST API 控制器
  * 
- * 提供注册和认证的 HTTP 接口
+ * 提供注册和认证的 HTTP 接口。注册和认证的四个接口同时支持 JSON 和 CBOR：
+ * Content-Type: application/cbor 的请求体按 CBOR 解析（字节字段为 CBOR 字节串），
+ * Accept: application/cbor 时响应 CBOR（挑战、用户 ID 等字节字段为字节串）
+ * 
+ * 注册完成和认证完成接口返回 CompletableFuture：签名校验在 VerificationExecutor 上执行，
+ * HTTP 线程解析请求体、取出挑战后即返回，不等待 CPU 密集的校验
  */
 @RestController
 @RequestMapping("/passkeys")
@@ -34,12 +62,29 @@ public class PasskeysController {
     
     private static final Logger log = LoggerFactory.getLogger(PasskeysController.class);
     
+    /**
+     * 客户端给出的剩余超时（毫秒），用于签名校验的截止时刻
+     */
+    static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+    
     private final WebAuthnService webAuthnService;
     private final ObjectMapper objectMapper;
+    private final CeremonyResponses jsonResponses;
+    private final CeremonyResponses cborResponses;
+    private final PasskeysMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final VerificationExecutor verificationExecutor;
     
-    public PasskeysController(WebAuthnService webAuthnService, ObjectMapper objectMapper) {
+    public PasskeysController(WebAuthnService webAuthnService, ObjectMapper objectMapper,
+                              PasskeysMetrics metrics, AdmissionControl admissionControl,
+                              VerificationExecutor verificationExecutor) {
         this.webAuthnService = webAuthnService;
         this.objectMapper = objectMapper;
+        this.jsonResponses = CeremonyResponses.json(objectMapper);
+        this.cborResponses = CeremonyResponses.cbor(objectMapper);
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.verificationExecutor = verificationExecutor;
     }
     
     /**
@@ -61,15 +106,22 @@ public class PasskeysController {
      * Body: { "username": "user@example.com", "displayName": "User Name" }
      */
     @PostMapping("/register/start")
-    public ResponseEntity<Map<String, Object>> startRegistration(
-            @RequestBody RegistrationRequest request) {
+    public ResponseEntity<byte[]> startRegistration(
+            @RequestBody RegistrationRequest request, @RequestHeader HttpHeaders headers) {
         
+        CeremonyResponses responses = responsesFor(headers);
         try {
             log.info("收到注册请求 - 用户名: {}", request.getUsername());
             
             if (request.getUsername() == null || request.getUsername().isEmpty()) {
-                return ResponseEntity.badRequest()
-                        .body(createErrorResponse("用户名不能为空"));
+                metrics.recordOutcome(REGISTRATION, START, Outcome.INVALID_REQUEST);
+                return respond(responses, HttpStatus.BAD_REQUEST, responses.error("用户名不能为空"));
+            }
+            
+            long retryAfter = admissionControl.admitUser(request.getUsername());
+            if (retryAfter > 0) {
+                metrics.recordOutcome(REGISTRATION, START, Outcome.RATE_LIMITED);
+                return tooManyRequests(responses, retryAfter);
             }
             
             String displayName = request.getDisplayName() != null ? 
@@ -78,16 +130,15 @@ public class PasskeysController {
             PublicKeyCredentialCreationOptions options = 
                     webAuthnService.startRegistration(request.getUsername(), displayName);
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("options", options);
+            byte[] response = responses.registrationStart(options);
             
-            return ResponseEntity.ok(response);
+            metrics.recordOutcome(REGISTRATION, START, Outcome.SUCCESS);
+            return respond(responses, HttpStatus.OK, response);
             
         } catch (Exception e) {
+            metrics.recordOutcome(REGISTRATION, START, outcomeOf(e));
             log.error("注册开始失败", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("注册开始失败: " + e.getMessage()));
+            return respond(responses, HttpStatus.INTERNAL_SERVER_ERROR, responses.error("注册开始失败: " + e.getMessage()));
         }
     }
     
@@ -98,38 +149,47 @@ public class PasskeysController {
      * Body: { "username": "user@example.com", "credential": {...} }
      */
     @PostMapping("/register/finish")
-    public ResponseEntity<Map<String, Object>> finishRegistration(
-            @RequestBody JsonNode requestBody) {
+    public CompletableFuture<ResponseEntity<byte[]>> finishRegistration(
+            InputStream requestBody, @RequestHeader HttpHeaders headers) {
         
+        long deadline = deadlineFor(headers);
+        CeremonyResponses responses = responsesFor(headers);
+        String username;
+        PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential;
         try {
-            String username = requestBody.get("username").asText();
-            JsonNode credentialNode = requestBody.get("credential");
-            
-            log.info("完成注册 - 用户名: {}", username);
-            
-            // 解析凭证
-            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential = 
-                    parseRegistrationCredential(credentialNode);
-            
-            RegistrationResult result = webAuthnService.finishRegistration(credential, username);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", "注册成功");
-            response.put("username", username);
-            response.put("credentialId", credential.getId().getBase64Url());
-            
-            return ResponseEntity.ok(response);
-            
-        } catch (RegistrationFailedException e) {
-            log.error("注册验证失败", e);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(createErrorResponse("注册验证失败: " + e.getMessage()));
+            // 直接从请求体字节流解析凭证（包含读取请求体的时间）
+            long phaseStart = System.nanoTime();
+            RegistrationFinish finish = parserFor(headers).parseRegistrationFinish(requestBody);
+            username = finish.username();
+            credential = finish.credential();
+            metrics.recordPhase(REGISTRATION, PARSE, phaseStart);
         } catch (Exception e) {
+            // 凭证解析失败说明请求体本身有问题
+            metrics.recordOutcome(REGISTRATION, FINISH, Outcome.INVALID_REQUEST);
             log.error("注册完成失败", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("注册完成失败: " + e.getMessage()));
+            return CompletableFuture.completedFuture(respond(responses, HttpStatus.INTERNAL_SERVER_ERROR,
+                    responses.error("注册完成失败: " + e.getMessage())));
         }
+        
+        long retryAfter = admissionControl.admitUser(username);
+        if (retryAfter > 0) {
+            metrics.recordOutcome(REGISTRATION, FINISH, Outcome.RATE_LIMITED);
+            return CompletableFuture.completedFuture(tooManyRequests(responses, retryAfter));
+        }
+        
+        log.info("完成注册 - 用户名: {}", username);
+        
+        // 签名校验在 VerificationExecutor 上执行，当前 HTTP 线程立即返回
+        String credentialId = credential.getId().getBase64Url();
+        return webAuthnService.finishRegistrationAsync(credential, username, deadline)
+                .handle((result, error) -> {
+                    if (error != null) {
+                        return finishFailed(responses, REGISTRATION, error, HttpStatus.BAD_REQUEST, "注册");
+                    }
+                    byte[] response = responses.registrationFinish(username, credentialId);
+                    metrics.recordOutcome(REGISTRATION, FINISH, Outcome.SUCCESS);
+                    return respond(responses, HttpStatus.OK, response);
+                });
     }
     
     /**
@@ -139,30 +199,30 @@ public class PasskeysController {
      * Body: { "username": "user@example.com" } 或 {} (使用可发现凭证)
      */
     @PostMapping("/authenticate/start")
-    public ResponseEntity<Map<String, Object>> startAuthentication(
-            @RequestBody(required = false) AuthenticationRequest request) {
+    public ResponseEntity<byte[]> startAuthentication(
+            @RequestBody(required = false) AuthenticationRequest request, @RequestHeader HttpHeaders headers) {
         
+        CeremonyResponses responses = responsesFor(headers);
         try {
             //String username = request != null ? request.getUsername() : null;
             //log.info("收到认证请求 - 用户名: {}", username != null ? username : "可发现凭证");
-
+            
             //写死发现所有可用凭证
             String username = "";
             Map<String, Object> result = webAuthnService.startAuthentication(username);
             String requestId = (String) result.get("requestId");
             AssertionRequest assertionRequest = (AssertionRequest) result.get("request");
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("requestId", requestId);
-            response.put("options", assertionRequest.getPublicKeyCredentialRequestOptions());
+            byte[] response = responses.authenticationStart(
+                    requestId, assertionRequest.getPublicKeyCredentialRequestOptions());
             
-            return ResponseEntity.ok(response);
+            metrics.recordOutcome(AUTHENTICATION, START, Outcome.SUCCESS);
+            return respond(responses, HttpStatus.OK, response);
             
         } catch (Exception e) {
+            metrics.recordOutcome(AUTHENTICATION, START, outcomeOf(e));
             log.error("认证开始失败", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("认证开始失败: " + e.getMessage()));
+            return respond(responses, HttpStatus.INTERNAL_SERVER_ERROR, responses.error("认证开始失败: " + e.getMessage()));
         }
     }
     
@@ -173,51 +233,75 @@ public class PasskeysController {
      * Body: { "requestId": "...", "credential": {...} }
      */
     @PostMapping("/authenticate/finish")
-    public ResponseEntity<Map<String, Object>> finishAuthentication(
-            @RequestBody JsonNode requestBody) {
+    public CompletableFuture<ResponseEntity<byte[]>> finishAuthentication(
+            InputStream requestBody, @RequestHeader HttpHeaders headers) {
         
+        long deadline = deadlineFor(headers);
+        CeremonyResponses responses = responsesFor(headers);
+        String requestId;
+        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential;
         try {
-            String requestId = requestBody.get("requestId").asText();
-            JsonNode credentialNode = requestBody.get("credential");
-            
-            log.info("完成认证 - 请求ID: {}", requestId);
-            
-            // 解析凭证
-            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential = 
-                    parseAuthenticationCredential(credentialNode);
-            
-            Map<String, Object> result = webAuthnService.finishAuthentication(credential, requestId);
-            
-            return ResponseEntity.ok(result);
-            
-        } catch (AssertionFailedException e) {
-            log.error("认证验证失败", e);
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(createErrorResponse("认证验证失败: " + e.getMessage()));
+            // 直接从请求体字节流解析凭证（包含读取请求体的时间）
+            long phaseStart = System.nanoTime();
+            AuthenticationFinish finish = parserFor(headers).parseAuthenticationFinish(requestBody);
+            requestId = finish.requestId();
+            credential = finish.credential();
+            metrics.recordPhase(AUTHENTICATION, PARSE, phaseStart);
         } catch (Exception e) {
+            metrics.recordOutcome(AUTHENTICATION, FINISH, Outcome.INVALID_REQUEST);
             log.error("认证完成失败", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(createErrorResponse("认证完成失败: " + e.getMessage()));
+            return CompletableFuture.completedFuture(respond(responses, HttpStatus.INTERNAL_SERVER_ERROR,
+                    responses.error("认证完成失败: " + e.getMessage())));
+        }
+        
+        // 签名校验之前按凭证 ID 限流
+        long retryAfter = admissionControl.admitCredential(credential.getId().getBase64Url());
+        if (retryAfter > 0) {
+            metrics.recordOutcome(AUTHENTICATION, FINISH, Outcome.RATE_LIMITED);
+            return CompletableFuture.completedFuture(tooManyRequests(responses, retryAfter));
         }
+        
+        log.info("完成认证 - 请求ID: {}", requestId);
+        
+        // 签名校验在 VerificationExecutor 上执行，当前 HTTP 线程立即返回
+        return webAuthnService.finishAuthenticationAsync(credential, requestId, deadline)
+                .handle((result, error) -> {
+                    if (error != null) {
+                        return finishFailed(responses, AUTHENTICATION, error, HttpStatus.UNAUTHORIZED, "认证");
+                    }
+                    byte[] response = responses.authenticationFinish(result);
+                    metrics.recordOutcome(AUTHENTICATION, FINISH, Outcome.SUCCESS);
+                    return respond(responses, HttpStatus.OK, response);
+                });
     }
     
     /**
-     * 获取用户列表
+     * 获取用户列表（按用户名排序）
      * 
-     * GET /api/passkeys/users
+     * GET /api/passkeys/users 返回全部用户（兼容原有调用方）
+     * GET /api/passkeys/users?cursor=...&limit=100 分页返回，带任一参数即分页（limit 默认 100）；
+     * 响应中的 nextCursor 作为下一页的 cursor 参数，不返回 nextCursor 表示已到最后一页
      */
     @GetMapping("/users")
-    public ResponseEntity<Map<String, Object>> getUserList() {
+    public ResponseEntity<Map<String, Object>> getUserList(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         try {
-            List<Map<String, Object>> users = webAuthnService.getUserList();
-            
-            Map<String, Object> response = new HashMap<>();
+            Map<String, Object> response = new LinkedHashMap<>();
             response.put("success", true);
-            response.put("users", users);
-            response.put("count", users.size());
+            if (cursor == null && limit == null) {
+                List<Map<String, Object>> users = webAuthnService.getUserList();
+                response.put("users", users);
+                response.put("count", users.size());
+            } else {
+                response.putAll(webAuthnService.getUserPage(cursor, limit != null ? limit : WebAuthnService.DEFAULT_PAGE_SIZE));
+            }
             
             return ResponseEntity.ok(response);
             
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
         } catch (Exception e) {
             log.error("获取用户列表失败", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -225,85 +309,173 @@ public class PasskeysController {
         }
     }
     
+    /**
+     * 流式导出全部用户（NDJSON，每行一个用户）
+     * 
+     * GET /api/passkeys/users/stream
+     * 边遍历边写出，内存占用与用户数量无关
+     */
+    @GetMapping("/users/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        StreamingResponseBody body = out -> {
+            long count = 0;
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // 每行之间只用换行分隔（默认的根值分隔符是空格）
+                generator.setRootValueSeparator(null);
+                Iterator<User> users = webAuthnService.streamUsers().iterator();
+                while (users.hasNext()) {
+                    writeUserLine(generator, users.next());
+                    count++;
+                }
+            }
+            log.debug("流式导出用户完成 - 数量: {}", count);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+    
     // ========== 辅助方法 ==========
     
     /**
-     * 解析注册凭证
+     * 请求体格式：Content-Type 为 application/cbor 时按 CBOR 解析，否则按 JSON
      */
-    private PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> 
-            parseRegistrationCredential(JsonNode credentialNode) throws JsonProcessingException, IOException {
-        
-        log.info("🔍 解析注册凭证前 - 原始字段: {}", credentialNode.fieldNames());
-        log.info("🔍 是否包含 extensionsOutputs: {}", credentialNode.has("extensionsOutputs"));
-        log.info("🔍 是否包含 clientExtensionResults: {}", credentialNode.has("clientExtensionResults"));
-        
-        // 预处理：将 extensionsOutputs 字段重命名为 clientExtensionResults
-        // 这是为了兼容某些客户端实现（如 Android）使用不同的字段名
-        JsonNode processedNode = normalizeExtensionsField(credentialNode);
-        
-        log.info("🔍 解析注册凭证后 - 处理后字段: {}", processedNode.fieldNames());
-        
-        String credentialJson = objectMapper.writeValueAsString(processedNode);
-        log.info("🔍 最终 JSON: {}", credentialJson);
-        
-        return PublicKeyCredential.parseRegistrationResponseJson(credentialJson);
+    private static CredentialParser parserFor(HttpHeaders headers) {
+        return isCbor(headers.getContentType()) ? CredentialParser.cbor() : CredentialParser.json();
     }
     
     /**
-     * 解析认证凭证
+     * 响应格式：由 Accept 中第一个明确列出的 application/cbor 或 application/json 决定，
+     * 都没有列出（只有通配符或不带 Accept）时与请求体格式相同
      */
-    private PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> 
-            parseAuthenticationCredential(JsonNode credentialNode) throws JsonProcessingException, IOException {
-        
-        // 预处理：将 extensionsOutputs 字段重命名为 clientExtensionResults
-        JsonNode processedNode = normalizeExtensionsField(credentialNode);
-        
-        String credentialJson = objectMapper.writeValueAsString(processedNode);
-        return PublicKeyCredential.parseAssertionResponseJson(credentialJson);
+    private CeremonyResponses responsesFor(HttpHeaders headers) {
+        for (MediaType accepted : headers.getAccept()) {
+            if (isCbor(accepted)) {
+                return cborResponses;
+            }
+            if (MediaType.APPLICATION_JSON.equalsTypeAndSubtype(accepted)) {
+                return jsonResponses;
+            }
+        }
+        return isCbor(headers.getContentType()) ? cborResponses : jsonResponses;
+    }
+    
+    private static boolean isCbor(MediaType mediaType) {
+        return mediaType != null && MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType);
     }
     
     /**
-     * 创建错误响应
+     * 仪式接口的响应（CeremonyResponses 已序列化好的字节）
      */
-    private Map<String, Object> createErrorResponse(String message) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", false);
-        response.put("error", message);
-        response.put("timestamp", System.currentTimeMillis());
-        return response;
+    private static ResponseEntity<byte[]> respond(CeremonyResponses responses, HttpStatus status, byte[] body) {
+        return ResponseEntity.status(status)
+                .contentType(responses.mediaType())
+                .body(body);
     }
     
     /**
-     * 规范化扩展字段名
-     * 移除非标准的 extensionsOutputs 字段，保留标准的 clientExtensionResults 字段
+     * 准入控制拒绝时的响应（429，Retry-After 为建议的重试等待秒数）
      */
-    private JsonNode normalizeExtensionsField(JsonNode credentialNode) {
-        if (credentialNode.has("extensionsOutputs")) {
+    private static ResponseEntity<byte[]> tooManyRequests(CeremonyResponses responses, long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(responses.mediaType())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(responses.error("请求过于频繁，请稍后重试"));
+    }
+    
+    /**
+     * 异步完成注册 / 认证失败时的响应
+     * 
+     * 校验线程池已满或超过请求期限时返回 503 和 Retry-After（客户端可以稍后重试），
+     * 校验未通过时返回 verificationFailedStatus，其他错误返回 500
+     * 
+     * @param ceremonyName 错误信息中的仪式名称（注册 / 认证）
+     */
+    private ResponseEntity<byte[]> finishFailed(CeremonyResponses responses, Ceremony ceremony, Throwable error,
+                                                HttpStatus verificationFailedStatus, String ceremonyName) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Outcome outcome = outcomeOf(e);
+        metrics.recordOutcome(ceremony, FINISH, outcome);
+        switch (outcome) {
+            case OVERLOADED:
+            case TIMED_OUT:
+                log.warn("{}完成失败 - {}", ceremonyName, outcome == Outcome.TIMED_OUT ? "超过请求期限" : e.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .contentType(responses.mediaType())
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body(responses.error("服务器繁忙，请稍后重试"));
+            case VERIFICATION_FAILED:
+                log.error(ceremonyName + "验证失败", e);
+                return respond(responses, verificationFailedStatus,
+                        responses.error(ceremonyName + "验证失败: " + e.getMessage()));
+            default:
+                log.error(ceremonyName + "完成失败", e);
+                return respond(responses, HttpStatus.INTERNAL_SERVER_ERROR,
+                        responses.error(ceremonyName + "完成失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 签名校验的截止时刻
+     * 
+     * 服务器的最长等待时间（passkeys.verification.timeout-millis）；客户端在 X-Request-Timeout-Ms
+     * 中给出更短的超时（毫秒）时取较短者，客户端已经放弃等待的请求不再校验
+     */
+    private long deadlineFor(HttpHeaders headers) {
+        long now = System.nanoTime();
+        long timeoutMillis = verificationExecutor.getTimeoutMillis();
+        String clientTimeout = headers.getFirst(REQUEST_TIMEOUT_HEADER);
+        if (clientTimeout != null) {
             try {
-                // 使用 deepCopy 创建可变副本
-                com.fasterxml.jackson.databind.node.ObjectNode mutableNode = 
-                        ((com.fasterxml.jackson.databind.node.ObjectNode) credentialNode).deepCopy();
-                
-                // 移除非标准的 extensionsOutputs 字段
-                // 如果 clientExtensionResults 不存在，则将 extensionsOutputs 重命名为 clientExtensionResults
-                // 如果 clientExtensionResults 已存在，则直接移除 extensionsOutputs
-                if (!mutableNode.has("clientExtensionResults")) {
-                    JsonNode extensionsOutputs = mutableNode.remove("extensionsOutputs");
-                    if (extensionsOutputs != null) {
-                        mutableNode.set("clientExtensionResults", extensionsOutputs);
-                        log.info("✅ 已将 extensionsOutputs 重命名为 clientExtensionResults");
-                    }
-                } else {
-                    mutableNode.remove("extensionsOutputs");
-                    log.info("✅ 已移除重复的 extensionsOutputs 字段（保留 clientExtensionResults）");
-                }
-                
-                return mutableNode;
-            } catch (Exception e) {
-                log.error("⚠️ 字段转换失败，使用原始节点", e);
+                timeoutMillis = Math.min(timeoutMillis, Math.max(0, Long.parseLong(clientTimeout.trim())));
+            } catch (NumberFormatException e) {
+                // 格式错误时忽略，使用服务器的默认值
             }
         }
-        return credentialNode;
+        return now + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+    
+    /**
+     * 写出一行用户信息（字段与分页接口一致，直接写出，不构建中间 Map）
+     */
+    private void writeUserLine(JsonGenerator generator, User user) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("username", user.getUsername());
+        if (user.getDisplayName() != null) {
+            generator.writeStringField("displayName", user.getDisplayName());
+        }
+        generator.writeStringField("userId", user.getId());
+        generator.writeNumberField("authenticatorCount", user.getAuthenticators().size());
+        generator.writeNumberField("createdAt", user.getCreatedAt());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+    
+    /**
+     * 异常对应的仪式结果类型（包级可见，响应式接口共用）
+     */
+    static Outcome outcomeOf(Throwable e) {
+        if (e instanceof CeremonyException) {
+            return ((CeremonyException) e).getOutcome();
+        }
+        if (e instanceof RegistrationFailedException || e instanceof AssertionFailedException) {
+            return Outcome.VERIFICATION_FAILED;
+        }
+        if (e instanceof TimeoutException) {
+            return Outcome.TIMED_OUT;
+        }
+        return Outcome.ERROR;
+    }
+    
+    /**
+     * 创建错误响应（包级可见，响应式接口共用）
+     */
+    static Map<String, Object> createErrorResponse(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", message);
+        response.put("timestamp", System.currentTimeMillis());
+        return response;
     }
 }
-
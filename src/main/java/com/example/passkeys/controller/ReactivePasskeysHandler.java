@@ -0,0 +1,309 @@
+package com.example.passkeys.controller;
+
+import com.example.passkeys.controller.CredentialParser.AuthenticationFinish;
+import com.example.passkeys.controller.CredentialParser.RegistrationFinish;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import com.example.passkeys.ratelimit.AdmissionControl;
+import com.example.passkeys.service.CeremonyException;
+import com.example.passkeys.service.ReactiveWebAuthnService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.exception.AssertionFailedException;
+import com.yubico.webauthn.exception.RegistrationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.AUTHENTICATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.REGISTRATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.PARSE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Step.FINISH;
+import static com.example.passkeys.metrics.PasskeysMetrics.Step.START;
+
+/**
+ * 通行密钥的响应式接口（WebFlux 函数式端点）
+ * 
+ * 路径、请求体、响应体和状态码与 PasskeysController 相同，客户端可以直接切换到响应式端口
+ * 
+ * 准入控制与 Servlet 接口一致：四个仪式接口先按客户端地址限流（相当于 AdmissionInterceptor），
+ * 解析出请求体之后再按账户限流。客户端地址取连接的对端地址。
+ */
+public class ReactivePasskeysHandler {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReactivePasskeysHandler.class);
+    
+    private static final byte[] EMPTY_BODY = new byte[0];
+    
+    private final ReactiveWebAuthnService webAuthnService;
+    private final CredentialParser credentialParser;
+    private final CeremonyResponses responses;
+    private final PasskeysMetrics metrics;
+    private final AdmissionControl admissionControl;
+    
+    public ReactivePasskeysHandler(ReactiveWebAuthnService webAuthnService, ObjectMapper objectMapper,
+                                   PasskeysMetrics metrics, AdmissionControl admissionControl) {
+        this.webAuthnService = webAuthnService;
+        this.credentialParser = CredentialParser.json();
+        this.responses = CeremonyResponses.json(objectMapper);
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+    }
+    
+    /**
+     * 路由表（与 PasskeysController 的 /passkeys 映射一致）
+     */
+    public RouterFunction<ServerResponse> routes() {
+        RouterFunctions.Builder ceremonies = RouterFunctions.route()
+                .path("/passkeys", builder -> builder
+                        .POST("/register/start", this::startRegistration)
+                        .POST("/register/finish", this::finishRegistration)
+                        .POST("/authenticate/start", this::startAuthentication)
+                        .POST("/authenticate/finish", this::finishAuthentication));
+        if (admissionControl.isEnabled()) {
+            ceremonies.filter(this::admitClient);
+        }
+        return RouterFunctions.route()
+                .GET("/passkeys/health", this::health)
+                .add(ceremonies.build())
+                .build();
+    }
+    
+    /**
+     * 仪式接口的客户端限流，取不到令牌时直接返回 429 和 Retry-After
+     */
+    private Mono<ServerResponse> admitClient(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        String address = clientAddress(request);
+        long retryAfter = admissionControl.admitClient(address);
+        if (retryAfter == 0) {
+            return next.handle(request);
+        }
+        
+        String path = request.path();
+        metrics.recordOutcome(path.contains("/register/") ? REGISTRATION : AUTHENTICATION,
+                path.endsWith("/start") ? START : FINISH, Outcome.RATE_LIMITED);
+        log.debug("客户端请求过于频繁 - 地址: {}, 路径: {}", address, path);
+        return tooManyRequests(retryAfter);
+    }
+    
+    /**
+     * 健康检查接口
+     */
+    public Mono<ServerResponse> health(ServerRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "UP");
+        response.put("service", "Passkeys Server");
+        response.put("timestamp", System.currentTimeMillis());
+        return ok(response);
+    }
+    
+    /**
+     * 开始注册流程
+     * 
+     * POST /passkeys/register/start
+     * Body: { "username": "user@example.com", "displayName": "User Name" }
+     */
+    public Mono<ServerResponse> startRegistration(ServerRequest request) {
+        return request.bodyToMono(JsonNode.class)
+                .onErrorMap(ReactivePasskeysHandler::invalidRequest)
+                // 请求体缺失时与读取字段失败一样按无效请求处理
+                .defaultIfEmpty(MissingNode.getInstance())
+                .flatMap(body -> {
+                    String username = body.path("username").asText("");
+                    log.info("收到注册请求 - 用户名: {}", username);
+                    
+                    if (username.isEmpty()) {
+                        metrics.recordOutcome(REGISTRATION, START, Outcome.INVALID_REQUEST);
+                        return error(HttpStatus.BAD_REQUEST, "用户名不能为空");
+                    }
+                    
+                    long retryAfter = admissionControl.admitUser(username);
+                    if (retryAfter > 0) {
+                        metrics.recordOutcome(REGISTRATION, START, Outcome.RATE_LIMITED);
+                        return tooManyRequests(retryAfter);
+                    }
+                    
+                    String displayName = body.path("displayName").asText(username);
+                    return webAuthnService.startRegistration(username, displayName)
+                            .flatMap(options -> {
+                                byte[] response = responses.registrationStart(options);
+                                
+                                metrics.recordOutcome(REGISTRATION, START, Outcome.SUCCESS);
+                                return json(HttpStatus.OK, response);
+                            });
+                })
+                .onErrorResume(e -> {
+                    metrics.recordOutcome(REGISTRATION, START, PasskeysController.outcomeOf(e));
+                    log.error("注册开始失败", e);
+                    return error(HttpStatus.INTERNAL_SERVER_ERROR, "注册开始失败: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * 完成注册流程
+     * 
+     * POST /passkeys/register/finish
+     * Body: { "username": "user@example.com", "credential": {...} }
+     */
+    public Mono<ServerResponse> finishRegistration(ServerRequest request) {
+        return request.bodyToMono(byte[].class)
+                .onErrorMap(ReactivePasskeysHandler::invalidRequest)
+                // 请求体缺失时与解析失败一样按无效请求处理
+                .defaultIfEmpty(EMPTY_BODY)
+                .<RegistrationFinish>handle((body, sink) -> {
+                    long phaseStart = System.nanoTime();
+                    try {
+                        RegistrationFinish finish = credentialParser.parseRegistrationFinish(body);
+                        metrics.recordPhase(REGISTRATION, PARSE, phaseStart);
+                        log.info("完成注册 - 用户名: {}", finish.username());
+                        sink.next(finish);
+                    } catch (Exception e) {
+                        sink.error(invalidRequest(e));
+                    }
+                })
+                .flatMap(finish -> {
+                    long retryAfter = admissionControl.admitUser(finish.username());
+                    if (retryAfter > 0) {
+                        metrics.recordOutcome(REGISTRATION, FINISH, Outcome.RATE_LIMITED);
+                        return tooManyRequests(retryAfter);
+                    }
+                    return webAuthnService.finishRegistration(finish.credential(), finish.username())
+                            .flatMap(result -> {
+                                byte[] response = responses.registrationFinish(
+                                        finish.username(), finish.credential().getId().getBase64Url());
+                                
+                                metrics.recordOutcome(REGISTRATION, FINISH, Outcome.SUCCESS);
+                                return json(HttpStatus.OK, response);
+                            });
+                })
+                .onErrorResume(e -> {
+                    metrics.recordOutcome(REGISTRATION, FINISH, PasskeysController.outcomeOf(e));
+                    if (e instanceof RegistrationFailedException) {
+                        log.error("注册验证失败", e);
+                        return error(HttpStatus.BAD_REQUEST, "注册验证失败: " + e.getMessage());
+                    }
+                    log.error("注册完成失败", e);
+                    return error(HttpStatus.INTERNAL_SERVER_ERROR, "注册完成失败: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * 开始认证流程
+     * 
+     * POST /passkeys/authenticate/start
+     * Body: 忽略（与 PasskeysController 相同，总是使用可发现凭证）
+     */
+    public Mono<ServerResponse> startAuthentication(ServerRequest request) {
+        return webAuthnService.startAuthentication("")
+                .flatMap(result -> {
+                    AssertionRequest assertionRequest = (AssertionRequest) result.get("request");
+                    byte[] response = responses.authenticationStart(
+                            (String) result.get("requestId"), assertionRequest.getPublicKeyCredentialRequestOptions());
+                    
+                    metrics.recordOutcome(AUTHENTICATION, START, Outcome.SUCCESS);
+                    return json(HttpStatus.OK, response);
+                })
+                .onErrorResume(e -> {
+                    metrics.recordOutcome(AUTHENTICATION, START, PasskeysController.outcomeOf(e));
+                    log.error("认证开始失败", e);
+                    return error(HttpStatus.INTERNAL_SERVER_ERROR, "认证开始失败: " + e.getMessage());
+                });
+    }
+    
+    /**
+     * 完成认证流程
+     * 
+     * POST /passkeys/authenticate/finish
+     * Body: { "requestId": "...", "credential": {...} }
+     */
+    public Mono<ServerResponse> finishAuthentication(ServerRequest request) {
+        return request.bodyToMono(byte[].class)
+                .onErrorMap(ReactivePasskeysHandler::invalidRequest)
+                // 请求体缺失时与解析失败一样按无效请求处理
+                .defaultIfEmpty(EMPTY_BODY)
+                .<AuthenticationFinish>handle((body, sink) -> {
+                    long phaseStart = System.nanoTime();
+                    try {
+                        AuthenticationFinish finish = credentialParser.parseAuthenticationFinish(body);
+                        metrics.recordPhase(AUTHENTICATION, PARSE, phaseStart);
+                        log.info("完成认证 - 请求ID: {}", finish.requestId());
+                        sink.next(finish);
+                    } catch (Exception e) {
+                        sink.error(invalidRequest(e));
+                    }
+                })
+                .flatMap(finish -> {
+                    // 签名校验之前按凭证 ID 限流
+                    long retryAfter = admissionControl.admitCredential(finish.credential().getId().getBase64Url());
+                    if (retryAfter > 0) {
+                        metrics.recordOutcome(AUTHENTICATION, FINISH, Outcome.RATE_LIMITED);
+                        return tooManyRequests(retryAfter);
+                    }
+                    return webAuthnService.finishAuthentication(finish.credential(), finish.requestId())
+                            .flatMap(result -> {
+                                byte[] response = responses.authenticationFinish(result);
+                                
+                                metrics.recordOutcome(AUTHENTICATION, FINISH, Outcome.SUCCESS);
+                                return json(HttpStatus.OK, response);
+                            });
+                })
+                .onErrorResume(e -> {
+                    metrics.recordOutcome(AUTHENTICATION, FINISH, PasskeysController.outcomeOf(e));
+                    if (e instanceof AssertionFailedException) {
+                        log.error("认证验证失败", e);
+                        return error(HttpStatus.UNAUTHORIZED, "认证验证失败: " + e.getMessage());
+                    }
+                    log.error("认证完成失败", e);
+                    return error(HttpStatus.INTERNAL_SERVER_ERROR, "认证完成失败: " + e.getMessage());
+                });
+    }
+    
+    // ========== 辅助方法 ==========
+    
+    private static Mono<ServerResponse> ok(Map<String, Object> body) {
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+    
+    private static Mono<ServerResponse> json(HttpStatus status, byte[] body) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+    
+    private Mono<ServerResponse> error(HttpStatus status, String message) {
+        return json(status, responses.error(message));
+    }
+    
+    private Mono<ServerResponse> tooManyRequests(long retryAfterSeconds) {
+        return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .bodyValue(responses.error("请求过于频繁，请稍后重试"));
+    }
+    
+    /**
+     * 连接的对端地址（与 Servlet 的 getRemoteAddr() 一样是 IP 字符串，不做反向解析）
+     */
+    private static String clientAddress(ServerRequest request) {
+        return request.remoteAddress().map(InetSocketAddress::getHostString).orElse("");
+    }
+    
+    /**
+     * 请求体读取失败或凭证尚未解析出来，说明请求体本身有问题
+     */
+    private static CeremonyException invalidRequest(Throwable e) {
+        return new CeremonyException(Outcome.INVALID_REQUEST, String.valueOf(e.getMessage()), e);
+    }
+}
@@ -1,16 +1,16 @@
 package com.example.passkeys.controller;
 
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
+import com.example.passkeys.controller.AssetLinksDocument.Representation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
 
 /**
  * .well-known 路径控制器
@@ -22,33 +22,42 @@ import java.nio.file.Files;
 @RestController
 public class WellKnownController {
     
+    private final AssetLinksDocument assetLinks;
+    private final CacheControl cacheControl;
+    
+    public WellKnownController(AssetLinksDocument assetLinks,
+                               @Value("${passkeys.assetlinks.max-age-seconds:3600}") long maxAgeSeconds) {
+        this.assetLinks = assetLinks;
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+    }
+    
     /**
      * 提供 assetlinks.json 文件
      * 
      * 路径：/.well-known/assetlinks.json
      * 这个路径必须在根路径，不能有 /api 前缀
+     * 
+     * 内容常驻内存，按 Accept-Encoding 返回预压缩的表示；响应带 ETag 和 Last-Modified，
+     * If-None-Match / If-Modified-Since 命中时由 Spring 返回 304（不带响应体）
      */
     @GetMapping(value = "/.well-known/assetlinks.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> getAssetLinks() throws IOException {
-        Resource resource = new ClassPathResource("static/.well-known/assetlinks.json");
+    public ResponseEntity<byte[]> getAssetLinks(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        Representation representation = assetLinks.select(acceptEncoding);
         
-        if (!resource.exists()) {
+        if (representation == null) {
             return ResponseEntity.notFound().build();
         }
         
-        // 使用 InputStream 而不是 getFile()，这样在 JAR 中也能工作
-        String content = new String(
-            resource.getInputStream().readAllBytes(), 
-            StandardCharsets.UTF_8
-        );
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setCacheControl("no-cache");
-        
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(content);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(cacheControl)
+                .eTag(representation.etag())
+                .lastModified(representation.lastModified())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (representation.contentEncoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, representation.contentEncoding());
+        }
+        return response.body(representation.body());
     }
 }
-
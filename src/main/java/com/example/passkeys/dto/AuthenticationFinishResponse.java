@@ -0,0 +1,15 @@
+package com.example.passkeys.dto;
+
+/**
+ * 完成认证响应 DTO（认证成功的用户信息）
+ * 
+ * displayName 为空时不输出
+ */
+public record AuthenticationFinishResponse(boolean success, String username, String userId, String displayName,
+                                           String credentialId) {
+    
+    public static AuthenticationFinishResponse of(String username, String userId, String displayName,
+                                                  String credentialId) {
+        return new AuthenticationFinishResponse(true, username, userId, displayName, credentialId);
+    }
+}
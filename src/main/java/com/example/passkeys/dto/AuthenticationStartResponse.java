@@ -0,0 +1,13 @@
+package com.example.passkeys.dto;
+
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+
+/**
+ * 开始认证响应 DTO
+ */
+public record AuthenticationStartResponse(boolean success, String requestId, PublicKeyCredentialRequestOptions options) {
+    
+    public static AuthenticationStartResponse of(String requestId, PublicKeyCredentialRequestOptions options) {
+        return new AuthenticationStartResponse(true, requestId, options);
+    }
+}
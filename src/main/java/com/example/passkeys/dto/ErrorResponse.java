@@ -0,0 +1,11 @@
+package com.example.passkeys.dto;
+
+/**
+ * 错误响应 DTO
+ */
+public record ErrorResponse(boolean success, String error, long timestamp) {
+    
+    public static ErrorResponse of(String message) {
+        return new ErrorResponse(false, message, System.currentTimeMillis());
+    }
+}
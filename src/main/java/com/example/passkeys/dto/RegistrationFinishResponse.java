@@ -0,0 +1,11 @@
+package com.example.passkeys.dto;
+
+/**
+ * 完成注册响应 DTO
+ */
+public record RegistrationFinishResponse(boolean success, String message, String username, String credentialId) {
+    
+    public static RegistrationFinishResponse of(String username, String credentialId) {
+        return new RegistrationFinishResponse(true, "注册成功", username, credentialId);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.passkeys.dto;
+
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+
+/**
+ * 开始注册响应 DTO
+ */
+public record RegistrationStartResponse(boolean success, PublicKeyCredentialCreationOptions options) {
+    
+    public static RegistrationStartResponse of(PublicKeyCredentialCreationOptions options) {
+        return new RegistrationStartResponse(true, options);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.passkeys.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注册 / 认证仪式的分阶段指标
+ *
+ * passkeys.ceremony.phase（计时器）：ceremony=registration|authentication，
+ * phase=parse|challenge_store|verify|verify_queue|repository_read|repository_write
+ * passkeys.ceremony.outcome（计数器）：ceremony、step=start|finish、outcome=成功或失败类型
+ * passkeys.sign_count.anomalies（计数器）：签名计数未递增的次数
+ *
+ * 所有计量器在启动时一次性注册并缓存在数组中，记录时不查找注册表、不创建对象；
+ * 计时器只发布固定桶的直方图（由 Prometheus 端计算分位数），不在客户端计算分位数。
+ */
+@Component
+public class PasskeysMetrics {
+
+    /**
+     * 直方图下限：内存中的挑战存储 / 仓库读取在微秒级
+     */
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(5_000);
+
+    /**
+     * 直方图上限：超过此值的记录都落在最后一个桶中
+     */
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(5);
+
+    public enum Ceremony {
+        REGISTRATION("registration"),
+        AUTHENTICATION("authentication");
+
+        private final String tag;
+
+        Ceremony(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Step {
+        START("start"),
+        FINISH("finish");
+
+        private final String tag;
+
+        Step(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Phase {
+        /** 请求体解析（JSON → PublicKeyCredential） */
+        PARSE("parse"),
+        /** 挑战存储的写入和取出 */
+        CHALLENGE_STORE("challenge_store"),
+        /** relyingParty.finishRegistration / finishAssertion 签名校验 */
+        VERIFY("verify"),
+        /** 签名校验在 VerificationExecutor 队列中的等待 */
+        VERIFY_QUEUE("verify_queue"),
+        /** 用户 / 认证器查询 */
+        REPOSITORY_READ("repository_read"),
+        /** 用户 / 认证器 / 签名计数写入 */
+        REPOSITORY_WRITE("repository_write");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    public enum Outcome {
+        SUCCESS("success"),
+        /** 请求体缺少字段或格式错误 */
+        INVALID_REQUEST("invalid_request"),
+        /** 挑战不存在、已过期或已被使用 */
+        CHALLENGE_NOT_FOUND("challenge_not_found"),
+        UNKNOWN_USER("unknown_user"),
+        UNKNOWN_CREDENTIAL("unknown_credential"),
+        /** 签名、来源、挑战等校验未通过 */
+        VERIFICATION_FAILED("verification_failed"),
+        /** 客户端或账户请求过于频繁（准入控制拒绝） */
+        RATE_LIMITED("rate_limited"),
+        /** 超过认证接口的自适应并发上限（过载保护拒绝） */
+        OVERLOADED("overloaded"),
+        /** 超过请求期限（签名校验排队过久或客户端给出的超时已到） */
+        TIMED_OUT("timed_out"),
+        /** 其他服务器内部错误 */
+        ERROR("error");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final Timer[][] phaseTimers;
+    private final Counter[][][] outcomeCounters;
+    private final Counter signCountAnomalies;
+
+    public PasskeysMetrics(MeterRegistry registry) {
+        Ceremony[] ceremonies = Ceremony.values();
+        Phase[] phases = Phase.values();
+        Step[] steps = Step.values();
+        Outcome[] outcomes = Outcome.values();
+
+        this.phaseTimers = new Timer[ceremonies.length][phases.length];
+        this.outcomeCounters = new Counter[ceremonies.length][steps.length][outcomes.length];
+        for (Ceremony ceremony : ceremonies) {
+            for (Phase phase : phases) {
+                phaseTimers[ceremony.ordinal()][phase.ordinal()] = Timer.builder("passkeys.ceremony.phase")
+                        .description("通行密钥仪式各阶段耗时")
+                        .tag("ceremony", ceremony.tag)
+                        .tag("phase", phase.tag)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(MIN_EXPECTED)
+                        .maximumExpectedValue(MAX_EXPECTED)
+                        .register(registry);
+            }
+            for (Step step : steps) {
+                for (Outcome outcome : outcomes) {
+                    outcomeCounters[ceremony.ordinal()][step.ordinal()][outcome.ordinal()] =
+                            Counter.builder("passkeys.ceremony.outcome")
+                                    .description("通行密钥仪式结果")
+                                    .tag("ceremony", ceremony.tag)
+                                    .tag("step", step.tag)
+                                    .tag("outcome", outcome.tag)
+                                    .register(registry);
+                }
+            }
+        }
+        this.signCountAnomalies = Counter.builder("passkeys.sign_count.anomalies")
+                .description("签名计数未递增的认证次数（可能存在克隆的认证器）")
+                .register(registry);
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param startNanos 阶段开始时的 System.nanoTime()
+     */
+    public void recordPhase(Ceremony ceremony, Phase phase, long startNanos) {
+        phaseTimers[ceremony.ordinal()][phase.ordinal()]
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次请求的结果
+     */
+    public void recordOutcome(Ceremony ceremony, Step step, Outcome outcome) {
+        outcomeCounters[ceremony.ordinal()][step.ordinal()][outcome.ordinal()].increment();
+    }
+
+    /**
+     * 记录一次签名计数异常
+     */
+    public void recordSignCountAnomaly() {
+        signCountAnomalies.increment();
+    }
+}
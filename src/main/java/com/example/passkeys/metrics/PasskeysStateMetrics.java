@@ -0,0 +1,154 @@
+package com.example.passkeys.metrics;
+
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import com.example.passkeys.ratelimit.AdaptiveConcurrencyLimiter;
+import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.service.VerificationExecutor;
+import com.example.passkeys.store.ChallengeStore;
+import com.example.passkeys.store.ExpiringChallengeStore;
+import com.example.passkeys.store.SealedAssertionTokens;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * 存储状态指标（在抓取时读取，不影响请求路径）
+ *
+ * - passkeys.users / passkeys.credentials：用户数和凭证数
+ * - passkeys.challenges.pending：进行中的注册 / 认证请求数（仅内存挑战存储）
+ * - passkeys.challenges.expired / consumed / evicted：挑战的累计去向（仅内存挑战存储）
+ * - passkeys.assertion.tokens.used：无状态认证令牌的重放过滤器大小（仅 sealed 模式）
+ * - passkeys.storage.*：预写日志和签名计数延迟写入的状态（仅启用持久化时）
+ * - passkeys.concurrency.limit / in_flight / rejected：认证接口的自适应并发上限、当前并发数和累计拒绝数
+ * - passkeys.verification.*：签名校验线程池的线程数、执行中和排队的任务数、累计拒绝和超期丢弃数
+ */
+@Component
+public class PasskeysStateMetrics implements MeterBinder {
+
+    private final UserRepository userRepository;
+    private final ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests;
+    private final ChallengeStore<AssertionRequest> assertionRequests;
+    private final SealedAssertionTokens sealedTokens;
+    private final CredentialLog credentialLog;
+    private final SignCountWriteBehind signCountWriteBehind;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final VerificationExecutor verificationExecutor;
+
+    public PasskeysStateMetrics(UserRepository userRepository,
+                                ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests,
+                                ChallengeStore<AssertionRequest> assertionRequests,
+                                ObjectProvider<SealedAssertionTokens> sealedTokens,
+                                ObjectProvider<CredentialLog> credentialLog,
+                                ObjectProvider<SignCountWriteBehind> signCountWriteBehind,
+                                AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                VerificationExecutor verificationExecutor) {
+        this.userRepository = userRepository;
+        this.registrationRequests = registrationRequests;
+        this.assertionRequests = assertionRequests;
+        this.sealedTokens = sealedTokens.getIfAvailable();
+        this.credentialLog = credentialLog.getIfAvailable();
+        this.signCountWriteBehind = signCountWriteBehind.getIfAvailable();
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.verificationExecutor = verificationExecutor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("passkeys.users", userRepository, UserRepository::getUserCount)
+                .description("用户数")
+                .register(registry);
+        Gauge.builder("passkeys.credentials", userRepository, UserRepository::getCredentialCount)
+                .description("凭证数")
+                .register(registry);
+
+        bindChallengeStore(registry, "registration", registrationRequests);
+        if (sealedTokens != null) {
+            Gauge.builder("passkeys.assertion.tokens.used", sealedTokens, SealedAssertionTokens::getUsedTokenCount)
+                    .description("重放过滤器中尚未过期的已使用认证令牌数")
+                    .register(registry);
+        } else {
+            bindChallengeStore(registry, "authentication", assertionRequests);
+        }
+
+        if (credentialLog != null) {
+            FunctionCounter.builder("passkeys.storage.log.appended", credentialLog, CredentialLog::getAppendedCount)
+                    .description("预写日志累计追加的记录数")
+                    .register(registry);
+            FunctionCounter.builder("passkeys.storage.log.syncs", credentialLog, CredentialLog::getSyncCount)
+                    .description("预写日志累计 fsync 次数")
+                    .register(registry);
+            Gauge.builder("passkeys.storage.log.failed", credentialLog, l -> l.isFailed() ? 1 : 0)
+                    .description("预写日志是否因写入失败而停止接受写入（1 表示需要检查磁盘后重启）")
+                    .register(registry);
+        }
+        if (signCountWriteBehind != null) {
+            Gauge.builder("passkeys.storage.sign_count.dirty", signCountWriteBehind,
+                            SignCountWriteBehind::getDirtyCount)
+                    .description("等待写入的签名计数")
+                    .register(registry);
+        }
+        if (concurrencyLimiter.isEnabled()) {
+            Gauge.builder("passkeys.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("认证接口当前的自适应并发上限")
+                    .register(registry);
+            Gauge.builder("passkeys.concurrency.in_flight", concurrencyLimiter,
+                            AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("正在处理的认证请求数")
+                    .register(registry);
+            FunctionCounter.builder("passkeys.concurrency.rejected", concurrencyLimiter,
+                            AdaptiveConcurrencyLimiter::getRejectedCount)
+                    .description("超过并发上限被拒绝（503）的认证请求数")
+                    .register(registry);
+        }
+
+        Gauge.builder("passkeys.verification.threads", verificationExecutor, VerificationExecutor::getThreads)
+                .description("签名校验线程数")
+                .register(registry);
+        Gauge.builder("passkeys.verification.active", verificationExecutor, VerificationExecutor::getActiveCount)
+                .description("正在执行的签名校验数")
+                .register(registry);
+        Gauge.builder("passkeys.verification.queued", verificationExecutor, VerificationExecutor::getQueueSize)
+                .description("排队等待的签名校验数")
+                .register(registry);
+        FunctionCounter.builder("passkeys.verification.rejected", verificationExecutor,
+                        VerificationExecutor::getRejectedCount)
+                .description("校验队列已满被拒绝的请求数")
+                .register(registry);
+        FunctionCounter.builder("passkeys.verification.expired", verificationExecutor,
+                        VerificationExecutor::getExpiredCount)
+                .description("超过请求期限未执行就被丢弃的签名校验数")
+                .register(registry);
+    }
+
+    /**
+     * 内存挑战存储的状态（Redis 存储的状态由 Redis 自身监控）
+     */
+    private void bindChallengeStore(MeterRegistry registry, String ceremony, ChallengeStore<?> store) {
+        if (!(store instanceof ExpiringChallengeStore)) {
+            return;
+        }
+        ExpiringChallengeStore<?> expiring = (ExpiringChallengeStore<?>) store;
+        Gauge.builder("passkeys.challenges.pending", expiring, ExpiringChallengeStore::getLiveCount)
+                .description("进行中的请求数")
+                .tag("ceremony", ceremony)
+                .register(registry);
+        FunctionCounter.builder("passkeys.challenges.expired", expiring, ExpiringChallengeStore::getExpiredCount)
+                .description("累计过期的请求数")
+                .tag("ceremony", ceremony)
+                .register(registry);
+        FunctionCounter.builder("passkeys.challenges.consumed", expiring, ExpiringChallengeStore::getConsumedCount)
+                .description("累计完成的请求数")
+                .tag("ceremony", ceremony)
+                .register(registry);
+        FunctionCounter.builder("passkeys.challenges.evicted", expiring, ExpiringChallengeStore::getEvictedCount)
+                .description("累计因容量上限被淘汰的请求数")
+                .tag("ceremony", ceremony)
+                .register(registry);
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.passkeys.model;
 
+import com.yubico.webauthn.RegisteredCredential;
 import com.yubico.webauthn.data.AttestedCredentialData;
 import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
 import com.yubico.webauthn.data.ByteArray;
@@ -9,118 +10,184 @@ import java.util.Optional;
 /**
  * 认证器实体类
  * 存储用户的通行密钥凭证信息
+ *
+ * 不可变快照：任何修改都返回新的实例，由仓库原子地替换，
+ * 读取方拿到的对象不会再被其他线程改动
  */
 public class Authenticator {
     
     /**
      * 凭证 ID（Base64Url 编码）
      */
-    private String credentialId;
+    private final String credentialId;
     
     /**
      * 用户 ID
      */
-    private String userId;
+    private final String userId;
     
     /**
      * 公钥（Base64Url 编码）
      */
-    private String publicKey;
+    private final String publicKey;
     
     /**
      * 签名计数器
      */
-    private long signCount;
+    private final long signCount;
     
     /**
      * AAGUID（认证器唯一标识）
      */
-    private String aaguid;
+    private final String aaguid;
     
     /**
      * 创建时间戳
      */
-    private long createdAt;
+    private final long createdAt;
     
     /**
      * 最后使用时间戳
      */
-    private long lastUsedAt;
+    private final long lastUsedAt;
     
     /**
      * 认证器名称（可选）
      */
-    private String name;
+    private final String name;
     
-    public Authenticator() {
-        this.createdAt = System.currentTimeMillis();
-        this.lastUsedAt = this.createdAt;
-    }
+    /**
+     * 是否观察到非递增的签名计数（可能是克隆的认证器）
+     */
+    private final boolean signCountAnomaly;
     
-    // Getters and Setters
+    /**
+     * 已解码的凭证（验证路径直接使用，无需 Base64 解码）
+     */
+    private final RegisteredCredential registeredCredential;
     
-    public String getCredentialId() {
-        return credentialId;
+    public Authenticator(String credentialId, String userId, String publicKey, long signCount,
+                         String aaguid, long createdAt, long lastUsedAt, String name,
+                         boolean signCountAnomaly) {
+        this(credentialId, userId, publicKey, signCount, aaguid, createdAt, lastUsedAt, name,
+                signCountAnomaly, RegisteredCredential.builder()
+                        .credentialId(parseBase64Url(credentialId))
+                        .userHandle(parseBase64Url(userId))
+                        .publicKeyCose(parseBase64Url(publicKey))
+                        .signatureCount(signCount)
+                        .build());
     }
     
-    public void setCredentialId(String credentialId) {
+    /**
+     * 由已解码的字段创建认证器（批量导入时避免重复解码）
+     */
+    public Authenticator(ByteArray credentialId, ByteArray userHandle, ByteArray publicKeyCose, long signCount,
+                         String aaguid, long createdAt, long lastUsedAt, String name) {
+        this(credentialId.getBase64Url(), userHandle.getBase64Url(), publicKeyCose.getBase64Url(), signCount,
+                aaguid, createdAt, lastUsedAt, name, false, RegisteredCredential.builder()
+                        .credentialId(credentialId)
+                        .userHandle(userHandle)
+                        .publicKeyCose(publicKeyCose)
+                        .signatureCount(signCount)
+                        .build());
+    }
+    
+    private Authenticator(String credentialId, String userId, String publicKey, long signCount,
+                          String aaguid, long createdAt, long lastUsedAt, String name,
+                          boolean signCountAnomaly, RegisteredCredential registeredCredential) {
         this.credentialId = credentialId;
+        this.userId = userId;
+        this.publicKey = publicKey;
+        this.signCount = signCount;
+        this.aaguid = aaguid;
+        this.createdAt = createdAt;
+        this.lastUsedAt = lastUsedAt;
+        this.name = name;
+        this.signCountAnomaly = signCountAnomaly;
+        this.registeredCredential = registeredCredential;
     }
     
-    public String getUserId() {
-        return userId;
+    // Getters
+    
+    public String getCredentialId() {
+        return credentialId;
     }
     
-    public void setUserId(String userId) {
-        this.userId = userId;
+    public String getUserId() {
+        return userId;
     }
     
     public String getPublicKey() {
         return publicKey;
     }
     
-    public void setPublicKey(String publicKey) {
-        this.publicKey = publicKey;
-    }
-    
     public long getSignCount() {
         return signCount;
     }
     
-    public void setSignCount(long signCount) {
-        this.signCount = signCount;
-    }
-    
     public String getAaguid() {
         return aaguid;
     }
     
-    public void setAaguid(String aaguid) {
-        this.aaguid = aaguid;
-    }
-    
     public long getCreatedAt() {
         return createdAt;
     }
     
-    public void setCreatedAt(long createdAt) {
-        this.createdAt = createdAt;
-    }
-    
     public long getLastUsedAt() {
         return lastUsedAt;
     }
     
-    public void setLastUsedAt(long lastUsedAt) {
-        this.lastUsedAt = lastUsedAt;
-    }
-    
     public String getName() {
         return name;
     }
     
-    public void setName(String name) {
-        this.name = name;
+    public boolean isSignCountAnomaly() {
+        return signCountAnomaly;
+    }
+    
+    public RegisteredCredential toRegisteredCredential() {
+        return registeredCredential;
+    }
+    
+    // 修改（返回新快照）
+    
+    /**
+     * 修改名称
+     */
+    public Authenticator withName(String name) {
+        return new Authenticator(credentialId, userId, publicKey, signCount, aaguid, createdAt,
+                lastUsedAt, name, signCountAnomaly, registeredCredential);
+    }
+    
+    /**
+     * 直接设置签名计数和使用时间（用于日志回放），异常标记只会置上不会清除
+     */
+    public Authenticator withSignCount(long signCount, long lastUsedAt, boolean signCountAnomaly) {
+        return new Authenticator(credentialId, userId, publicKey, signCount, aaguid, createdAt,
+                lastUsedAt, name, this.signCountAnomaly || signCountAnomaly,
+                registeredCredential.toBuilder().signatureCount(signCount).build());
+    }
+    
+    /**
+     * 记录一次认证后的签名计数（只增不减）
+     *
+     * 新计数不大于当前计数时不会回退，并标记异常：可能是克隆的认证器，
+     * 或同一凭证的两次认证并发完成。计数始终为 0 的认证器不支持计数器，不视为异常。
+     */
+    public Authenticator withUsage(long newSignCount, long usedAt) {
+        boolean increasing = isIncreasing(newSignCount);
+        long count = Math.max(signCount, newSignCount);
+        return new Authenticator(credentialId, userId, publicKey, count, aaguid, createdAt,
+                Math.max(lastUsedAt, usedAt), name, signCountAnomaly || !increasing,
+                count == signCount ? registeredCredential
+                        : registeredCredential.toBuilder().signatureCount(count).build());
+    }
+    
+    /**
+     * 新的签名计数是否严格递增（始终为 0 表示认证器不支持计数器）
+     */
+    public boolean isIncreasing(long newSignCount) {
+        return newSignCount > signCount || (newSignCount == 0 && signCount == 0);
     }
     
     /**
@@ -132,30 +199,28 @@ public class Authenticator {
             ByteArray credentialId,
             long signCount) {
         
-        Authenticator authenticator = new Authenticator();
-        authenticator.setUserId(userId);
-        authenticator.setCredentialId(credentialId.getBase64Url());
-        authenticator.setSignCount(signCount);
-        
         // 提取公钥和 AAGUID
-        Optional<AttestedCredentialData> attestedCredentialData = 
+        Optional<AttestedCredentialData> attestedCredentialData =
                 response.getAttestation().getAuthenticatorData().getAttestedCredentialData();
         
+        String publicKey = null;
+        String aaguid = null;
         if (attestedCredentialData.isPresent()) {
             AttestedCredentialData credData = attestedCredentialData.get();
-            authenticator.setPublicKey(credData.getCredentialPublicKey().getBase64Url());
-            authenticator.setAaguid(credData.getAaguid().getBase64Url());
+            publicKey = credData.getCredentialPublicKey().getBase64Url();
+            aaguid = credData.getAaguid().getBase64Url();
         }
         
-        return authenticator;
+        long now = System.currentTimeMillis();
+        return new Authenticator(credentialId.getBase64Url(), userId, publicKey, signCount,
+                aaguid, now, now, null, false);
     }
     
-    /**
-     * 更新签名计数器
-     */
-    public void updateSignCount(long newSignCount) {
-        this.signCount = newSignCount;
-        this.lastUsedAt = System.currentTimeMillis();
+    private static ByteArray parseBase64Url(String base64Url) {
+        try {
+            return ByteArray.fromBase64Url(base64Url);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse Base64Url: " + base64Url, e);
+        }
     }
 }
-
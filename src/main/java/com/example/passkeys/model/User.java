@@ -2,110 +2,167 @@ package com.example.passkeys.model;
 
 import com.yubico.webauthn.data.UserIdentity;
 import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * 用户实体类
  * 存储用户的基本信息和关联的认证器
+ *
+ * 不可变快照：添加或更新认证器时返回新的实例，由仓库原子地替换；
+ * 已解码的用户句柄和凭证描述符随快照一起构建，读取时无需再计算
  */
 public class User {
     
     /**
      * 用户唯一标识符（用户句柄）
      */
-    private String id;
+    private final String id;
     
     /**
      * 用户名（用于显示）
      */
-    private String username;
+    private final String username;
     
     /**
      * 用户显示名称
      */
-    private String displayName;
+    private final String displayName;
     
     /**
-     * 用户关联的认证器集合
+     * 创建时间戳
      */
-    private Set<Authenticator> authenticators = new HashSet<>();
+    private final long createdAt;
     
     /**
-     * 创建时间戳
+     * 用户关联的认证器：credentialId -> Authenticator（不可修改）
+     */
+    private final Map<String, Authenticator> authenticators;
+    
+    /**
+     * 已解码的用户句柄
+     */
+    private final ByteArray userHandle;
+    
+    /**
+     * 全部凭证的描述符（不可修改，仅在新增凭证时重建）
      */
-    private long createdAt;
+    private final Set<PublicKeyCredentialDescriptor> credentialDescriptors;
     
     public User(String id, String username, String displayName) {
+        this(id, username, displayName, System.currentTimeMillis());
+    }
+    
+    public User(String id, String username, String displayName, long createdAt) {
+        this(id, username, displayName, createdAt, parseBase64Url(id),
+                Collections.emptyMap(), Collections.emptySet());
+    }
+    
+    private User(String id, String username, String displayName, long createdAt, ByteArray userHandle,
+                 Map<String, Authenticator> authenticators,
+                 Set<PublicKeyCredentialDescriptor> credentialDescriptors) {
         this.id = id;
         this.username = username;
         this.displayName = displayName;
-        this.createdAt = System.currentTimeMillis();
+        this.createdAt = createdAt;
+        this.userHandle = userHandle;
+        this.authenticators = authenticators;
+        this.credentialDescriptors = credentialDescriptors;
     }
     
-    // Getters and Setters
+    // Getters
     
     public String getId() {
         return id;
     }
     
-    public void setId(String id) {
-        this.id = id;
-    }
-    
     public String getUsername() {
         return username;
     }
     
-    public void setUsername(String username) {
-        this.username = username;
-    }
-    
     public String getDisplayName() {
         return displayName;
     }
     
-    public void setDisplayName(String displayName) {
-        this.displayName = displayName;
+    public long getCreatedAt() {
+        return createdAt;
     }
     
-    public Set<Authenticator> getAuthenticators() {
-        return authenticators;
+    public Collection<Authenticator> getAuthenticators() {
+        return authenticators.values();
     }
     
-    public void setAuthenticators(Set<Authenticator> authenticators) {
-        this.authenticators = authenticators;
+    public Authenticator getAuthenticator(String credentialId) {
+        return authenticators.get(credentialId);
     }
     
-    public long getCreatedAt() {
-        return createdAt;
+    public ByteArray getUserHandle() {
+        return userHandle;
     }
     
-    public void setCreatedAt(long createdAt) {
-        this.createdAt = createdAt;
+    public Set<PublicKeyCredentialDescriptor> getCredentialDescriptors() {
+        return credentialDescriptors;
     }
     
     /**
      * 转换为 WebAuthn UserIdentity
      */
     public UserIdentity toUserIdentity() {
-        try {
-            return UserIdentity.builder()
-                    .name(username)
-                    .displayName(displayName)
-                    .id(ByteArray.fromBase64Url(id))
-                    .build();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create UserIdentity", e);
+        return UserIdentity.builder()
+                .name(username)
+                .displayName(displayName)
+                .id(userHandle)
+                .build();
+    }
+    
+    /**
+     * 添加或替换认证器，返回新快照
+     */
+    public User withAuthenticator(Authenticator authenticator) {
+        return withAuthenticators(Collections.singletonList(authenticator));
+    }
+    
+    /**
+     * 一次添加或替换多个认证器，返回新快照（只复制一次）
+     */
+    public User withAuthenticators(Collection<Authenticator> added) {
+        Map<String, Authenticator> copy = new LinkedHashMap<>(authenticators);
+        Set<PublicKeyCredentialDescriptor> rebuilt = null;
+        for (Authenticator authenticator : added) {
+            if (copy.put(authenticator.getCredentialId(), authenticator) == null) {
+                if (rebuilt == null) {
+                    rebuilt = new LinkedHashSet<>(credentialDescriptors);
+                }
+                rebuilt.add(PublicKeyCredentialDescriptor.builder()
+                        .id(authenticator.toRegisteredCredential().getCredentialId())
+                        .build());
+            }
         }
+        Set<PublicKeyCredentialDescriptor> descriptors =
+                rebuilt != null ? Collections.unmodifiableSet(rebuilt) : credentialDescriptors;
+        return new User(id, username, displayName, createdAt, userHandle,
+                Collections.unmodifiableMap(copy), descriptors);
     }
     
     /**
-     * 添加认证器
+     * 替换基本信息，保留已有的认证器
      */
-    public void addAuthenticator(Authenticator authenticator) {
-        this.authenticators.add(authenticator);
+    public User withProfile(User profile) {
+        return new User(id, profile.username, profile.displayName, profile.createdAt, userHandle,
+                authenticators, credentialDescriptors);
+    }
+    
+    private static ByteArray parseBase64Url(String base64Url) {
+        try {
+            return ByteArray.fromBase64Url(base64Url);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create UserIdentity", e);
+        }
     }
 }
-
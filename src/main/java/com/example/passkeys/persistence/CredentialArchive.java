@@ -0,0 +1,109 @@
+package com.example.passkeys.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 凭证归档文件（导入 / 导出）
+ *
+ * 格式：magic(4) | version(4) | createdAt(8) | 记录帧... | 结束标记
+ * 记录帧与预写日志、快照相同（见 RecordCodec）；每个用户记录之后紧跟该用户的认证器记录，
+ * 因此从任意用户记录处切开，每一块都可以独立解码。
+ */
+public final class CredentialArchive {
+
+    private static final int ARCHIVE_MAGIC = 0x504B4152; // "PKAR"
+    public static final int FORMAT_VERSION = 2;
+    private static final int MIN_FORMAT_VERSION = 1;
+
+    /**
+     * 按块接收记录（块内第一条是用户记录）
+     */
+    public interface ChunkConsumer {
+        void accept(List<byte[]> chunk) throws IOException;
+    }
+
+    private CredentialArchive() {
+    }
+
+    /**
+     * 写出文件头
+     */
+    public static void writeHeader(OutputStream out, long createdAt) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(ARCHIVE_MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeLong(createdAt);
+        header.flush();
+    }
+
+    /**
+     * 写出结束标记
+     *
+     * @param recordCount 此前写出的记录数
+     */
+    public static void writeEnd(OutputStream out, long recordCount) throws IOException {
+        RecordCodec.writeFrame(out, RecordCodec.encodeEnd(recordCount));
+    }
+
+    /**
+     * 读取整个归档，按用户边界切分成块
+     *
+     * @param chunkSize 每块的最少记录数（到达后在下一个用户记录处切分）
+     * @return 记录数
+     * @throws IOException 文件头不支持、记录损坏或缺少结束标记
+     */
+    public static long readChunks(InputStream in, int chunkSize, ChunkConsumer consumer) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        try {
+            if (header.readInt() != ARCHIVE_MAGIC) {
+                throw new IOException("不是凭证归档文件");
+            }
+            int version = header.readInt();
+            if (version < MIN_FORMAT_VERSION || version > FORMAT_VERSION) {
+                throw new IOException("归档版本不支持: " + version);
+            }
+            header.readLong();
+        } catch (EOFException e) {
+            throw new IOException("归档文件头不完整");
+        }
+
+        long count = 0;
+        List<byte[]> chunk = new ArrayList<>(chunkSize + 16);
+        byte[] payload;
+        while ((payload = RecordCodec.readFrame(in)) != null) {
+            byte type = RecordCodec.typeOf(payload);
+            if (type == RecordCodec.TYPE_END) {
+                if (RecordCodec.readEndCount(payload) != count) {
+                    throw new IOException("归档记录数不匹配");
+                }
+                if (!chunk.isEmpty()) {
+                    consumer.accept(chunk);
+                }
+                return count;
+            }
+            if (type == RecordCodec.TYPE_USER && chunk.size() >= chunkSize) {
+                consumer.accept(chunk);
+                chunk = new ArrayList<>(chunkSize + 16);
+            }
+            chunk.add(payload);
+            count++;
+        }
+        throw new IOException("归档缺少结束标记（文件不完整）");
+    }
+
+    /**
+     * 解码一块记录
+     */
+    public static void decode(List<byte[]> chunk, RecordHandler handler) throws IOException {
+        for (byte[] payload : chunk) {
+            RecordCodec.dispatch(payload, handler);
+        }
+    }
+}
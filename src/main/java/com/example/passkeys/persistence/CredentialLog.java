@@ -0,0 +1,539 @@
+package com.example.passkeys.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 凭证预写日志（WAL）+ 定期快照
+ *
+ * 写入：调用方把编码好的记录放入队列，提交线程批量写出后只做一次 fsync（组提交），
+ * 再统一完成各自的 Future；调用方可以选择等待持久化，也可以不等待。
+ *
+ * 快照：先切换到新的日志段，再把仓库的当前状态写入快照文件，
+ * 成功后删除旧的日志段和快照。记录都是幂等的覆盖写，
+ * 所以快照期间并发写入新日志段的记录在回放时不会出错。
+ *
+ * 启动：加载最新快照，再按顺序回放快照之后的日志段；
+ * 最后一个日志段末尾的残缺记录（写入过程中宕机）会被截掉。
+ *
+ * 写入或 fsync 失败：日志段截回到上一次成功提交的位置（不在残缺的字节之后继续追加），
+ * 之后拒绝所有写入（fail closed）。失败的记录已经进入内存，继续写入会让内存和磁盘越来越不一致；
+ * 检查磁盘后重启，从已确认的记录恢复。
+ */
+public class CredentialLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialLog.class);
+
+    private static final int SEGMENT_MAGIC = 0x504B574C; // "PKWL"
+    private static final int SNAPSHOT_MAGIC = 0x504B534E; // "PKSN"
+    private static final int FORMAT_VERSION = 2;
+    /**
+     * 仍可读取的最早格式版本（新文件总是以 FORMAT_VERSION 写出）
+     */
+    private static final int MIN_FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d{16})\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{16})\\.snap");
+
+    private final Path dir;
+    private final int maxBatch;
+    private final long snapshotIntervalMillis;
+    private final long snapshotThreshold;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong appendedSinceSnapshot = new AtomicLong();
+    private final AtomicLong appendedTotal = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+
+    private Thread committer;
+    private ScheduledExecutorService snapshotter;
+    private volatile boolean running;
+    private volatile long lastSnapshotAt = System.currentTimeMillis();
+    // 写入失败后不再接受写入
+    private volatile IOException failure;
+
+    // 以下字段只由提交线程访问
+    private FileChannel channel;
+    private long segmentSeq;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+    /**
+     * 仓库状态的快照来源
+     */
+    public interface SnapshotSource {
+        /**
+         * 依次写出全部用户和认证器记录
+         */
+        void writeSnapshot(RecordSink sink) throws IOException;
+    }
+
+    /**
+     * 快照记录的写入端
+     */
+    public interface RecordSink {
+        void write(byte[] payload) throws IOException;
+    }
+
+    /**
+     * @param dir 数据目录
+     * @param maxBatch 一次组提交的最大记录数
+     * @param snapshotIntervalMillis 快照间隔
+     * @param snapshotThreshold 距上次快照的记录数达到该值时提前快照
+     */
+    public CredentialLog(Path dir, int maxBatch, long snapshotIntervalMillis, long snapshotThreshold) {
+        this.dir = dir;
+        this.maxBatch = maxBatch;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.snapshotThreshold = snapshotThreshold;
+    }
+
+    /**
+     * 回放已有数据并开始接受写入
+     *
+     * @param handler 回放接口
+     * @param source 快照来源
+     */
+    public void open(RecordHandler handler, SnapshotSource source) throws IOException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+
+        long nextSeq = recover(handler);
+
+        segmentSeq = nextSeq;
+        channel = openSegment(segmentSeq);
+        running = true;
+
+        committer = new Thread(this::commitLoop, "credential-log-committer");
+        committer.setDaemon(true);
+        committer.start();
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "credential-log-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> maybeSnapshot(source), 1, 1, TimeUnit.SECONDS);
+
+        log.info("凭证日志已打开 - 目录: {}, 日志段: {}, 耗时: {}ms",
+                dir, segmentSeq, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param payload 由 {@link RecordCodec} 编码的记录
+     * @return 记录落盘（fsync）后完成的 Future
+     */
+    public CompletableFuture<Void> append(byte[] payload) {
+        Pending pending = new Pending(payload);
+        if (!running) {
+            pending.future.completeExceptionally(new IOException("凭证日志未打开"));
+            return pending.future;
+        }
+        if (failure != null) {
+            pending.future.completeExceptionally(new IOException("凭证日志写入失败，已停止接受写入", failure));
+            return pending.future;
+        }
+        queue.add(pending);
+        appendedSinceSnapshot.incrementAndGet();
+        appendedTotal.incrementAndGet();
+        return pending.future;
+    }
+
+    /**
+     * 立即生成一次快照
+     */
+    public void snapshot(SnapshotSource source) throws IOException {
+        long seq = rotate().join();
+        appendedSinceSnapshot.set(0);
+        lastSnapshotAt = System.currentTimeMillis();
+
+        Path tmp = dir.resolve(String.format("snapshot-%016d.tmp", seq));
+        Path target = dir.resolve(String.format("snapshot-%016d.snap", seq));
+        long[] count = {0};
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(file, 256 * 1024)) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(SNAPSHOT_MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeLong(seq);
+            source.writeSnapshot(payload -> {
+                RecordCodec.writeFrame(out, payload);
+                count[0]++;
+            });
+            RecordCodec.writeFrame(out, RecordCodec.encodeEnd(count[0]));
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        // 快照之前的日志段和旧快照都不再需要
+        deleteOlderThan(seq);
+        log.info("已生成快照 - 日志段: {}, 记录数: {}", seq, count[0]);
+    }
+
+    /**
+     * 累计追加的记录数
+     */
+    public long getAppendedCount() {
+        return appendedTotal.get();
+    }
+
+    /**
+     * 是否因写入失败而停止接受写入
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * 累计 fsync 次数（组提交后远小于记录数）
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (!running) {
+            return;
+        }
+        // 先等进行中的快照结束（快照需要提交线程完成日志段切换），再停止提交线程
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+            running = false;
+            committer.join(5000);
+        } catch (InterruptedException e) {
+            running = false;
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            log.error("关闭凭证日志失败", e);
+        }
+    }
+
+    // ========== 组提交 ==========
+
+    private void commitLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        int from = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            if (pending.rotation != null) {
+                // 切换日志段前先把之前的记录落盘
+                flush(batch.subList(from, i));
+                from = i + 1;
+                if (failure != null) {
+                    pending.rotation.completeExceptionally(failure);
+                    continue;
+                }
+                try {
+                    channel.force(true);
+                    channel.close();
+                    segmentSeq++;
+                    channel = openSegment(segmentSeq);
+                    pending.rotation.complete(segmentSeq);
+                } catch (IOException e) {
+                    log.error("切换日志段失败", e);
+                    pending.rotation.completeExceptionally(e);
+                }
+            } else {
+                try {
+                    RecordCodec.writeFrame(buffer, pending.payload);
+                } catch (IOException e) {
+                    // ByteArrayOutputStream 不会抛出 IOException
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        flush(batch.subList(from, batch.size()));
+    }
+
+    private void flush(List<Pending> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        long committed = -1;
+        try {
+            if (failure != null) {
+                throw new IOException("凭证日志写入失败，已停止接受写入", failure);
+            }
+            committed = channel.position();
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            syncCount.incrementAndGet();
+            for (Pending pending : written) {
+                pending.future.complete(null);
+            }
+        } catch (IOException e) {
+            if (committed >= 0) {
+                fail(e, committed);
+            }
+            for (Pending pending : written) {
+                pending.future.completeExceptionally(e);
+            }
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    /**
+     * 写入失败：截掉本批写出的部分字节，之后拒绝所有写入
+     *
+     * @param committed 上一次成功提交后的文件位置
+     */
+    private void fail(IOException cause, long committed) {
+        failure = cause;
+        log.error("写入凭证日志失败，停止接受写入（检查磁盘后需要重启）", cause);
+        try {
+            channel.truncate(committed);
+            channel.position(committed);
+            channel.force(true);
+        } catch (IOException e) {
+            // 截断也失败时，残缺记录在重启回放时按日志段末尾的残缺记录处理
+            log.error("截断凭证日志失败 - 日志段: {}, 位置: {}", segmentSeq, committed, e);
+        }
+    }
+
+    private CompletableFuture<Long> rotate() {
+        Pending marker = new Pending(null);
+        marker.rotation = new CompletableFuture<>();
+        queue.add(marker);
+        return marker.rotation;
+    }
+
+    private void maybeSnapshot(SnapshotSource source) {
+        long pending = appendedSinceSnapshot.get();
+        boolean due = pending >= snapshotThreshold
+                || (pending > 0 && System.currentTimeMillis() - lastSnapshotAt >= snapshotIntervalMillis);
+        if (!due) {
+            return;
+        }
+        try {
+            snapshot(source);
+        } catch (Exception e) {
+            log.error("生成快照失败", e);
+        }
+    }
+
+    // ========== 文件管理 ==========
+
+    private FileChannel openSegment(long seq) throws IOException {
+        Path path = dir.resolve(String.format("wal-%016d.log", seq));
+        FileChannel ch = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION).putLong(seq).flip();
+        while (header.hasRemaining()) {
+            ch.write(header);
+        }
+        ch.force(true);
+        syncDirectory();
+        return ch;
+    }
+
+    /**
+     * 回放快照和日志段
+     *
+     * @return 下一个日志段的序号
+     */
+    private long recover(RecordHandler handler) throws IOException {
+        long baseSeq = 0;
+        long maxSeq = -1;
+
+        List<Long> snapshots = listSeqs(SNAPSHOT_NAME);
+        if (!snapshots.isEmpty()) {
+            baseSeq = snapshots.get(snapshots.size() - 1);
+            long count = loadSnapshot(dir.resolve(String.format("snapshot-%016d.snap", baseSeq)), handler);
+            log.info("已加载快照 - 日志段: {}, 记录数: {}", baseSeq, count);
+            maxSeq = baseSeq;
+        }
+
+        List<Long> segments = listSeqs(SEGMENT_NAME);
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long seq = segments.get(i);
+            if (seq < baseSeq) {
+                continue;
+            }
+            boolean last = i == segments.size() - 1;
+            replayed += replaySegment(dir.resolve(String.format("wal-%016d.log", seq)), handler, last);
+            maxSeq = Math.max(maxSeq, seq);
+        }
+        if (replayed > 0) {
+            log.info("已回放日志记录: {}", replayed);
+        }
+
+        // 清理未完成的临时快照
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path tmp : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".tmp"))::iterator) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return maxSeq + 1;
+    }
+
+    private static boolean isSupportedVersion(int version) {
+        return version >= MIN_FORMAT_VERSION && version <= FORMAT_VERSION;
+    }
+
+    private long loadSnapshot(Path path, RecordHandler handler) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 256 * 1024)) {
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != SNAPSHOT_MAGIC || !isSupportedVersion(header.readInt())) {
+                throw new IOException("快照文件格式不支持: " + path);
+            }
+            header.readLong();
+            long count = 0;
+            byte[] payload;
+            while ((payload = RecordCodec.readFrame(in)) != null) {
+                if (RecordCodec.dispatch(payload, handler)) {
+                    if (RecordCodec.readEndCount(payload) != count) {
+                        throw new IOException("快照记录数不匹配: " + path);
+                    }
+                    return count;
+                }
+                count++;
+            }
+            throw new IOException("快照缺少结束标记: " + path);
+        } catch (RecordCodec.CorruptRecordException e) {
+            // 快照是完整写入后才改名的，损坏说明磁盘数据出错，拒绝带着缺失的数据启动
+            throw new IOException("快照文件损坏: " + path, e);
+        }
+    }
+
+    private long replaySegment(Path path, RecordHandler handler, boolean last) throws IOException {
+        if (Files.size(path) < HEADER_LENGTH) {
+            // 头部写入并 fsync 之后才会接受追加，头部不完整的日志段里不可能有已确认的记录
+            log.warn("跳过头部不完整的日志段: {}", path);
+            return 0;
+        }
+        long validLength = HEADER_LENGTH;
+        long count = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 256 * 1024)) {
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != SEGMENT_MAGIC || !isSupportedVersion(header.readInt())) {
+                throw new IOException("日志段格式不支持: " + path);
+            }
+            header.readLong();
+            byte[] payload;
+            while ((payload = RecordCodec.readFrame(in)) != null) {
+                RecordCodec.dispatch(payload, handler);
+                validLength += RecordCodec.frameLength(payload);
+                count++;
+            }
+        } catch (RecordCodec.CorruptRecordException e) {
+            if (!last) {
+                throw new IOException("日志段损坏: " + path, e);
+            }
+            // 最后一个日志段的残缺尾部来自未完成的写入，这些记录从未被确认，可以安全截掉
+            log.warn("截断日志段残缺尾部 - 文件: {}, 有效长度: {}, 原因: {}", path, validLength, e.getMessage());
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(validLength);
+                ch.force(true);
+            }
+        }
+        return count;
+    }
+
+    private List<Long> listSeqs(Pattern pattern) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> {
+                Matcher m = pattern.matcher(p.getFileName().toString());
+                if (m.matches()) {
+                    seqs.add(Long.parseLong(m.group(1)));
+                }
+            });
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    private void deleteOlderThan(long seq) throws IOException {
+        for (long old : listSeqs(SEGMENT_NAME)) {
+            if (old < seq) {
+                Files.deleteIfExists(dir.resolve(String.format("wal-%016d.log", old)));
+            }
+        }
+        for (long old : listSeqs(SNAPSHOT_NAME)) {
+            if (old < seq) {
+                Files.deleteIfExists(dir.resolve(String.format("snapshot-%016d.snap", old)));
+            }
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // 部分平台不支持对目录 fsync
+            log.debug("目录 fsync 失败: {}", e.getMessage());
+        }
+    }
+
+    private static final class Pending {
+        final byte[] payload;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Long> rotation;
+
+        Pending(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.passkeys.persistence;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32C;
+
+/**
+ * 持久化记录的二进制编解码
+ *
+ * 每条记录的帧格式：length(4) | crc32c(4) | payload(length)
+ * payload 的第一个字节是记录类型，其余字段按类型依次写出。
+ * 预写日志和快照使用同一种帧格式。
+ *
+ * 格式版本 2 在认证器记录和签名计数记录末尾追加了签名计数异常标记；
+ * 版本 1 的记录没有这个字段，解码时按未标记处理。
+ */
+public final class RecordCodec {
+
+    static final byte TYPE_USER = 1;
+    static final byte TYPE_AUTHENTICATOR = 2;
+    static final byte TYPE_SIGN_COUNT = 3;
+    static final byte TYPE_END = 127;
+
+    /**
+     * 单条记录的最大长度，超出视为数据损坏
+     */
+    static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private RecordCodec() {
+    }
+
+    // ========== 编码 ==========
+
+    public static byte[] encodeUser(User user) {
+        return encode(out -> {
+            out.writeByte(TYPE_USER);
+            out.writeUTF(user.getId());
+            out.writeUTF(user.getUsername());
+            writeNullable(out, user.getDisplayName());
+            out.writeLong(user.getCreatedAt());
+        });
+    }
+
+    public static byte[] encodeAuthenticator(Authenticator authenticator) {
+        return encode(out -> {
+            out.writeByte(TYPE_AUTHENTICATOR);
+            out.writeUTF(authenticator.getCredentialId());
+            out.writeUTF(authenticator.getUserId());
+            writeNullable(out, authenticator.getPublicKey());
+            out.writeLong(authenticator.getSignCount());
+            writeNullable(out, authenticator.getAaguid());
+            out.writeLong(authenticator.getCreatedAt());
+            out.writeLong(authenticator.getLastUsedAt());
+            writeNullable(out, authenticator.getName());
+            out.writeBoolean(authenticator.isSignCountAnomaly());
+        });
+    }
+
+    public static byte[] encodeSignCount(Authenticator authenticator) {
+        return encode(out -> {
+            out.writeByte(TYPE_SIGN_COUNT);
+            out.writeUTF(authenticator.getCredentialId());
+            out.writeLong(authenticator.getSignCount());
+            out.writeLong(authenticator.getLastUsedAt());
+            out.writeBoolean(authenticator.isSignCountAnomaly());
+        });
+    }
+
+    /**
+     * 结束标记，记录此前写入的记录数（用于校验快照完整性）
+     */
+    static byte[] encodeEnd(long recordCount) {
+        return encode(out -> {
+            out.writeByte(TYPE_END);
+            out.writeLong(recordCount);
+        });
+    }
+
+    /**
+     * 写出一帧
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        writeInt(out, payload.length);
+        writeInt(out, (int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * 一帧占用的字节数
+     */
+    public static int frameLength(byte[] payload) {
+        return 8 + payload.length;
+    }
+
+    // ========== 解码 ==========
+
+    /**
+     * 读取下一帧
+     *
+     * @return payload；流在帧边界处正常结束时返回 null
+     * @throws CorruptRecordException 帧被截断或校验失败
+     */
+    public static byte[] readFrame(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        DataInputStream data = new DataInputStream(in);
+        try {
+            int length = (first << 24) | (data.readUnsignedByte() << 16)
+                    | (data.readUnsignedByte() << 8) | data.readUnsignedByte();
+            int expectedCrc = data.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                throw new CorruptRecordException("记录长度非法: " + length);
+            }
+            byte[] payload = new byte[length];
+            data.readFully(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new CorruptRecordException("记录校验和不匹配");
+            }
+            return payload;
+        } catch (EOFException e) {
+            throw new CorruptRecordException("记录被截断");
+        }
+    }
+
+    /**
+     * 把一条记录分派给回放接口
+     *
+     * @return 是否为结束标记
+     */
+    static boolean dispatch(byte[] payload, RecordHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_USER:
+                handler.onUser(new User(in.readUTF(), in.readUTF(), readNullable(in), in.readLong()));
+                return false;
+            case TYPE_AUTHENTICATOR:
+                handler.onAuthenticator(new Authenticator(in.readUTF(), in.readUTF(), readNullable(in),
+                        in.readLong(), readNullable(in), in.readLong(), in.readLong(), readNullable(in),
+                        readAnomaly(in)));
+                return false;
+            case TYPE_SIGN_COUNT:
+                handler.onSignCount(in.readUTF(), in.readLong(), in.readLong(), readAnomaly(in));
+                return false;
+            case TYPE_END:
+                return true;
+            default:
+                throw new CorruptRecordException("未知的记录类型: " + type);
+        }
+    }
+
+    /**
+     * 读取结束标记中的记录数
+     */
+    static long readEndCount(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readByte();
+        return in.readLong();
+    }
+
+    static byte typeOf(byte[] payload) {
+        return payload[0];
+    }
+
+    // ========== 辅助方法 ==========
+
+    private interface FieldWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(FieldWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 签名计数异常标记（版本 1 的记录没有这个字段）
+     */
+    private static boolean readAnomaly(DataInputStream in) throws IOException {
+        return in.available() > 0 && in.readBoolean();
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * 记录损坏（截断或校验失败）
+     */
+    public static class CorruptRecordException extends IOException {
+        public CorruptRecordException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.passkeys.persistence;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+
+/**
+ * 日志 / 快照记录的回放接口
+ * 记录按写入顺序回放，每条记录都是幂等的覆盖写
+ */
+public interface RecordHandler {
+
+    /**
+     * 用户记录（不含认证器）
+     */
+    void onUser(User user);
+
+    /**
+     * 完整的认证器记录
+     */
+    void onAuthenticator(Authenticator authenticator);
+
+    /**
+     * 签名计数更新记录
+     *
+     * @param signCountAnomaly 签名计数异常标记（一旦标记不会清除）
+     */
+    void onSignCount(String credentialId, long signCount, long lastUsedAt, boolean signCountAnomaly);
+}
@@ -0,0 +1,124 @@
+package com.example.passkeys.persistence;
+
+import com.example.passkeys.model.Authenticator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 签名计数的延迟合并写入
+ *
+ * 登录时签名计数只更新内存（内存中的值是权威值，克隆检测直接读取它），
+ * 并把凭证标记为"脏"；后台按固定间隔或脏凭证数量达到阈值时批量写入日志。
+ * 同一凭证在一个周期内的多次更新只写一条记录。
+ */
+public class SignCountWriteBehind implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SignCountWriteBehind.class);
+
+    private final CredentialLog credentialLog;
+    private final int flushThreshold;
+
+    // Key: credentialId, Value: 最近一次更新后的认证器快照
+    private final Map<String, Authenticator> dirty = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final LongAdder updateCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+
+    /**
+     * @param credentialLog 持久化日志
+     * @param flushIntervalMillis 定时写入间隔
+     * @param flushThreshold 脏凭证数量达到该值时立即写入
+     */
+    public SignCountWriteBehind(CredentialLog credentialLog, long flushIntervalMillis, int flushThreshold) {
+        this.credentialLog = credentialLog;
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sign-count-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 标记认证器的签名计数需要写入
+     *
+     * 同一凭证已有待写入的快照时保留签名计数较大的一个（计数相同时取新的），
+     * 计数不会因为并发更新的先后顺序而回退
+     */
+    public void markDirty(Authenticator authenticator) {
+        dirty.merge(authenticator.getCredentialId(), authenticator,
+                (pending, next) -> next.getSignCount() >= pending.getSignCount() ? next : pending);
+        updateCount.increment();
+        if (dirty.size() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 把所有脏凭证写入日志（不等待 fsync）
+     */
+    public void flush() {
+        try {
+            int written = 0;
+            for (Map.Entry<String, Authenticator> entry : dirty.entrySet()) {
+                Authenticator authenticator = entry.getValue();
+                // 只移除仍是当前快照的条目：之后的更新会放入新快照，留到下一轮
+                if (dirty.remove(entry.getKey(), authenticator)) {
+                    credentialLog.append(RecordCodec.encodeSignCount(authenticator));
+                    written++;
+                }
+            }
+            writeCount.add(written);
+        } catch (RuntimeException e) {
+            log.error("写入签名计数失败", e);
+        }
+    }
+
+    /**
+     * 累计的签名计数更新次数
+     */
+    public long getUpdateCount() {
+        return updateCount.sum();
+    }
+
+    /**
+     * 累计写入日志的记录数（合并后）
+     */
+    public long getWriteCount() {
+        return writeCount.sum();
+    }
+
+    /**
+     * 当前待写入的凭证数
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.passkeys.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 认证接口的自适应并发上限（梯度算法，参考 Netflix concurrency-limits 的 Gradient2）
+ *
+ * 同时处理的认证请求数达到上限时直接拒绝（由 ConcurrencyLimitInterceptor 返回 503），
+ * 不让请求在线程池和连接队列里排队直到超时。上限根据认证完成请求的耗时
+ * （签名校验 + 挑战存储 + 仓库读写）调整：
+ *
+ * - 每个窗口（window 时长且至少 MIN_WINDOW_SAMPLES 个样本）计算平均耗时 shortRtt，
+ *   长期基线 longRtt 是 shortRtt 的指数移动平均
+ * - 梯度 = tolerance × longRtt / shortRtt，限制在 [0.5, 1]：耗时没有超出基线的 tolerance 倍时为 1，
+ *   排队使耗时上升时按比例缩小
+ * - 新上限 = 上限 × 梯度 + √上限（留出少量排队余量，使上限在空闲时可以缓慢增长），再按 smoothing 平滑
+ * - 窗口内最大并发不到上限一半时（流量本身很少）不调整，避免上限在空闲时无限增长
+ *
+ * 取得 / 归还许可只有一次 CAS 和几次原子累加；调整上限由窗口到期后第一个抢到的线程完成，
+ * 每个窗口只有一次，请求路径上没有锁竞争。
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    // longRtt 的平滑系数（约相当于最近 100 个窗口的平均）
+    private static final double LONG_RTT_ALPHA = 0.01;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+    // 未取整的上限（只在 update 中读写）
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    // 当前窗口
+    private final AtomicLong windowEndNanos;
+    private final LongAdder windowRttSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${passkeys.concurrency.enabled:true}") boolean enabled,
+            @Value("${passkeys.concurrency.initial-limit:20}") int initialLimit,
+            @Value("${passkeys.concurrency.min-limit:4}") int minLimit,
+            @Value("${passkeys.concurrency.max-limit:500}") int maxLimit,
+            @Value("${passkeys.concurrency.smoothing:0.2}") double smoothing,
+            @Value("${passkeys.concurrency.rtt-tolerance:1.5}") double tolerance,
+            @Value("${passkeys.concurrency.window-millis:250}") long windowMillis) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("并发上限须满足 1 <= min-limit <= initial-limit <= max-limit");
+        }
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        this.windowEndNanos = new AtomicLong(System.nanoTime() + windowNanos);
+        log.info("认证接口自适应并发上限 - {}，初始: {}，范围: [{}, {}]",
+                enabled ? "启用" : "关闭", initialLimit, minLimit, maxLimit);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取得一个许可；返回 false 时请求应被拒绝（不需要归还）
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+        return true;
+    }
+
+    /**
+     * 归还许可
+     *
+     * @param startNanos 取得许可时的 System.nanoTime()
+     * @param sample 是否把这次耗时计入上限调整（只有认证完成请求的耗时反映校验路径的负载）
+     */
+    public void release(long startNanos, boolean sample) {
+        inFlight.decrementAndGet();
+        if (!sample) {
+            return;
+        }
+        long now = System.nanoTime();
+        windowRttSum.add(now - startNanos);
+        windowSamples.increment();
+
+        long windowEnd = windowEndNanos.get();
+        if (now - windowEnd >= 0 && windowSamples.sum() >= MIN_WINDOW_SAMPLES
+                && windowEndNanos.compareAndSet(windowEnd, now + windowNanos)) {
+            long samples = windowSamples.sumThenReset();
+            long rttSum = windowRttSum.sumThenReset();
+            int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+            if (samples > 0) {
+                update((double) rttSum / samples, maxInFlight);
+            }
+        }
+    }
+
+    private synchronized void update(double shortRtt, int maxInFlight) {
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos += (shortRtt - longRttNanos) * LONG_RTT_ALPHA;
+        }
+        // 负载下降后耗时明显低于基线时，让基线更快地跟上（否则上限会长时间停在高位）
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        if (maxInFlight * 2 < estimatedLimit) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRtt));
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        double next = estimatedLimit * (1 - smoothing) + target * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+
+        int rounded = (int) estimatedLimit;
+        if (rounded != limit) {
+            log.debug("认证并发上限 {} -> {}（窗口平均耗时 {}ms，基线 {}ms）", limit, rounded,
+                    String.format("%.2f", shortRtt / 1e6), String.format("%.2f", longRttNanos / 1e6));
+            limit = rounded;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
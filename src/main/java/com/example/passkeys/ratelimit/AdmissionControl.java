@@ -0,0 +1,85 @@
+package com.example.passkeys.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注册 / 认证接口的准入控制（按客户端 IP 和按账户的令牌桶）
+ *
+ * 客户端维度由 AdmissionInterceptor 在进入控制器之前检查（四个仪式接口都检查）；
+ * 账户维度在控制器解析出请求体之后、签名校验之前检查：注册按用户名，认证完成按凭证 ID
+ * （可发现凭证的认证开始请求没有账户信息，只按客户端限流）。
+ * 两个维度各用一个 TokenBucketSketch，内存固定，与客户端和账户的数量无关。
+ *
+ * 默认关闭：客户端维度按请求的来源地址计数，部署在反向代理之后时必须先配置
+ * server.forward-headers-strategy 和受信任的代理地址，否则所有用户共用代理的一个地址。
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final boolean enabled;
+    private final TokenBucketSketch clients;
+    private final TokenBucketSketch accounts;
+
+    public AdmissionControl(
+            @Value("${passkeys.ratelimit.enabled:false}") boolean enabled,
+            @Value("${passkeys.ratelimit.client.rate-per-second:50}") double clientRate,
+            @Value("${passkeys.ratelimit.client.burst:100}") int clientBurst,
+            @Value("${passkeys.ratelimit.account.rate-per-second:1}") double accountRate,
+            @Value("${passkeys.ratelimit.account.burst:10}") int accountBurst,
+            @Value("${passkeys.ratelimit.sketch.depth:4}") int depth,
+            @Value("${passkeys.ratelimit.sketch.width:16384}") int width) {
+        this.enabled = enabled;
+        this.clients = enabled ? new TokenBucketSketch(clientRate, clientBurst, depth, width) : null;
+        this.accounts = enabled ? new TokenBucketSketch(accountRate, accountBurst, depth, width) : null;
+        if (enabled) {
+            log.info("准入控制 - 客户端: {}/s（突发 {}），账户: {}/s（突发 {}），sketch: {}×{}，共 {} KB",
+                    clientRate, clientBurst, accountRate, accountBurst, depth, width,
+                    (clients.memoryBytes() + accounts.memoryBytes()) / 1024);
+        } else {
+            log.info("准入控制已关闭");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 按客户端地址取令牌
+     *
+     * @return 0 表示放行；否则为建议的重试等待秒数（Retry-After）
+     */
+    public long admitClient(String address) {
+        return enabled ? retryAfterSeconds(clients.acquire(address)) : 0;
+    }
+
+    /**
+     * 按用户名取令牌（注册开始 / 完成）
+     *
+     * @return 0 表示放行；否则为建议的重试等待秒数（Retry-After）
+     */
+    public long admitUser(String username) {
+        return enabled ? retryAfterSeconds(accounts.acquire("user:" + username)) : 0;
+    }
+
+    /**
+     * 按凭证 ID 取令牌（认证完成）
+     *
+     * @return 0 表示放行；否则为建议的重试等待秒数（Retry-After）
+     */
+    public long admitCredential(String credentialId) {
+        return enabled ? retryAfterSeconds(accounts.acquire("credential:" + credentialId)) : 0;
+    }
+
+    private static long retryAfterSeconds(long waitNanos) {
+        // Retry-After 只能是整秒，向上取整
+        return waitNanos <= 0 ? 0 : (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+}
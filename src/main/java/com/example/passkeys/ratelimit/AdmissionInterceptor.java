@@ -0,0 +1,62 @@
+package com.example.passkeys.ratelimit;
+
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Ceremony;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import com.example.passkeys.metrics.PasskeysMetrics.Step;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * 仪式接口的客户端限流：按客户端地址取令牌，取不到时直接返回 429 和 Retry-After，不进入控制器
+ *
+ * 客户端地址取 request.getRemoteAddr()。部署在反向代理之后时需要配置
+ * server.forward-headers-strategy，否则所有请求都会算作代理的地址；
+ * 不要直接信任 X-Forwarded-For，客户端可以随意伪造。
+ */
+public class AdmissionInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionInterceptor.class);
+
+    private final AdmissionControl admissionControl;
+    private final PasskeysMetrics metrics;
+    private final RejectionWriter rejections;
+
+    public AdmissionInterceptor(AdmissionControl admissionControl, PasskeysMetrics metrics,
+                                ObjectMapper objectMapper) {
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
+        this.rejections = new RejectionWriter(objectMapper);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        // 异步处理结束后的再次分派（完成接口返回 CompletableFuture）已经在第一次分派时检查过
+        if (CorsUtils.isPreFlightRequest(request) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        String address = request.getRemoteAddr();
+        long retryAfter = admissionControl.admitClient(address);
+        if (retryAfter == 0) {
+            return true;
+        }
+
+        String path = request.getRequestURI();
+        metrics.recordOutcome(path.contains("/register/") ? Ceremony.REGISTRATION : Ceremony.AUTHENTICATION,
+                path.endsWith("/start") ? Step.START : Step.FINISH, Outcome.RATE_LIMITED);
+        log.debug("客户端请求过于频繁 - 地址: {}, 路径: {}", address, path);
+
+        rejections.write(response, HttpStatus.TOO_MANY_REQUESTS, retryAfter, "请求过于频繁，请稍后重试");
+        return false;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.passkeys.ratelimit;
+
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import com.example.passkeys.metrics.PasskeysMetrics.Step;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.AUTHENTICATION;
+
+/**
+ * 认证接口的过载保护：超过 AdaptiveConcurrencyLimiter 的并发上限时立即返回 503，不进入控制器
+ *
+ * 许可在请求完成（afterCompletion）时归还：认证完成接口是异步处理的，
+ * afterCompletion 在异步处理结束后的再次分派中调用，耗时包含签名校验的排队和执行，用于调整上限。
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    // 取得许可的时刻，存在请求属性中
+    private static final String START_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".start";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final PasskeysMetrics metrics;
+    private final RejectionWriter rejections;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter, PasskeysMetrics metrics,
+                                       ObjectMapper objectMapper) {
+        this.limiter = limiter;
+        this.metrics = metrics;
+        this.rejections = new RejectionWriter(objectMapper);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        // 异步处理结束后的再次分派沿用第一次分派取得的许可
+        if (CorsUtils.isPreFlightRequest(request) || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        if (limiter.tryAcquire()) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+            return true;
+        }
+        metrics.recordOutcome(AUTHENTICATION, isFinish(request) ? Step.FINISH : Step.START, Outcome.OVERLOADED);
+        rejections.write(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "服务器繁忙，请稍后重试");
+        return false;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start != null) {
+            request.removeAttribute(START_ATTRIBUTE);
+            limiter.release((Long) start, isFinish(request));
+        }
+    }
+
+    private static boolean isFinish(HttpServletRequest request) {
+        return request.getRequestURI().endsWith("/finish");
+    }
+}
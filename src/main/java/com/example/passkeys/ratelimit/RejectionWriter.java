@@ -0,0 +1,35 @@
+package com.example.passkeys.ratelimit;
+
+import com.example.passkeys.dto.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+
+/**
+ * 拦截器拒绝请求时直接写出的错误响应（与控制器的错误响应格式相同）
+ */
+final class RejectionWriter {
+
+    private final ObjectWriter errorWriter;
+
+    RejectionWriter(ObjectMapper objectMapper) {
+        this.errorWriter = objectMapper.writerFor(ErrorResponse.class).without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * @param retryAfterSeconds 建议的重试等待秒数（Retry-After）
+     */
+    void write(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message)
+            throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        errorWriter.writeValue(response.getOutputStream(), ErrorResponse.of(message));
+    }
+}
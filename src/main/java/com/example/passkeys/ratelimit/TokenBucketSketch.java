@@ -0,0 +1,112 @@
+package com.example.passkeys.ratelimit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以 count-min sketch 方式存放的令牌桶（内存固定，不按键分配对象）
+ *
+ * 每个键的令牌桶用 GCRA（通用信元速率算法，与令牌桶等价）表示为一个“理论到达时刻” TAT：
+ * 每放行一个请求 TAT 推后一个发放间隔，TAT 超出当前时刻的部分不超过突发容量时放行。
+ * 所有键的 TAT 存在 depth 行 × width 列的 long 数组中，一个键在每行占一个格子：
+ * 取各行中最小的值作为它的 TAT（其他键碰撞只会让格子变大，取最小值受影响最少），
+ * 放行后只把小于新 TAT 的格子推后（保守更新）。碰撞的代价是偶尔多限流，不会多放行；
+ * 长时间不活跃的键的格子自然落到当前时刻之前，等于令牌桶已满，不需要清理。
+ *
+ * 放行和拒绝都只有几次数组读取和 CAS，不加锁。同一个键的并发请求可能读到同一个 TAT
+ * 后都被放行，最多多放行并发数个请求。哈希使用进程内随机种子，外部难以预测键落在哪些格子，
+ * 也就难以用大量构造的键专门挤占某个用户的格子。
+ */
+public final class TokenBucketSketch {
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray cells;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final long seed;
+    private final long epoch;
+
+    /**
+     * @param ratePerSecond 每秒发放的令牌数
+     * @param burst 桶容量（允许的突发请求数）
+     * @param depth 行数（独立哈希函数个数）
+     * @param width 每行的格子数（向上取整到 2 的幂）
+     */
+    public TokenBucketSketch(double ratePerSecond, int burst, int depth, int width) {
+        if (ratePerSecond <= 0 || burst < 1 || depth < 1 || width < 1) {
+            throw new IllegalArgumentException("速率、突发容量和 sketch 尺寸必须为正数");
+        }
+        int columns = width <= 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+        this.depth = depth;
+        this.mask = columns - 1;
+        this.cells = new AtomicLongArray(depth * columns);
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.seed = ThreadLocalRandom.current().nextLong();
+        // 格子初始值 0 对应构造时刻，即所有桶初始都是满的
+        this.epoch = System.nanoTime();
+    }
+
+    /**
+     * 为 key 取一个令牌
+     *
+     * @return 0 表示放行；否则为需要等待的纳秒数（桶中重新有令牌的时间）
+     */
+    public long acquire(String key) {
+        long hash = hash(key);
+        // 两个哈希组合出各行的列号（Kirsch-Mitzenmacher）
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        long now = System.nanoTime() - epoch;
+
+        long tat = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            tat = Math.min(tat, cells.get(index(row, h1, h2)));
+        }
+        tat = Math.max(tat, now);
+        long wait = tat - toleranceNanos - now;
+        if (wait > 0) {
+            return wait;
+        }
+
+        long next = tat + intervalNanos;
+        for (int row = 0; row < depth; row++) {
+            int index = index(row, h1, h2);
+            long current;
+            while ((current = cells.get(index)) < next && !cells.compareAndSet(index, current, next)) {
+                // 其他线程更新了同一个格子，重新比较
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 占用的内存（字节，不含对象头）
+     */
+    public long memoryBytes() {
+        return (long) cells.length() * Long.BYTES;
+    }
+
+    private int index(int row, int h1, int h2) {
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+
+    /**
+     * 带随机种子的 64 位哈希（FNV-1a 逐字符累积，最后用 murmur3 的 fmix64 打散），不分配对象
+     */
+    private long hash(String key) {
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
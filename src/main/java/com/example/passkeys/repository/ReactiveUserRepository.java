@@ -0,0 +1,55 @@
+package com.example.passkeys.repository;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import reactor.core.publisher.Mono;
+
+/**
+ * 用户仓库的响应式视图（供 WebFlux 接口使用）
+ * 
+ * 查询和签名计数更新都在内存中完成，直接在调用线程上执行；
+ * 保存用户 / 新凭证时不阻塞等待落盘，在日志组提交完成后发出完成信号
+ */
+public class ReactiveUserRepository {
+    
+    private final UserRepository userRepository;
+    
+    public ReactiveUserRepository(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+    
+    public Mono<User> findByUsername(String username) {
+        return Mono.fromSupplier(() -> userRepository.findByUsername(username))
+                .flatMap(Mono::justOrEmpty);
+    }
+    
+    public Mono<User> findById(String userId) {
+        return Mono.fromSupplier(() -> userRepository.findById(userId))
+                .flatMap(Mono::justOrEmpty);
+    }
+    
+    public Mono<Authenticator> findAuthenticatorByCredentialId(String credentialId) {
+        return Mono.fromSupplier(() -> userRepository.findAuthenticatorByCredentialId(credentialId))
+                .flatMap(Mono::justOrEmpty);
+    }
+    
+    public Mono<Void> saveUser(User user) {
+        return Mono.defer(() -> Mono.fromFuture(userRepository.saveUserAsync(user)));
+    }
+    
+    public Mono<User> createUser(User user) {
+        return Mono.defer(() -> Mono.fromFuture(userRepository.createUserAsync(user)));
+    }
+    
+    public Mono<Void> saveAuthenticator(Authenticator authenticator) {
+        return Mono.defer(() -> Mono.fromFuture(userRepository.saveAuthenticatorAsync(authenticator)));
+    }
+    
+    /**
+     * @return 签名计数是否严格递增（false 表示可能存在克隆的认证器）
+     * @see UserRepository#updateSignCount(String, long)
+     */
+    public Mono<Boolean> updateSignCount(String credentialId, long signCount) {
+        return Mono.fromSupplier(() -> userRepository.updateSignCount(credentialId, signCount));
+    }
+}
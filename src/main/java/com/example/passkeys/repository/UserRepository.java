@@ -2,39 +2,102 @@ package com.example.passkeys.repository;
 
 import com.example.passkeys.model.Authenticator;
 import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.RecordCodec;
+import com.example.passkeys.persistence.RecordHandler;
+import com.example.passkeys.persistence.SignCountWriteBehind;
 import com.yubico.webauthn.CredentialRepository;
 import com.yubico.webauthn.RegisteredCredential;
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * 用户和凭证存储仓库
  * 
  * 使用内存存储（适合 Demo 演示）
- * 生产环境应该使用数据库持久化存储
+ * 配置 passkeys.storage.dir 后，所有写入同时追加到本地预写日志，重启时从快照和日志恢复
+ * 
+ * 并发模型：
+ * - 用户及其认证器保存为不可变快照（User 持有全部 Authenticator），整体替换即原子更新
+ * - usersById 是唯一保存快照的地方，其余索引只保存 ID；先发布快照再发布索引，
+ *   通过索引找到的快照一定已包含对应的凭证
+ * - 写入按用户 ID 分段加锁，不同用户的写入互不竞争
+ * - 读取只做 ConcurrentHashMap.get，不加锁
  */
 @Repository
 public class UserRepository implements CredentialRepository {
     
-    // 用户存储：username -> User
-    private final Map<String, User> usersByUsername = new ConcurrentHashMap<>();
+    // 写锁分段数（2 的幂）
+    private static final int LOCK_STRIPES = 64;
+    
+    // 持久化日志（未配置时为 null，仅内存存储）
+    private final CredentialLog credentialLog;
+    
+    // 签名计数的延迟合并写入（未配置持久化时为 null）
+    private final SignCountWriteBehind signCountWriteBehind;
     
-    // 用户存储：userId -> User
+    // 用户快照：userId -> User（含认证器、已解码的用户句柄和凭证描述符）
     private final Map<String, User> usersById = new ConcurrentHashMap<>();
     
-    // 凭证存储：credentialId -> Authenticator
-    private final Map<String, Authenticator> authenticators = new ConcurrentHashMap<>();
+    // 用户名索引：username -> userId
+    private final Map<String, String> userIdsByUsername = new ConcurrentHashMap<>();
+    
+    // 有序用户名索引（分页和流式遍历的稳定顺序），登录路径不使用
+    private final NavigableSet<String> orderedUsernames = new ConcurrentSkipListSet<>();
+    
+    // 凭证索引：credentialId -> userId
+    // ByteArray.getBase64Url() 返回构造时缓存的字符串，用它做 key 不产生额外开销
+    // 注意：COSE 公钥到 java.security.PublicKey 的转换发生在 Yubico 库内部
+    // （FinishAssertionSteps 第 20 步调用包私有的 WebAuthnCodecs.importCosePublicKey），
+    // RegisteredCredential 只能携带 COSE 字节，因此无法在这里缓存解析后的公钥
+    private final Map<String, String> userIdsByCredentialId = new ConcurrentHashMap<>();
+    
+    // 进行中的时间点导出（没有导出时为 null）
+    // 用 CAS 保证同一时间只有一个导出，不使用对象监视器（虚拟线程在 synchronized 块内阻塞会占住载体线程）
+    private final AtomicReference<ExportView> exportView = new AtomicReference<>();
+    
+    // 按用户 ID 分段的写锁
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    
+    public UserRepository(ObjectProvider<CredentialLog> credentialLog,
+                          ObjectProvider<SignCountWriteBehind> signCountWriteBehind) {
+        this.credentialLog = credentialLog.getIfAvailable();
+        this.signCountWriteBehind = signCountWriteBehind.getIfAvailable();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+    
+    /**
+     * 从持久化日志恢复数据
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        if (credentialLog != null) {
+            credentialLog.open(new ReplayHandler(), this::writeSnapshot);
+        }
+    }
     
     /**
      * 根据用户名查找用户
      */
     public Optional<User> findByUsername(String username) {
-        return Optional.ofNullable(usersByUsername.get(username));
+        String userId = userIdsByUsername.get(username);
+        return userId != null ? findById(userId) : Optional.empty();
     }
     
     /**
@@ -45,38 +108,420 @@ public class UserRepository implements CredentialRepository {
     }
     
     /**
-     * 保存用户
+     * 保存用户（已存在时只更新基本信息，保留认证器）
      */
     public void saveUser(User user) {
-        usersByUsername.put(user.getUsername(), user);
-        usersById.put(user.getId(), user);
+        awaitDurable(saveUserAsync(user));
     }
     
     /**
-     * 保存认证器
+     * 保存用户，不等待落盘
+     * 
+     * 内存中立即可见；返回的 Future 在日志记录落盘后完成（未启用持久化时已完成）
+     * 
+     * @throws IllegalStateException 用户名已被其他用户使用（例如并发创建了同名用户）
+     */
+    public CompletableFuture<Void> saveUserAsync(User user) {
+        ReentrantLock lock = lockFor(user.getId());
+        lock.lock();
+        try {
+            if (!claimUsername(user)) {
+                throw new IllegalStateException("用户名已被其他用户使用: " + user.getUsername());
+            }
+            putUser(user);
+            if (credentialLog != null) {
+                // 在锁内追加，保证同一用户的日志顺序与内存中的更新顺序一致
+                return credentialLog.append(RecordCodec.encodeUser(user));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+    
+    /**
+     * 创建新用户（注册路径）
+     * 
+     * @return 实际保存的用户，见 {@link #createUserAsync(User)}
+     */
+    public User createUser(User user) {
+        return awaitDurable(createUserAsync(user));
+    }
+    
+    /**
+     * 创建新用户，不等待落盘
+     * 
+     * 同一个新用户名的并发注册只有一个 ID 能占用用户名，其余调用不报错，而是返回占用者，
+     * 注册流程继续为该用户进行（与先查到已有用户的情况相同）
+     * 
+     * @return 实际保存的用户；Future 在日志记录落盘后完成（返回占用者时已完成）
+     */
+    public CompletableFuture<User> createUserAsync(User user) {
+        ReentrantLock lock = lockFor(user.getId());
+        lock.lock();
+        try {
+            if (claimUsername(user)) {
+                putUser(user);
+                if (credentialLog != null) {
+                    return credentialLog.append(RecordCodec.encodeUser(user)).thenApply(v -> user);
+                }
+                return CompletableFuture.completedFuture(user);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return CompletableFuture.completedFuture(usernameOwner(user.getUsername()));
+    }
+    
+    /**
+     * 保存认证器（所属用户必须已存在）
      */
     public void saveAuthenticator(Authenticator authenticator) {
-        authenticators.put(authenticator.getCredentialId(), authenticator);
+        awaitDurable(saveAuthenticatorAsync(authenticator));
+    }
+    
+    /**
+     * 保存认证器，不等待落盘（所属用户必须已存在）
+     * 
+     * 内存中立即可见；返回的 Future 在新凭证落盘后完成（未启用持久化或只是更新时已完成）
+     */
+    public CompletableFuture<Void> saveAuthenticatorAsync(Authenticator authenticator) {
+        CompletableFuture<Void> durable = null;
+        ReentrantLock lock = lockFor(authenticator.getUserId());
+        lock.lock();
+        try {
+            if (!usersById.containsKey(authenticator.getUserId())) {
+                throw new IllegalStateException("用户不存在: " + authenticator.getUserId());
+            }
+            boolean created = putAuthenticator(authenticator);
+            if (credentialLog != null) {
+                if (created) {
+                    durable = credentialLog.append(RecordCodec.encodeAuthenticator(authenticator));
+                } else {
+                    // 登录路径上的签名计数更新不等待 fsync，由组提交在后台落盘
+                    credentialLog.append(RecordCodec.encodeSignCount(authenticator));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return durable != null ? durable : CompletableFuture.completedFuture(null);
+    }
+    
+    /**
+     * 批量导入用户和认证器（迁移用）
+     * 
+     * 用户不存在时创建，已存在时保留原有信息；凭证已存在时跳过。
+     * 每条记录仍在所属用户的写锁内写入并追加日志，但整批只等待一次落盘（由组提交合并 fsync）。
+     * 不同批次可以并发导入。
+     * 
+     * @param users 本批涉及的用户（userId -> User）
+     * @param authenticators 本批的认证器，所属用户必须在 users 中或已存在
+     */
+    public BatchResult importBatch(Map<String, User> users, List<Authenticator> authenticators) {
+        BatchResult result = new BatchResult();
+        Set<String> rejectedUsers = new HashSet<>();
+        CompletableFuture<Void> last = null;
+        
+        for (User user : users.values()) {
+            ReentrantLock lock = lockFor(user.getId());
+            lock.lock();
+            try {
+                if (usersById.containsKey(user.getId())) {
+                    continue;
+                }
+                if (!claimUsername(user)) {
+                    rejectedUsers.add(user.getId());
+                    result.rejected.add("用户名已被其他用户使用: " + user.getUsername());
+                    continue;
+                }
+                putUser(user);
+                result.importedUsers++;
+                if (credentialLog != null) {
+                    last = credentialLog.append(RecordCodec.encodeUser(user));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // 同一用户的认证器通常相邻，合并为一次快照替换
+        int i = 0;
+        while (i < authenticators.size()) {
+            String userId = authenticators.get(i).getUserId();
+            int end = i + 1;
+            while (end < authenticators.size() && authenticators.get(end).getUserId().equals(userId)) {
+                end++;
+            }
+            List<Authenticator> group = authenticators.subList(i, end);
+            i = end;
+            
+            ReentrantLock lock = lockFor(userId);
+            lock.lock();
+            try {
+                User user = usersById.get(userId);
+                if (user == null || rejectedUsers.contains(userId)) {
+                    for (Authenticator authenticator : group) {
+                        result.rejected.add("凭证所属用户不存在或已被拒绝: " + authenticator.getCredentialId());
+                    }
+                    continue;
+                }
+                // 写锁按用户 ID 划分，不同批次可能同时把同一个凭证 ID 导入给不同用户，
+                // 所以先用 putIfAbsent 原子地占用凭证索引，占用失败的按重复处理。
+                // 占用之后、快照发布之前，按凭证 ID 查找会暂时查不到（与尚未导入相同）
+                List<Authenticator> accepted = new ArrayList<>(group.size());
+                Set<String> seen = new HashSet<>();
+                for (Authenticator authenticator : group) {
+                    if (!seen.add(authenticator.getCredentialId())
+                            || userIdsByCredentialId.putIfAbsent(authenticator.getCredentialId(), userId) != null) {
+                        result.duplicateCredentials++;
+                    } else {
+                        accepted.add(authenticator);
+                    }
+                }
+                if (accepted.isEmpty()) {
+                    continue;
+                }
+                publish(user, user.withAuthenticators(accepted));
+                for (Authenticator authenticator : accepted) {
+                    if (credentialLog != null) {
+                        last = credentialLog.append(RecordCodec.encodeAuthenticator(authenticator));
+                    }
+                }
+                result.imported.addAll(accepted);
+            } finally {
+                lock.unlock();
+            }
+        }
         
-        // 同时更新用户的认证器列表
-        findById(authenticator.getUserId()).ifPresent(user -> {
-            user.addAuthenticator(authenticator);
-            saveUser(user);
-        });
+        // 同一日志中的记录按顺序提交，最后一条落盘即整批落盘
+        if (last != null) {
+            awaitDurable(last);
+        }
+        return result;
+    }
+    
+    /**
+     * 更新签名计数（登录路径）
+     * 
+     * 只更新内存中的权威值，克隆检测（lookup）立即可见；计数只增不减，
+     * 并发完成的两次认证在同一把锁下依次比较，不会互相覆盖。
+     * 持久化由 SignCountWriteBehind 合并后批量写入，登录延迟中不包含存储写入
+     * 
+     * @return 签名计数是否严格递增（false 表示可能存在克隆的认证器）
+     */
+    public boolean updateSignCount(String credentialId, long signCount) {
+        String userId = userIdsByCredentialId.get(credentialId);
+        if (userId == null) {
+            return false;
+        }
+        boolean increasing;
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            User user = usersById.get(userId);
+            Authenticator current = user != null ? user.getAuthenticator(credentialId) : null;
+            if (current == null) {
+                return false;
+            }
+            increasing = current.isIncreasing(signCount);
+            Authenticator updated = current.withUsage(signCount, System.currentTimeMillis());
+            publish(user, user.withAuthenticator(updated));
+            // 在锁内标记：同一凭证的快照按更新顺序放入，较旧的快照不会覆盖较新的
+            if (signCountWriteBehind != null) {
+                signCountWriteBehind.markDirty(updated);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return increasing;
+    }
+    
+    /**
+     * 发布新的用户快照（调用方持有该用户的写锁，或处于单线程回放中）
+     * 
+     * 导出进行中且该用户尚未导出时，先保留导出开始时的版本
+     */
+    private void publish(User previous, User snapshot) {
+        ExportView view = exportView.get();
+        if (view != null) {
+            view.preserve(snapshot.getId(), previous != null ? previous.getUsername() : snapshot.getUsername(),
+                    previous);
+        }
+        usersById.put(snapshot.getId(), snapshot);
+    }
+    
+    /**
+     * 占用用户名（调用方持有该用户的写锁）
+     * 
+     * 写锁按用户 ID 划分，不同 ID 的同名用户可能同时写入，所以用户名索引用 putIfAbsent 原子地占用，
+     * 不会把已有用户的用户名指向另一个 ID
+     * 
+     * @return 用户名未被占用或已属于该用户
+     */
+    private boolean claimUsername(User user) {
+        String ownerId = userIdsByUsername.putIfAbsent(user.getUsername(), user.getId());
+        return ownerId == null || ownerId.equals(user.getId());
+    }
+    
+    /**
+     * 查找占用用户名的用户
+     * 
+     * 占用者在自己的写锁内先占用用户名、再写入快照，取得它的写锁之后快照一定可见
+     */
+    private User usernameOwner(String username) {
+        String ownerId = userIdsByUsername.get(username);
+        User owner = null;
+        if (ownerId != null) {
+            ReentrantLock lock = lockFor(ownerId);
+            lock.lock();
+            try {
+                owner = usersById.get(ownerId);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (owner == null) {
+            throw new IllegalStateException("用户名已被其他用户使用: " + username);
+        }
+        return owner;
+    }
+    
+    /**
+     * 写入用户快照和用户名索引（调用方持有该用户的写锁并已占用用户名，或处于单线程回放中）
+     */
+    private void putUser(User user) {
+        User existing = usersById.get(user.getId());
+        User snapshot = existing != null ? existing.withProfile(user) : user;
+        publish(existing, snapshot);
+        if (existing != null && !existing.getUsername().equals(snapshot.getUsername())) {
+            userIdsByUsername.remove(existing.getUsername(), user.getId());
+            orderedUsernames.remove(existing.getUsername());
+        }
+        userIdsByUsername.put(snapshot.getUsername(), user.getId());
+        orderedUsernames.add(snapshot.getUsername());
+    }
+    
+    /**
+     * 写入认证器（调用方持有该用户的写锁，或处于单线程回放中）
+     * 
+     * @return 是否为新凭证
+     */
+    private boolean putAuthenticator(Authenticator authenticator) {
+        User user = usersById.get(authenticator.getUserId());
+        if (user == null) {
+            return false;
+        }
+        boolean created = user.getAuthenticator(authenticator.getCredentialId()) == null;
+        // 先发布快照，再发布凭证索引
+        publish(user, user.withAuthenticator(authenticator));
+        if (created) {
+            userIdsByCredentialId.put(authenticator.getCredentialId(), user.getId());
+        }
+        return created;
     }
     
     /**
      * 根据凭证 ID 查找认证器
      */
     public Optional<Authenticator> findAuthenticatorByCredentialId(String credentialId) {
-        return Optional.ofNullable(authenticators.get(credentialId));
+        return Optional.ofNullable(getAuthenticator(credentialId));
     }
     
     /**
      * 获取所有用户
      */
     public List<User> findAllUsers() {
-        return new ArrayList<>(usersByUsername.values());
+        return new ArrayList<>(usersById.values());
+    }
+    
+    /**
+     * 用户数
+     */
+    public int getUserCount() {
+        return usersById.size();
+    }
+    
+    /**
+     * 凭证数
+     */
+    public int getCredentialCount() {
+        return userIdsByCredentialId.size();
+    }
+    
+    /**
+     * 按用户名顺序分页查找用户
+     * 
+     * @param afterUsername 上一页最后一个用户名（不含），null 表示从头开始
+     * @param limit 最多返回的用户数
+     */
+    public List<User> findUsersAfter(String afterUsername, int limit) {
+        NavigableSet<String> tail = afterUsername != null
+                ? orderedUsernames.tailSet(afterUsername, false)
+                : orderedUsernames;
+        List<User> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String username : tail) {
+            if (page.size() >= limit) {
+                break;
+            }
+            findByUsername(username).ifPresent(page::add);
+        }
+        return page;
+    }
+    
+    /**
+     * 按用户名顺序遍历所有用户（弱一致：遍历期间的并发写入可能可见也可能不可见，不复制用户列表）
+     */
+    public Stream<User> streamUsers() {
+        return orderedUsernames.stream()
+                .map(userIdsByUsername::get)
+                .filter(Objects::nonNull)
+                .map(usersById::get)
+                .filter(Objects::nonNull);
+    }
+    
+    /**
+     * 时间点导出：按用户名顺序访问导出开始时刻的全部用户快照
+     * 
+     * 不加全局锁，登录和注册照常进行：导出期间被修改、且尚未导出的用户，
+     * 写入方会先保留修改前的快照（只保留引用，不复制数据）；导出开始后新建的用户不会被导出。
+     * 每个用户只在读取其快照时短暂持有该用户的写锁，访问回调在锁外执行。
+     * 同一时间只允许一个导出。
+     * 
+     * @return 导出的用户数
+     * @throws IllegalStateException 已有导出正在进行
+     */
+    public long exportSnapshot(SnapshotVisitor visitor) throws IOException {
+        ExportView view = new ExportView();
+        if (!exportView.compareAndSet(null, view)) {
+            throw new IllegalStateException("已有导出任务正在进行");
+        }
+        try {
+            long count = 0;
+            for (String username : orderedUsernames) {
+                String userId = userIdsByUsername.get(username);
+                if (userId == null) {
+                    continue;
+                }
+                User user;
+                ReentrantLock lock = lockFor(userId);
+                lock.lock();
+                try {
+                    Optional<User> preserved = view.preImages.remove(userId);
+                    user = preserved != null ? preserved.orElse(null) : usersById.get(userId);
+                    view.cursor = username;
+                } finally {
+                    lock.unlock();
+                }
+                if (user != null) {
+                    visitor.visit(user);
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            exportView.set(null);
+        }
     }
     
     // ========== 实现 CredentialRepository 接口 ==========
@@ -84,18 +529,13 @@ public class UserRepository implements CredentialRepository {
     @Override
     public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
         return findByUsername(username)
-                .map(user -> user.getAuthenticators().stream()
-                        .map(auth -> PublicKeyCredentialDescriptor.builder()
-                                .id(parseBase64Url(auth.getCredentialId()))
-                                .build())
-                        .collect(Collectors.toSet()))
+                .map(User::getCredentialDescriptors)
                 .orElse(Collections.emptySet());
     }
     
     @Override
     public Optional<ByteArray> getUserHandleForUsername(String username) {
-        return findByUsername(username)
-                .map(user -> parseBase64Url(user.getId()));
+        return findByUsername(username).map(User::getUserHandle);
     }
     
     @Override
@@ -106,38 +546,145 @@ public class UserRepository implements CredentialRepository {
     
     @Override
     public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
-        return findAuthenticatorByCredentialId(credentialId.getBase64Url())
-                .filter(auth -> auth.getUserId().equals(userHandle.getBase64Url()))
-                .map(auth -> RegisteredCredential.builder()
-                        .credentialId(parseBase64Url(auth.getCredentialId()))
-                        .userHandle(parseBase64Url(auth.getUserId()))
-                        .publicKeyCose(parseBase64Url(auth.getPublicKey()))
-                        .signatureCount(auth.getSignCount())
-                        .build());
+        Authenticator authenticator = getAuthenticator(credentialId.getBase64Url());
+        if (authenticator == null || !authenticator.getUserId().equals(userHandle.getBase64Url())) {
+            return Optional.empty();
+        }
+        return Optional.of(authenticator.toRegisteredCredential());
     }
     
     @Override
     public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
-        return findAuthenticatorByCredentialId(credentialId.getBase64Url())
-                .map(auth -> Collections.singleton(
-                        RegisteredCredential.builder()
-                                .credentialId(parseBase64Url(auth.getCredentialId()))
-                                .userHandle(parseBase64Url(auth.getUserId()))
-                                .publicKeyCose(parseBase64Url(auth.getPublicKey()))
-                                .signatureCount(auth.getSignCount())
-                                .build()))
-                .orElse(Collections.emptySet());
+        Authenticator authenticator = getAuthenticator(credentialId.getBase64Url());
+        return authenticator != null
+                ? Collections.singleton(authenticator.toRegisteredCredential())
+                : Collections.emptySet();
     }
     
     /**
-     * 辅助方法：解析 Base64Url 字符串
+     * 辅助方法：通过凭证索引读取认证器（无锁）
      */
-    private ByteArray parseBase64Url(String base64Url) {
+    private Authenticator getAuthenticator(String credentialId) {
+        String userId = userIdsByCredentialId.get(credentialId);
+        if (userId == null) {
+            return null;
+        }
+        User user = usersById.get(userId);
+        return user != null ? user.getAuthenticator(credentialId) : null;
+    }
+    
+    /**
+     * 辅助方法：用户 ID 对应的写锁
+     */
+    private ReentrantLock lockFor(String userId) {
+        int h = userId.hashCode();
+        return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+    
+    /**
+     * 辅助方法：等待日志记录落盘
+     */
+    private <T> T awaitDurable(CompletableFuture<T> future) {
         try {
-            return ByteArray.fromBase64Url(base64Url);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse Base64Url: " + base64Url, e);
+            return future.join();
+        } catch (CompletionException e) {
+            throw new UncheckedIOException("写入持久化日志失败",
+                    e.getCause() instanceof IOException io ? io : new IOException(e.getCause()));
+        }
+    }
+    
+    /**
+     * 辅助方法：写出快照（逐个用户快照写出用户及其认证器，回放时认证器可以找到所属用户）
+     */
+    private void writeSnapshot(CredentialLog.RecordSink sink) throws IOException {
+        for (User user : usersById.values()) {
+            sink.write(RecordCodec.encodeUser(user));
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                sink.write(RecordCodec.encodeAuthenticator(authenticator));
+            }
+        }
+    }
+    
+    /**
+     * 日志回放：直接写入内存索引，不再追加日志
+     */
+    private class ReplayHandler implements RecordHandler {
+        
+        @Override
+        public void onUser(User user) {
+            putUser(user);
+        }
+        
+        @Override
+        public void onAuthenticator(Authenticator authenticator) {
+            putAuthenticator(authenticator);
+        }
+        
+        @Override
+        public void onSignCount(String credentialId, long signCount, long lastUsedAt, boolean signCountAnomaly) {
+            Authenticator authenticator = getAuthenticator(credentialId);
+            if (authenticator != null) {
+                putAuthenticator(authenticator.withSignCount(signCount, lastUsedAt, signCountAnomaly));
+            }
+        }
+    }
+    
+    /**
+     * 一批导入的结果
+     */
+    public static class BatchResult {
+        
+        private int importedUsers;
+        private int duplicateCredentials;
+        private final List<Authenticator> imported = new ArrayList<>();
+        private final List<String> rejected = new ArrayList<>();
+        
+        public int getImportedUsers() {
+            return importedUsers;
+        }
+        
+        /**
+         * 新导入的认证器
+         */
+        public List<Authenticator> getImported() {
+            return imported;
+        }
+        
+        public int getDuplicateCredentials() {
+            return duplicateCredentials;
+        }
+        
+        /**
+         * 被拒绝的记录及原因
+         */
+        public List<String> getRejected() {
+            return rejected;
+        }
+    }
+    
+    /**
+     * 导出回调
+     */
+    public interface SnapshotVisitor {
+        void visit(User user) throws IOException;
+    }
+    
+    /**
+     * 进行中的导出：导出游标之后的用户在被修改前保留原快照
+     */
+    private static class ExportView {
+        
+        // userId -> 导出开始时的快照（empty 表示导出开始时该用户不存在）
+        private final Map<String, Optional<User>> preImages = new ConcurrentHashMap<>();
+        
+        // 最后一个已导出的用户名（导出按用户名顺序进行）；在用户写锁内读写
+        private volatile String cursor;
+        
+        void preserve(String userId, String username, User previous) {
+            String exported = cursor;
+            if (exported == null || username.compareTo(exported) > 0) {
+                preImages.putIfAbsent(userId, Optional.ofNullable(previous));
+            }
         }
     }
 }
-
@@ -0,0 +1,28 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+
+/**
+ * 仪式无法继续时抛出的异常（挑战不存在、用户或认证器不存在等）
+ * 
+ * 继承 IllegalArgumentException，调用方原有的异常处理不变；
+ * outcome 标明失败类型，用于结果指标
+ */
+public class CeremonyException extends IllegalArgumentException {
+    
+    private final Outcome outcome;
+    
+    public CeremonyException(Outcome outcome, String message) {
+        super(message);
+        this.outcome = outcome;
+    }
+    
+    public CeremonyException(Outcome outcome, String message, Throwable cause) {
+        super(message, cause);
+        this.outcome = outcome;
+    }
+    
+    public Outcome getOutcome() {
+        return outcome;
+    }
+}
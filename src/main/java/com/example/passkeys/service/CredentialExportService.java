@@ -0,0 +1,176 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialArchive;
+import com.example.passkeys.persistence.RecordCodec;
+import com.example.passkeys.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 凭证导出和在线备份服务
+ * 
+ * 导出内容是导出开始时刻的一致视图（见 UserRepository.exportSnapshot），导出期间登录和注册不受影响。
+ * 两种格式：
+ * - 凭证归档（CredentialArchive，二进制，带版本号和记录数校验），可直接用导入接口恢复
+ * - NDJSON：与导入格式相同，每行一个凭证；没有凭证的用户单独占一行（不含凭证字段）
+ */
+@Service
+public class CredentialExportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(CredentialExportService.class);
+    
+    private static final DateTimeFormatter BACKUP_NAME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+    
+    private final UserRepository userRepository;
+    private final JsonFactory jsonFactory;
+    private final Path backupDir;
+    
+    public CredentialExportService(UserRepository userRepository, ObjectMapper objectMapper,
+                                   @Value("${passkeys.backup.dir:./backups}") String backupDir) {
+        this.userRepository = userRepository;
+        this.jsonFactory = objectMapper.getFactory();
+        this.backupDir = Paths.get(backupDir);
+    }
+    
+    /**
+     * 以凭证归档格式导出
+     * 
+     * @return 导出统计
+     */
+    public Map<String, Object> writeArchive(OutputStream out) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        CredentialArchive.writeHeader(out, startedAt);
+        long[] counts = new long[2];
+        userRepository.exportSnapshot(user -> {
+            RecordCodec.writeFrame(out, RecordCodec.encodeUser(user));
+            counts[0]++;
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                RecordCodec.writeFrame(out, RecordCodec.encodeAuthenticator(authenticator));
+                counts[1]++;
+            }
+        });
+        CredentialArchive.writeEnd(out, counts[0] + counts[1]);
+        out.flush();
+        return summary("archive", startedAt, counts);
+    }
+    
+    /**
+     * 以 NDJSON 格式导出
+     * 
+     * @return 导出统计
+     */
+    public Map<String, Object> writeNdjson(OutputStream out) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        long[] counts = new long[2];
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            userRepository.exportSnapshot(user -> {
+                counts[0]++;
+                if (user.getAuthenticators().isEmpty()) {
+                    writeLine(generator, user, null);
+                }
+                for (Authenticator authenticator : user.getAuthenticators()) {
+                    writeLine(generator, user, authenticator);
+                    counts[1]++;
+                }
+            });
+        }
+        out.flush();
+        return summary("ndjson", startedAt, counts);
+    }
+    
+    /**
+     * 在线备份：导出凭证归档到备份目录
+     * 
+     * 先写临时文件并 fsync，再原子改名，备份目录中只会出现完整的备份文件
+     * 
+     * @return 导出统计和备份文件路径
+     */
+    public Map<String, Object> backup() throws IOException {
+        Files.createDirectories(backupDir);
+        String name = "backup-" + BACKUP_NAME_FORMAT.format(Instant.now()) + ".pkar";
+        Path tmp = backupDir.resolve(name + ".tmp");
+        Path target = backupDir.resolve(name);
+        
+        Map<String, Object> result;
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             BufferedOutputStream out = new BufferedOutputStream(file, 256 * 1024)) {
+            result = writeArchive(out);
+            file.getChannel().force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        
+        result.put("path", target.toAbsolutePath().toString());
+        result.put("bytes", Files.size(target));
+        log.info("备份完成 - 文件: {}, 用户: {}, 凭证: {}", target, result.get("users"), result.get("credentials"));
+        return result;
+    }
+    
+    // ========== 辅助方法 ==========
+    
+    /**
+     * 写出一行（字段与导入格式一致）
+     */
+    private void writeLine(JsonGenerator generator, User user, Authenticator authenticator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("userHandle", user.getId());
+        generator.writeStringField("username", user.getUsername());
+        if (user.getDisplayName() != null) {
+            generator.writeStringField("displayName", user.getDisplayName());
+        }
+        generator.writeNumberField("userCreatedAt", user.getCreatedAt());
+        if (authenticator != null) {
+            generator.writeStringField("credentialId", authenticator.getCredentialId());
+            generator.writeStringField("publicKeyCose", authenticator.getPublicKey());
+            generator.writeNumberField("signCount", authenticator.getSignCount());
+            if (authenticator.getAaguid() != null) {
+                generator.writeStringField("aaguid", authenticator.getAaguid());
+            }
+            generator.writeNumberField("createdAt", authenticator.getCreatedAt());
+            generator.writeNumberField("lastUsedAt", authenticator.getLastUsedAt());
+            if (authenticator.getName() != null) {
+                generator.writeStringField("name", authenticator.getName());
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+    
+    private Map<String, Object> summary(String format, long startedAt, long[] counts) {
+        long elapsedMs = System.currentTimeMillis() - startedAt;
+        log.info("导出完成 - 格式: {}, 用户: {}, 凭证: {}, 耗时: {}ms", format, counts[0], counts[1], elapsedMs);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("format", format);
+        result.put("snapshotAt", startedAt);
+        result.put("users", counts[0]);
+        result.put("credentials", counts[1]);
+        result.put("elapsedMs", elapsedMs);
+        return result;
+    }
+}
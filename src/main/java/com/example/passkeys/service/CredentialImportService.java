@@ -0,0 +1,458 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialArchive;
+import com.example.passkeys.persistence.RecordHandler;
+import com.example.passkeys.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.COSEAlgorithmIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 凭证批量导入服务（从其他依赖方迁移）
+ * 
+ * 支持两种输入：
+ * - NDJSON：每行一个凭证，同时携带所属用户的信息
+ *   {"userHandle": "...", "username": "...", "displayName": "...", "credentialId": "...",
+ *    "publicKeyCose": "...", "signCount": 0, "aaguid": "...", "name": "..."}
+ *   二进制字段均为 Base64Url；同一用户的多个凭证重复携带相同的用户信息；
+ *   可选字段 createdAt / lastUsedAt / userCreatedAt；不含凭证字段的行只导入用户
+ * - 凭证归档（CredentialArchive 格式，即导出接口的输出）
+ * 
+ * 读取线程只负责切块，解码、校验和写入仓库在工作线程中并行进行；
+ * 在途的块数有上限，读取速度受写入速度约束，内存占用与文件大小无关。
+ * 
+ * 导入是幂等的：已存在的凭证会被跳过。文件中途损坏时已写入的批次会保留，修复后重新导入即可。
+ */
+@Service
+public class CredentialImportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(CredentialImportService.class);
+    
+    /**
+     * 结果中最多保留的错误信息条数
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+    
+    /**
+     * 进度日志间隔（毫秒）
+     */
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+    
+    /**
+     * 用户句柄的最大长度（WebAuthn 规范）
+     */
+    private static final int MAX_USER_HANDLE_LENGTH = 64;
+    
+    private final UserRepository userRepository;
+    private final JsonFactory jsonFactory;
+    private final int parallelism;
+    private final int batchSize;
+    
+    // 同一时间只允许一个导入任务
+    private final AtomicBoolean running = new AtomicBoolean();
+    
+    // 已出现的 AAGUID（去重）
+    private final Map<String, String> aaguids = new ConcurrentHashMap<>();
+    
+    public CredentialImportService(UserRepository userRepository, ObjectMapper objectMapper,
+                                   @Value("${passkeys.import.parallelism:0}") int parallelism,
+                                   @Value("${passkeys.import.batch-size:2000}") int batchSize) {
+        this.userRepository = userRepository;
+        this.jsonFactory = objectMapper.getFactory();
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * 导入 NDJSON
+     * 
+     * @return 导入结果统计
+     */
+    public Map<String, Object> importNdjson(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 256 * 1024);
+        return runImport("ndjson", job -> {
+            List<String> lines = new ArrayList<>(batchSize);
+            long lineNumber = 0;
+            long firstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() >= batchSize) {
+                    submitLines(job, lines, firstLine);
+                    lines = new ArrayList<>(batchSize);
+                    firstLine = lineNumber + 1;
+                }
+            }
+            if (!lines.isEmpty()) {
+                submitLines(job, lines, firstLine);
+            }
+        });
+    }
+    
+    /**
+     * 导入凭证归档
+     * 
+     * @return 导入结果统计
+     */
+    public Map<String, Object> importArchive(InputStream in) throws IOException {
+        return runImport("archive", job ->
+                CredentialArchive.readChunks(in, batchSize, chunk -> job.submit(() -> {
+                    ArchiveBatch batch = new ArchiveBatch();
+                    CredentialArchive.decode(chunk, batch);
+                    job.records.add(chunk.size());
+                    job.load(batch.users, batch.authenticators);
+                })));
+    }
+    
+    // ========== 导入流程 ==========
+    
+    private interface Reader {
+        void readAll(ImportJob job) throws IOException;
+    }
+    
+    private interface Task {
+        void run() throws IOException;
+    }
+    
+    private Map<String, Object> runImport(String format, Reader reader) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有导入任务正在进行");
+        }
+        ImportJob job = new ImportJob();
+        int credentialsBefore = userRepository.getCredentialCount();
+        log.info("开始导入凭证 - 格式: {}, 并行度: {}, 批大小: {}", format, parallelism, batchSize);
+        try {
+            reader.readAll(job);
+            job.awaitCompletion();
+        } finally {
+            job.executor.shutdownNow();
+            running.set(false);
+        }
+        
+        long elapsedMs = Math.max(1, (System.nanoTime() - job.startedAt) / 1_000_000);
+        long imported = job.importedCredentials.sum();
+        
+        // 一致性检查：每条导入的凭证都能通过验证路径查到，且仓库中的凭证数与导入数相符
+        // （导入期间如有新注册，凭证数会多于导入数）
+        int credentialsAfter = userRepository.getCredentialCount();
+        boolean consistent = job.verifyFailures.sum() == 0
+                && credentialsAfter - credentialsBefore >= imported;
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("format", format);
+        result.put("records", job.records.sum());
+        result.put("importedUsers", job.importedUsers.sum());
+        result.put("importedCredentials", imported);
+        result.put("duplicateCredentials", job.duplicateCredentials.sum());
+        result.put("rejected", job.rejected.sum());
+        result.put("errors", job.errors);
+        result.put("elapsedMs", elapsedMs);
+        result.put("credentialsPerSecond", imported * 1000 / elapsedMs);
+        result.put("credentialCount", credentialsAfter);
+        result.put("consistent", consistent);
+        
+        log.info("导入完成 - 记录: {}, 新用户: {}, 新凭证: {}, 重复: {}, 拒绝: {}, 耗时: {}ms, 一致性检查: {}",
+                job.records.sum(), job.importedUsers.sum(), imported, job.duplicateCredentials.sum(),
+                job.rejected.sum(), elapsedMs, consistent ? "通过" : "失败");
+        return result;
+    }
+    
+    private void submitLines(ImportJob job, List<String> lines, long firstLine) throws IOException {
+        job.submit(() -> {
+            Map<String, User> users = new LinkedHashMap<>();
+            List<Authenticator> authenticators = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    continue;
+                }
+                job.records.increment();
+                try {
+                    parseLine(line, users, authenticators);
+                } catch (IllegalArgumentException | IOException e) {
+                    job.reject("第 " + (firstLine + i) + " 行: " + e.getMessage());
+                }
+            }
+            job.load(users, authenticators);
+        });
+    }
+    
+    /**
+     * 解析并校验一行凭证
+     */
+    private void parseLine(String line, Map<String, User> users, List<Authenticator> authenticators)
+            throws IOException {
+        String userHandle = null;
+        String username = null;
+        String displayName = null;
+        String credentialId = null;
+        String publicKeyCose = null;
+        String aaguid = null;
+        String name = null;
+        long signCount = 0;
+        long createdAt = System.currentTimeMillis();
+        long lastUsedAt = 0;
+        long userCreatedAt = createdAt;
+        
+        try (JsonParser parser = jsonFactory.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("不是 JSON 对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "userHandle" -> userHandle = parser.getValueAsString();
+                    case "username" -> username = parser.getValueAsString();
+                    case "displayName" -> displayName = parser.getValueAsString();
+                    case "credentialId" -> credentialId = parser.getValueAsString();
+                    case "publicKeyCose" -> publicKeyCose = parser.getValueAsString();
+                    case "aaguid" -> aaguid = parser.getValueAsString();
+                    case "name" -> name = parser.getValueAsString();
+                    case "signCount" -> signCount = parser.getValueAsLong();
+                    case "createdAt" -> createdAt = parser.getValueAsLong(createdAt);
+                    case "lastUsedAt" -> lastUsedAt = parser.getValueAsLong(0);
+                    case "userCreatedAt" -> userCreatedAt = parser.getValueAsLong(userCreatedAt);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("缺少 username");
+        }
+        ByteArray handle = decode("userHandle", userHandle);
+        if (handle.size() == 0 || handle.size() > MAX_USER_HANDLE_LENGTH) {
+            throw new IllegalArgumentException("userHandle 长度非法: " + handle.size());
+        }
+        
+        // 同一用户的凭证共享已解码的用户句柄
+        String userId = handle.getBase64Url();
+        User user = users.get(userId);
+        if (user != null && !user.getUsername().equals(username)) {
+            throw new IllegalArgumentException("同一 userHandle 对应多个用户名: " + username);
+        }
+        if (credentialId == null && publicKeyCose == null) {
+            // 没有凭证的用户
+            if (user == null) {
+                users.put(userId, new User(userId, username, displayName, userCreatedAt));
+            }
+            return;
+        }
+        
+        ByteArray id = decode("credentialId", credentialId);
+        ByteArray publicKey = decode("publicKeyCose", publicKeyCose);
+        validatePublicKey(publicKey);
+        if (signCount < 0 || signCount > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("signCount 超出范围: " + signCount);
+        }
+        // AAGUID 只有几百种取值，共享同一个字符串实例
+        String aaguidBase64 = aaguid != null
+                ? aaguids.computeIfAbsent(decode("aaguid", aaguid).getBase64Url(), k -> k)
+                : null;
+        
+        if (user == null) {
+            user = new User(userId, username, displayName, userCreatedAt);
+            users.put(userId, user);
+        }
+        authenticators.add(new Authenticator(id, user.getUserHandle(), publicKey,
+                signCount, aaguidBase64, createdAt, lastUsedAt != 0 ? lastUsedAt : createdAt, name));
+    }
+    
+    private static ByteArray decode(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("缺少 " + field);
+        }
+        try {
+            return ByteArray.fromBase64Url(value);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(field + " 不是合法的 Base64Url");
+        }
+    }
+    
+    /**
+     * 校验 COSE 公钥可以解析且算法受支持
+     */
+    private static void validatePublicKey(ByteArray publicKey) {
+        Optional<COSEAlgorithmIdentifier> algorithm;
+        try {
+            algorithm = COSEAlgorithmIdentifier.fromPublicKey(publicKey);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("publicKeyCose 不是合法的 COSE 公钥");
+        }
+        if (algorithm.isEmpty()) {
+            throw new IllegalArgumentException("publicKeyCose 的算法不受支持");
+        }
+    }
+    
+    /**
+     * 归档块的解码结果
+     */
+    private static class ArchiveBatch implements RecordHandler {
+        
+        private final Map<String, User> users = new LinkedHashMap<>();
+        private final List<Authenticator> authenticators = new ArrayList<>();
+        
+        @Override
+        public void onUser(User user) {
+            users.put(user.getId(), user);
+        }
+        
+        @Override
+        public void onAuthenticator(Authenticator authenticator) {
+            authenticators.add(authenticator);
+        }
+        
+        @Override
+        public void onSignCount(String credentialId, long signCount, long lastUsedAt, boolean signCountAnomaly) {
+            // 归档中只有完整的认证器记录
+        }
+    }
+    
+    /**
+     * 一次导入任务的状态
+     */
+    private class ImportJob {
+        
+        private final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "credential-import");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        // 在途块数上限：读取线程在此阻塞，形成背压
+        private final Semaphore inFlight = new Semaphore(parallelism * 2);
+        private final AtomicInteger pending = new AtomicInteger();
+        
+        private final long startedAt = System.nanoTime();
+        private long lastProgressAt = startedAt;
+        
+        private final LongAdder records = new LongAdder();
+        private final LongAdder importedUsers = new LongAdder();
+        private final LongAdder importedCredentials = new LongAdder();
+        private final LongAdder duplicateCredentials = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder verifyFailures = new LongAdder();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        
+        private volatile IOException failure;
+        
+        /**
+         * 提交一块（在读取线程中调用）
+         */
+        void submit(Task task) throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("导入被中断");
+            }
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e.getMessage(), e);
+                } finally {
+                    pending.decrementAndGet();
+                    inFlight.release();
+                }
+            });
+            reportProgress();
+        }
+        
+        /**
+         * 写入仓库并回查（在工作线程中调用）
+         */
+        void load(Map<String, User> users, List<Authenticator> authenticators) {
+            UserRepository.BatchResult result = userRepository.importBatch(users, authenticators);
+            importedUsers.add(result.getImportedUsers());
+            importedCredentials.add(result.getImported().size());
+            duplicateCredentials.add(result.getDuplicateCredentials());
+            for (String message : result.getRejected()) {
+                reject(message);
+            }
+            // 回查：新导入的凭证必须能通过验证路径查到，且内容一致
+            for (Authenticator authenticator : result.getImported()) {
+                Optional<Authenticator> stored =
+                        userRepository.findAuthenticatorByCredentialId(authenticator.getCredentialId());
+                if (stored.isEmpty() || !stored.get().getUserId().equals(authenticator.getUserId())
+                        || !Objects.equals(stored.get().getPublicKey(), authenticator.getPublicKey())) {
+                    verifyFailures.increment();
+                    reject("导入后回查失败: " + authenticator.getCredentialId());
+                }
+            }
+        }
+        
+        void reject(String message) {
+            rejected.increment();
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(message);
+            }
+        }
+        
+        void awaitCompletion() throws IOException {
+            // 占满全部许可即表示所有块都已完成
+            int permits = parallelism * 2;
+            try {
+                inFlight.acquire(permits);
+                inFlight.release(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("导入被中断");
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        
+        private void reportProgress() {
+            long now = System.nanoTime();
+            if (now - lastProgressAt < PROGRESS_INTERVAL_MS * 1_000_000) {
+                return;
+            }
+            lastProgressAt = now;
+            long elapsedMs = Math.max(1, (now - startedAt) / 1_000_000);
+            long imported = importedCredentials.sum();
+            log.info("导入进度 - 记录: {}, 新凭证: {}, 拒绝: {}, 速率: {}/s, 在途批次: {}",
+                    records.sum(), imported, rejected.sum(), imported * 1000 / elapsedMs, pending.get());
+        }
+    }
+}
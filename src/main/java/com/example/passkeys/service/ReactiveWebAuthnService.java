@@ -0,0 +1,237 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.SecureRandomPool;
+import com.example.passkeys.dto.AuthenticationFinishResponse;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Ceremony;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import com.example.passkeys.metrics.PasskeysMetrics.Phase;
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.repository.ReactiveUserRepository;
+import com.example.passkeys.store.ReactiveChallengeStore;
+import com.example.passkeys.store.SealedAssertionTokens;
+import com.yubico.webauthn.*;
+import com.yubico.webauthn.data.*;
+import com.yubico.webauthn.exception.AssertionFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.AUTHENTICATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.REGISTRATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.CHALLENGE_STORE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.REPOSITORY_READ;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.REPOSITORY_WRITE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.VERIFY;
+import static com.example.passkeys.service.WebAuthnService.CHALLENGE_TTL_MS;
+
+/**
+ * WebAuthn 服务的响应式版本（供 WebFlux 接口使用）
+ *
+ * 仪式流程、挑战存储和结果与 WebAuthnService 相同，两套接口可以混用
+ * （例如在 Servlet 接口 start、在响应式接口 finish）。
+ * 挑战存储和仓库写入不阻塞事件循环；签名校验是 CPU 密集操作，
+ * 放到固定线程数的校验调度器上执行，事件循环只负责 I/O。
+ */
+public class ReactiveWebAuthnService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveWebAuthnService.class);
+
+    private final RelyingParty relyingParty;
+    private final ReactiveUserRepository userRepository;
+    private final ReactiveChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests;
+    private final ReactiveChallengeStore<AssertionRequest> assertionRequests;
+    private final SealedAssertionTokens sealedTokens;
+    private final PasskeysMetrics metrics;
+    private final Scheduler verificationScheduler;
+    private final SecureRandomPool random;
+
+    /**
+     * @param sealedTokens 无状态认证令牌（未启用时为 null）
+     * @param verificationScheduler 执行签名校验的调度器（线程数决定并发校验数）
+     * @param random 挑战和 ID 的随机数源
+     */
+    public ReactiveWebAuthnService(RelyingParty relyingParty, ReactiveUserRepository userRepository,
+                                   ReactiveChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests,
+                                   ReactiveChallengeStore<AssertionRequest> assertionRequests,
+                                   SealedAssertionTokens sealedTokens,
+                                   PasskeysMetrics metrics,
+                                   Scheduler verificationScheduler,
+                                   SecureRandomPool random) {
+        this.relyingParty = relyingParty;
+        this.userRepository = userRepository;
+        this.registrationRequests = registrationRequests;
+        this.assertionRequests = assertionRequests;
+        this.sealedTokens = sealedTokens;
+        this.metrics = metrics;
+        this.verificationScheduler = verificationScheduler;
+        this.random = random;
+    }
+
+    /**
+     * 开始注册流程
+     *
+     * @see WebAuthnService#startRegistration(String, String)
+     */
+    public Mono<PublicKeyCredentialCreationOptions> startRegistration(String username, String displayName) {
+        return timed(userRepository.findByUsername(username), REGISTRATION, REPOSITORY_READ)
+                .doOnNext(user -> log.info("为现有用户添加新通行密钥: {}", username))
+                .switchIfEmpty(Mono.defer(() -> {
+                    // 创建新用户（同名用户被并发创建时继续为先创建的用户注册）
+                    User user = new User(WebAuthnService.randomId(random, 32), username, displayName);
+                    return timed(userRepository.createUser(user), REGISTRATION, REPOSITORY_WRITE)
+                            .doOnNext(created -> log.info("创建新用户 - ID: {}, 用户名: {}",
+                                    created.getId(), username));
+                }))
+                .flatMap(user -> {
+                    PublicKeyCredentialCreationOptions options = WebAuthnService.creationOptions(relyingParty,
+                            WebAuthnService.registrationOptions(user), WebAuthnService.newChallenge(random));
+                    return timed(registrationRequests.put(username, options, CHALLENGE_TTL_MS),
+                            REGISTRATION, CHALLENGE_STORE)
+                            .thenReturn(options);
+                });
+    }
+
+    /**
+     * 完成注册流程
+     *
+     * @return 注册结果；校验失败时以 RegistrationFailedException 结束
+     * @see WebAuthnService#finishRegistration(PublicKeyCredential, String)
+     */
+    public Mono<RegistrationResult> finishRegistration(
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+            String username) {
+
+        log.info("完成注册流程 - 用户名: {}, 凭证ID: {}",
+                username, credential.getId().getBase64Url());
+
+        return timed(userRepository.findByUsername(username), REGISTRATION, REPOSITORY_READ)
+                .switchIfEmpty(Mono.error(() -> new CeremonyException(Outcome.UNKNOWN_USER, "用户不存在: " + username)))
+                .flatMap(user -> timed(registrationRequests.consume(username), REGISTRATION, CHALLENGE_STORE)
+                        .switchIfEmpty(Mono.error(() -> {
+                            log.error("找不到用户 {} 的注册请求", username);
+                            return new CeremonyException(Outcome.CHALLENGE_NOT_FOUND,
+                                    "找不到对应的注册请求，请重新开始注册流程");
+                        }))
+                        .flatMap(request -> verify(REGISTRATION, () -> relyingParty.finishRegistration(
+                                FinishRegistrationOptions.builder()
+                                        .request(request)
+                                        .response(credential)
+                                        .build())))
+                        .flatMap(result -> {
+                            Authenticator authenticator = WebAuthnService.newAuthenticator(user, credential, result);
+                            return timed(userRepository.saveAuthenticator(authenticator), REGISTRATION, REPOSITORY_WRITE)
+                                    .doOnSuccess(ignored -> log.info("注册成功 - 用户: {}, 凭证ID: {}, 签名计数: {}",
+                                            username, authenticator.getCredentialId(), authenticator.getSignCount()))
+                                    .thenReturn(result);
+                        }));
+    }
+
+    /**
+     * 开始认证流程
+     *
+     * @return 包含 requestId 和认证请求的 Map
+     * @see WebAuthnService#startAuthentication(String)
+     */
+    public Mono<Map<String, Object>> startAuthentication(String username) {
+        return Mono.defer(() -> {
+            AssertionRequest request = WebAuthnService.assertionRequest(relyingParty,
+                    WebAuthnService.assertionOptions(username), WebAuthnService.newChallenge(random));
+
+            Mono<String> requestId;
+            if (sealedTokens != null) {
+                requestId = Mono.just(sealedTokens.seal(request, CHALLENGE_TTL_MS));
+            } else {
+                String id = WebAuthnService.randomId(random, 16);
+                requestId = assertionRequests.put(id, request, CHALLENGE_TTL_MS).thenReturn(id);
+            }
+            return timed(requestId, AUTHENTICATION, CHALLENGE_STORE)
+                    .map(id -> {
+                        Map<String, Object> result = new HashMap<>();
+                        result.put("requestId", id);
+                        result.put("request", request);
+                        return result;
+                    });
+        });
+    }
+
+    /**
+     * 完成认证流程
+     *
+     * @return 认证结果和用户信息；校验失败时以 AssertionFailedException 结束
+     * @see WebAuthnService#finishAuthentication(PublicKeyCredential, String)
+     */
+    public Mono<AuthenticationFinishResponse> finishAuthentication(
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential,
+            String requestId) {
+
+        String credentialId = credential.getId().getBase64Url();
+        Mono<AssertionRequest> request = sealedTokens != null
+                ? Mono.fromFuture(() -> sealedTokens.openAsync(requestId)).flatMap(Mono::justOrEmpty)
+                : assertionRequests.consume(requestId);
+
+        return timed(request, AUTHENTICATION, CHALLENGE_STORE)
+                .switchIfEmpty(Mono.error(() -> {
+                    log.error("找不到请求ID {} 的认证请求", requestId);
+                    return new CeremonyException(Outcome.CHALLENGE_NOT_FOUND, "找不到对应的认证请求，请重新开始认证流程");
+                }))
+                // 校验过程中按凭证 ID 查询公钥也计入此阶段
+                .flatMap(found -> verify(AUTHENTICATION, () -> relyingParty.finishAssertion(
+                        FinishAssertionOptions.builder()
+                                .request(found)
+                                .response(credential)
+                                .build())))
+                .flatMap(result -> {
+                    if (!result.isSuccess()) {
+                        return Mono.error(new AssertionFailedException("认证失败"));
+                    }
+                    return timed(userRepository.findAuthenticatorByCredentialId(credentialId), AUTHENTICATION, REPOSITORY_READ)
+                            .switchIfEmpty(Mono.error(() -> new CeremonyException(Outcome.UNKNOWN_CREDENTIAL, "认证器不存在")))
+                            .flatMap(authenticator -> timed(
+                                    userRepository.updateSignCount(credentialId, result.getSignatureCount()),
+                                    AUTHENTICATION, REPOSITORY_WRITE)
+                                    .flatMap(increasing -> {
+                                        if (!increasing) {
+                                            metrics.recordSignCountAnomaly();
+                                            log.warn("签名计数未递增，可能存在克隆的认证器 - 凭证ID: {}, 当前计数: {}, 本次计数: {}",
+                                                    credentialId, authenticator.getSignCount(), result.getSignatureCount());
+                                        }
+                                        return timed(userRepository.findById(authenticator.getUserId()),
+                                                AUTHENTICATION, REPOSITORY_READ);
+                                    }))
+                            .switchIfEmpty(Mono.error(() -> new CeremonyException(Outcome.UNKNOWN_USER, "用户不存在")))
+                            .map(user -> {
+                                log.info("认证成功 - 用户: {}, 凭证ID: {}, 新签名计数: {}",
+                                        user.getUsername(), credentialId, result.getSignatureCount());
+                                return WebAuthnService.authenticationResponse(user, credentialId);
+                            });
+                });
+    }
+
+    // ========== 辅助方法 ==========
+
+    /**
+     * 在校验调度器上执行签名校验
+     *
+     * 之后的步骤（内存中的仓库操作、挑战存储的异步命令）直接在校验线程上继续，不再切换线程
+     */
+    private <T> Mono<T> verify(Ceremony ceremony, Callable<T> verification) {
+        return timed(Mono.fromCallable(verification).subscribeOn(verificationScheduler), ceremony, VERIFY);
+    }
+
+    /**
+     * 记录从订阅到结束（成功、失败或取消）的阶段耗时
+     */
+    private <T> Mono<T> timed(Mono<T> source, Ceremony ceremony, Phase phase) {
+        return Mono.defer(() -> {
+            long phaseStart = System.nanoTime();
+            return source.doFinally(signal -> metrics.recordPhase(ceremony, phase, phaseStart));
+        });
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Ceremony;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.VERIFY;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.VERIFY_QUEUE;
+
+/**
+ * 签名校验专用线程池（Servlet 接口的 finishRegistration / finishAssertion 在这里执行）
+ * 
+ * 线程数默认等于 CPU 核数，队列有界：校验是 CPU 密集操作，线程再多也不会更快，
+ * 只会让 HTTP 线程和其他请求抢不到 CPU。队列满时立即失败（OVERLOADED），
+ * 不让请求无限排队；排队时间和执行时间分别计入 verify_queue / verify 阶段，
+ * CPU 饱和时表现为 verify_queue 上升而不是所有阶段一起变慢。
+ * 
+ * 每个任务带一个截止时刻（客户端的超时）：到期时 Future 立即以 TimeoutException 失败，
+ * 尚未开始执行的任务在出队时直接丢弃，不再为已经放弃等待的客户端做校验。
+ * 已经开始的校验不能中断，会执行完，但结果不再返回给客户端。
+ */
+@Component
+public class VerificationExecutor implements AutoCloseable {
+    
+    private static final Logger log = LoggerFactory.getLogger(VerificationExecutor.class);
+    
+    private final ThreadPoolExecutor executor;
+    private final PasskeysMetrics metrics;
+    private final long timeoutMillis;
+    
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    
+    public VerificationExecutor(
+            PasskeysMetrics metrics,
+            @Value("${passkeys.verification.threads:0}") int threads,
+            @Value("${passkeys.verification.queue-capacity:64}") int queueCapacity,
+            @Value("${passkeys.verification.timeout-millis:10000}") long timeoutMillis) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "passkeys-verification-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.metrics = metrics;
+        this.timeoutMillis = timeoutMillis;
+        log.info("签名校验线程池 - 线程数: {}，队列容量: {}，默认期限: {}ms", poolSize, queueCapacity, timeoutMillis);
+    }
+    
+    /**
+     * 服务器端的最长等待时间（客户端没有给出更短的超时时使用）
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    
+    /**
+     * 在校验线程池上执行签名校验
+     * 
+     * @param deadlineNanos 截止时刻（System.nanoTime()），到期后 Future 以 TimeoutException 失败
+     * @return 校验结果；队列已满时以 CeremonyException（OVERLOADED）失败
+     */
+    public <T> CompletableFuture<T> submit(Ceremony ceremony, long deadlineNanos, Callable<T> verification) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        long remaining = deadlineNanos - queuedAt;
+        if (remaining <= 0) {
+            expired.increment();
+            future.completeExceptionally(new TimeoutException("请求已超过期限"));
+            return future;
+        }
+        try {
+            executor.execute(() -> run(ceremony, queuedAt, future, verification));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(new CeremonyException(Outcome.OVERLOADED, "签名校验队列已满"));
+            return future;
+        }
+        return future.orTimeout(remaining, TimeUnit.NANOSECONDS);
+    }
+    
+    private <T> void run(Ceremony ceremony, long queuedAt, CompletableFuture<T> future, Callable<T> verification) {
+        long start = System.nanoTime();
+        metrics.recordPhase(ceremony, VERIFY_QUEUE, queuedAt);
+        if (future.isDone()) {
+            // 排队期间已经超过期限
+            expired.increment();
+            return;
+        }
+        // 先记录耗时再完成 Future：后续阶段（仓库更新、写响应）会在 complete 中同步执行
+        T result;
+        try {
+            result = verification.call();
+        } catch (Throwable e) {
+            metrics.recordPhase(ceremony, VERIFY, start);
+            future.completeExceptionally(e);
+            return;
+        }
+        metrics.recordPhase(ceremony, VERIFY, start);
+        future.complete(result);
+    }
+    
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+    
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+    
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+    
+    /**
+     * 队列已满被拒绝的校验数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    /**
+     * 超过期限被丢弃（未执行）的校验数
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+    
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -1,20 +1,35 @@
 package com.example.passkeys.service;
 
+import com.example.passkeys.SecureRandomPool;
+import com.example.passkeys.dto.AuthenticationFinishResponse;
+import com.example.passkeys.metrics.PasskeysMetrics;
+import com.example.passkeys.metrics.PasskeysMetrics.Outcome;
 import com.example.passkeys.model.Authenticator;
 import com.example.passkeys.model.User;
 import com.example.passkeys.repository.UserRepository;
+import com.example.passkeys.store.ChallengeStore;
+import com.example.passkeys.store.SealedAssertionTokens;
 import com.yubico.webauthn.*;
 import com.yubico.webauthn.data.*;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.AUTHENTICATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Ceremony.REGISTRATION;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.CHALLENGE_STORE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.REPOSITORY_READ;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.REPOSITORY_WRITE;
+import static com.example.passkeys.metrics.PasskeysMetrics.Phase.VERIFY;
 
 /**
  * WebAuthn 服务类
@@ -27,25 +42,67 @@ public class WebAuthnService {
     
     private static final Logger log = LoggerFactory.getLogger(WebAuthnService.class);
     
+    /**
+     * 客户端仪式超时时间（毫秒）
+     */
+    static final long CEREMONY_TIMEOUT_MS = 60000;
+    
+    /**
+     * 挑战在服务器端的存活时间：客户端超时 + 网络往返余量
+     */
+    static final long CHALLENGE_TTL_MS = CEREMONY_TIMEOUT_MS + 10000;
+    
+    /**
+     * 挑战长度（字节）
+     */
+    static final int CHALLENGE_LENGTH = 32;
+    
+    /**
+     * 用户列表每页的默认数量
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    
+    /**
+     * 用户列表每页的最大数量
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    
     private final RelyingParty relyingParty;
     private final UserRepository userRepository;
-    private final SecureRandom random = new SecureRandom();
+    private final SecureRandomPool random;
+    
+    // 临时存储注册请求，过期自动清理（默认内存，可配置为 Redis 共享存储）
+    // Key: username, Value: 注册选项
+    private final ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests;
+    
+    // 临时存储认证请求，过期自动清理（默认内存，可配置为 Redis 共享存储）
+    // Key: requestId, Value: 认证请求
+    private final ChallengeStore<AssertionRequest> assertionRequests;
+    
+    // 无状态认证令牌（启用时认证请求不写入 assertionRequests）
+    private final SealedAssertionTokens sealedTokens;
+    
+    private final PasskeysMetrics metrics;
+    
+    // 异步完成注册 / 认证时执行签名校验
+    private final VerificationExecutor verificationExecutor;
     
-    public WebAuthnService(RelyingParty relyingParty, UserRepository userRepository) {
+    public WebAuthnService(RelyingParty relyingParty, UserRepository userRepository,
+                           ChallengeStore<PublicKeyCredentialCreationOptions> registrationRequests,
+                           ChallengeStore<AssertionRequest> assertionRequests,
+                           ObjectProvider<SealedAssertionTokens> sealedTokens,
+                           PasskeysMetrics metrics, SecureRandomPool random,
+                           VerificationExecutor verificationExecutor) {
         this.relyingParty = relyingParty;
         this.userRepository = userRepository;
+        this.random = random;
+        this.registrationRequests = registrationRequests;
+        this.assertionRequests = assertionRequests;
+        this.sealedTokens = sealedTokens.getIfAvailable();
+        this.metrics = metrics;
+        this.verificationExecutor = verificationExecutor;
     }
     
-    // 临时存储注册请求（实际生产环境应使用 Redis 等）
-    // Key: username, Value: 注册选项
-    private final Map<String, PublicKeyCredentialCreationOptions> registrationRequests = 
-            new ConcurrentHashMap<>();
-    
-    // 临时存储认证请求（实际生产环境应使用 Redis 等）
-    // Key: username 或 requestId, Value: 认证请求
-    private final Map<String, AssertionRequest> assertionRequests = 
-            new ConcurrentHashMap<>();
-    
     /**
      * 开始注册流程
      * 
@@ -57,7 +114,9 @@ public class WebAuthnService {
         log.info("开始注册流程 - 用户名: {}", username);
         
         // 检查用户是否已存在
+        long phaseStart = System.nanoTime();
         Optional<User> existingUser = userRepository.findByUsername(username);
+        metrics.recordPhase(REGISTRATION, REPOSITORY_READ, phaseStart);
         User user;
         
         if (existingUser.isPresent()) {
@@ -65,31 +124,21 @@ public class WebAuthnService {
             user = existingUser.get();
             log.info("为现有用户添加新通行密钥: {}", username);
         } else {
-            // 创建新用户
+            // 创建新用户（同名用户被并发创建时继续为先创建的用户注册）
             String userId = generateUserId();
-            user = new User(userId, username, displayName);
-            userRepository.saveUser(user);
-            log.info("创建新用户 - ID: {}, 用户名: {}", userId, username);
+            phaseStart = System.nanoTime();
+            user = userRepository.createUser(new User(userId, username, displayName));
+            metrics.recordPhase(REGISTRATION, REPOSITORY_WRITE, phaseStart);
+            log.info("创建新用户 - ID: {}, 用户名: {}", user.getId(), username);
         }
         
-        // 构建注册选项
-        StartRegistrationOptions registrationOptions = StartRegistrationOptions.builder()
-                .user(user.toUserIdentity())
-                .timeout(60000)
-                .authenticatorSelection(AuthenticatorSelectionCriteria.builder()
-                        // 要求使用平台认证器（如 Android 生物识别）
-                        .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
-                        // 要求用户验证
-                        .userVerification(UserVerificationRequirement.REQUIRED)
-                        // 要求可发现的凭证（Discoverable Credential / Resident Key）
-                        .residentKey(ResidentKeyRequirement.REQUIRED)
-                        .build())
-                .build();
-        
-        PublicKeyCredentialCreationOptions options = relyingParty.startRegistration(registrationOptions);
+        PublicKeyCredentialCreationOptions options =
+                creationOptions(relyingParty, registrationOptions(user), newChallenge(random));
         
         // 保存注册请求用于后续验证（使用 username 作为 key）
-        registrationRequests.put(username, options);
+        phaseStart = System.nanoTime();
+        registrationRequests.put(username, options, CHALLENGE_TTL_MS);
+        metrics.recordPhase(REGISTRATION, CHALLENGE_STORE, phaseStart);
         
         log.info("生成注册选项 - 用户名: {}, Challenge: {}", 
                 username, options.getChallenge().getBase64Url());
@@ -108,34 +157,24 @@ public class WebAuthnService {
             PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
             String username) throws RegistrationFailedException, IOException {
         
-        log.info("完成注册流程 - 用户名: {}, 凭证ID: {}", 
-                username, credential.getId().getBase64Url());
-        
-        // 查找用户
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在: " + username));
-        
-        // 查找对应的注册请求（传递 username 参数）
-        PublicKeyCredentialCreationOptions requestOptions = findRegistrationRequest(credential, username);
+        User user = findRegistrationUser(credential, username);
+        FinishRegistrationOptions options = finishRegistrationOptions(credential, username);
         
         // 验证并完成注册
-        FinishRegistrationOptions options = FinishRegistrationOptions.builder()
-                .request(requestOptions)
-                .response(credential)
-                .build();
-        
-        RegistrationResult result = relyingParty.finishRegistration(options);
+        long phaseStart = System.nanoTime();
+        RegistrationResult result;
+        try {
+            result = relyingParty.finishRegistration(options);
+        } finally {
+            metrics.recordPhase(REGISTRATION, VERIFY, phaseStart);
+        }
         
         // 保存认证器信息
-        Authenticator authenticator = Authenticator.fromRegistrationResponse(
-                user.getId(),
-                credential.getResponse(),
-                credential.getId(),
-                result.getSignatureCount()
-        );
-        authenticator.setName("Android 设备"); // 可以根据需要自定义
+        Authenticator authenticator = newAuthenticator(user, credential, result);
         
+        phaseStart = System.nanoTime();
         userRepository.saveAuthenticator(authenticator);
+        metrics.recordPhase(REGISTRATION, REPOSITORY_WRITE, phaseStart);
         
         log.info("注册成功 - 用户: {}, 凭证ID: {}, 签名计数: {}", 
                 username, authenticator.getCredentialId(), authenticator.getSignCount());
@@ -143,6 +182,40 @@ public class WebAuthnService {
         return result;
     }
     
+    /**
+     * 完成注册流程，签名校验在 VerificationExecutor 上执行，不占用调用线程
+     * 
+     * 用户和挑战的查询在调用线程上完成；校验之后保存认证器，新凭证落盘后 Future 完成。
+     * 所有失败（包括查询失败）都通过 Future 返回。
+     * 
+     * @param deadlineNanos 截止时刻（System.nanoTime()），超过时以 TimeoutException 失败
+     */
+    public CompletableFuture<RegistrationResult> finishRegistrationAsync(
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+            String username, long deadlineNanos) {
+        
+        User user;
+        FinishRegistrationOptions options;
+        try {
+            user = findRegistrationUser(credential, username);
+            options = finishRegistrationOptions(credential, username);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        return verificationExecutor.submit(REGISTRATION, deadlineNanos, () -> relyingParty.finishRegistration(options))
+                .thenCompose(result -> {
+                    Authenticator authenticator = newAuthenticator(user, credential, result);
+                    long phaseStart = System.nanoTime();
+                    return userRepository.saveAuthenticatorAsync(authenticator).thenApply(durable -> {
+                        metrics.recordPhase(REGISTRATION, REPOSITORY_WRITE, phaseStart);
+                        log.info("注册成功 - 用户: {}, 凭证ID: {}, 签名计数: {}", 
+                                username, authenticator.getCredentialId(), authenticator.getSignCount());
+                        return result;
+                    });
+                });
+    }
+    
     /**
      * 开始认证流程
      * 
@@ -152,22 +225,12 @@ public class WebAuthnService {
     public Map<String, Object> startAuthentication(String username) {
         log.info("开始认证流程 - 用户名: {}", username != null ? username : "可发现凭证");
         
-        StartAssertionOptions.StartAssertionOptionsBuilder optionsBuilder = 
-                StartAssertionOptions.builder();
-        
-        if (username != null && !username.isEmpty()) {
-            // 指定用户名的认证
-            optionsBuilder.username(username);
-        }
-        
-        // 要求用户验证
-        optionsBuilder.userVerification(UserVerificationRequirement.REQUIRED);
-        optionsBuilder.timeout(60000);
-        AssertionRequest request = relyingParty.startAssertion(optionsBuilder.build());
+        AssertionRequest request = assertionRequest(relyingParty, assertionOptions(username), newChallenge(random));
         
         // 保存认证请求用于后续验证
-        String requestId = generateRequestId();
-        assertionRequests.put(requestId, request);
+        long phaseStart = System.nanoTime();
+        String requestId = saveAssertionRequest(request);
+        metrics.recordPhase(AUTHENTICATION, CHALLENGE_STORE, phaseStart);
         
         log.info("生成认证选项 - 请求ID: {}, Challenge: {}", 
                 requestId, request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url());
@@ -187,117 +250,409 @@ public class WebAuthnService {
      * @param requestId 认证请求ID
      * @return 认证结果和用户信息
      */
-    public Map<String, Object> finishAuthentication(
+    public AuthenticationFinishResponse finishAuthentication(
             PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential,
             String requestId) 
             throws AssertionFailedException {
         
         //log.info("完成认证流程 - 凭证ID: {}, 请求ID: {}", credential.getId().getBase64Url(), requestId);
         
-        // 查找对应的认证请求
-        AssertionRequest request = findAssertionRequest(requestId);
+        FinishAssertionOptions options = finishAssertionOptions(credential, requestId);
         
-        // 验证并完成认证
-        FinishAssertionOptions options = FinishAssertionOptions.builder()
-                .request(request)
-                .response(credential)
-                .build();
+        // 校验过程中按凭证 ID 查询公钥也计入此阶段
+        long phaseStart = System.nanoTime();
+        AssertionResult result;
+        try {
+            result = verifyAssertion(options);
+        } finally {
+            metrics.recordPhase(AUTHENTICATION, VERIFY, phaseStart);
+        }
         
-        AssertionResult result = relyingParty.finishAssertion(options);
+        return completeAuthentication(credential, result);
+    }
+    
+    /**
+     * 完成认证流程，签名校验在 VerificationExecutor 上执行，不占用调用线程
+     * 
+     * 挑战的查询在调用线程上完成，校验之后的签名计数更新（内存 + 延迟写入）在校验线程上完成。
+     * 所有失败（包括挑战不存在）都通过 Future 返回。
+     * 
+     * @param deadlineNanos 截止时刻（System.nanoTime()），超过时以 TimeoutException 失败
+     */
+    public CompletableFuture<AuthenticationFinishResponse> finishAuthenticationAsync(
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential,
+            String requestId, long deadlineNanos) {
         
-        if (!result.isSuccess()) {
-            throw new AssertionFailedException("认证失败");
+        FinishAssertionOptions options;
+        try {
+            options = finishAssertionOptions(credential, requestId);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
         
+        return verificationExecutor.submit(AUTHENTICATION, deadlineNanos, () -> verifyAssertion(options))
+                .thenApply(result -> completeAuthentication(credential, result));
+    }
+    
+    /**
+     * 签名校验通过后更新签名计数，返回认证结果和用户信息
+     */
+    private AuthenticationFinishResponse completeAuthentication(
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential,
+            AssertionResult result) {
+        
         // 更新认证器的签名计数器
         String credentialId = credential.getId().getBase64Url();
-        Authenticator authenticator = userRepository.findAuthenticatorByCredentialId(credentialId)
-                .orElseThrow(() -> new IllegalArgumentException("认证器不存在"));
-        
-        authenticator.updateSignCount(result.getSignatureCount());
-        userRepository.saveAuthenticator(authenticator);
+        long phaseStart = System.nanoTime();
+        Optional<Authenticator> found = userRepository.findAuthenticatorByCredentialId(credentialId);
+        metrics.recordPhase(AUTHENTICATION, REPOSITORY_READ, phaseStart);
+        Authenticator authenticator = found
+                .orElseThrow(() -> new CeremonyException(Outcome.UNKNOWN_CREDENTIAL, "认证器不存在"));
+        
+        phaseStart = System.nanoTime();
+        boolean increasing = userRepository.updateSignCount(credentialId, result.getSignatureCount());
+        metrics.recordPhase(AUTHENTICATION, REPOSITORY_WRITE, phaseStart);
+        if (!increasing) {
+            metrics.recordSignCountAnomaly();
+            log.warn("签名计数未递增，可能存在克隆的认证器 - 凭证ID: {}, 当前计数: {}, 本次计数: {}",
+                    credentialId, authenticator.getSignCount(), result.getSignatureCount());
+        }
         
         // 获取用户信息
-        User user = userRepository.findById(authenticator.getUserId())
-                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
+        phaseStart = System.nanoTime();
+        Optional<User> owner = userRepository.findById(authenticator.getUserId());
+        metrics.recordPhase(AUTHENTICATION, REPOSITORY_READ, phaseStart);
+        User user = owner
+                .orElseThrow(() -> new CeremonyException(Outcome.UNKNOWN_USER, "用户不存在"));
         
         log.info("认证成功 - 用户: {}, 凭证ID: {}, 新签名计数: {}", 
                 user.getUsername(), credentialId, result.getSignatureCount());
         
         // 返回认证结果
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("username", user.getUsername());
-        response.put("userId", user.getId());
-        response.put("displayName", user.getDisplayName());
-        response.put("credentialId", credentialId);
-        
-        return response;
+        return authenticationResponse(user, credentialId);
     }
     
     /**
-     * 获取用户列表
+     * 分页获取用户列表（按用户名排序）
+     * 
+     * @param cursor 上一页返回的 nextCursor，null 表示第一页
+     * @param limit 每页数量，超出范围时截断到 [1, MAX_PAGE_SIZE]
+     * @return users: 本页用户；nextCursor: 下一页游标（没有更多数据时不返回）
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    public Map<String, Object> getUserPage(String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        String afterUsername = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor) : null;
+        
+        // 多取一条，用于判断是否还有下一页
+        List<User> users = userRepository.findUsersAfter(afterUsername, pageSize + 1);
+        boolean hasMore = users.size() > pageSize;
+        if (hasMore) {
+            users = users.subList(0, pageSize);
+        }
+        
+        List<Map<String, Object>> userList = new ArrayList<>(users.size());
+        for (User user : users) {
+            userList.add(toUserInfo(user));
+        }
+        
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("users", userList);
+        page.put("count", userList.size());
+        if (hasMore) {
+            page.put("nextCursor", encodeCursor(users.get(users.size() - 1).getUsername()));
+        }
+        return page;
+    }
+    
+    /**
+     * 获取全部用户（按用户名排序）
      */
     public List<Map<String, Object>> getUserList() {
-        List<Map<String, Object>> userList = new ArrayList<>();
-        
-        for (User user : userRepository.findAllUsers()) {
-            Map<String, Object> userInfo = new HashMap<>();
-            userInfo.put("username", user.getUsername());
-            userInfo.put("displayName", user.getDisplayName());
-            userInfo.put("userId", user.getId());
-            userInfo.put("authenticatorCount", user.getAuthenticators().size());
-            userInfo.put("createdAt", user.getCreatedAt());
-            userList.add(userInfo);
+        return streamUsers().map(this::toUserInfo).toList();
+    }
+    
+    /**
+     * 按用户名顺序遍历所有用户（不复制用户列表，用于流式输出）
+     */
+    public Stream<User> streamUsers() {
+        return userRepository.streamUsers();
+    }
+    
+    /**
+     * 用户列表中单个用户的信息
+     */
+    public Map<String, Object> toUserInfo(User user) {
+        Map<String, Object> userInfo = new LinkedHashMap<>();
+        userInfo.put("username", user.getUsername());
+        userInfo.put("displayName", user.getDisplayName());
+        userInfo.put("userId", user.getId());
+        userInfo.put("authenticatorCount", user.getAuthenticators().size());
+        userInfo.put("createdAt", user.getCreatedAt());
+        return userInfo;
+    }
+    
+    // ========== 辅助方法（包级可见的静态方法与 ReactiveWebAuthnService 共用） ==========
+    
+    /**
+     * 注册选项：平台认证器、要求用户验证、可发现凭证
+     */
+    static StartRegistrationOptions registrationOptions(User user) {
+        return StartRegistrationOptions.builder()
+                .user(user.toUserIdentity())
+                .timeout(CEREMONY_TIMEOUT_MS)
+                .authenticatorSelection(AuthenticatorSelectionCriteria.builder()
+                        // 要求使用平台认证器（如 Android 生物识别）
+                        .authenticatorAttachment(AuthenticatorAttachment.PLATFORM)
+                        // 要求用户验证
+                        .userVerification(UserVerificationRequirement.REQUIRED)
+                        // 要求可发现的凭证（Discoverable Credential / Resident Key）
+                        .residentKey(ResidentKeyRequirement.REQUIRED)
+                        .build())
+                .build();
+    }
+    
+    /**
+     * 认证选项
+     * 
+     * @param username 用户名（为空时使用可发现凭证）
+     */
+    static StartAssertionOptions assertionOptions(String username) {
+        StartAssertionOptions.StartAssertionOptionsBuilder optionsBuilder = 
+                StartAssertionOptions.builder();
+        
+        if (username != null && !username.isEmpty()) {
+            // 指定用户名的认证
+            optionsBuilder.username(username);
         }
         
-        return userList;
+        // 要求用户验证
+        optionsBuilder.userVerification(UserVerificationRequirement.REQUIRED);
+        optionsBuilder.timeout(CEREMONY_TIMEOUT_MS);
+        return optionsBuilder.build();
+    }
+    
+    /**
+     * 注册校验通过后要保存的认证器
+     */
+    static Authenticator newAuthenticator(
+            User user,
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+            RegistrationResult result) {
+        Authenticator authenticator = Authenticator.fromRegistrationResponse(
+                user.getId(),
+                credential.getResponse(),
+                credential.getId(),
+                result.getSignatureCount()
+        );
+        return authenticator.withName("Android 设备"); // 可以根据需要自定义
     }
     
-    // ========== 辅助方法 ==========
+    /**
+     * 按 RelyingParty.startRegistration 的规则生成注册选项，挑战由调用方提供
+     * 
+     * RelyingParty 的挑战取自库内全局共用的一个 SecureRandom，不能替换，
+     * 所以注册选项和认证请求在这里自行组装，挑战统一取自 SecureRandomPool
+     */
+    static PublicKeyCredentialCreationOptions creationOptions(
+            RelyingParty relyingParty, StartRegistrationOptions start, ByteArray challenge) {
+        PublicKeyCredentialCreationOptions.PublicKeyCredentialCreationOptionsBuilder builder =
+                PublicKeyCredentialCreationOptions.builder()
+                        .rp(relyingParty.getIdentity())
+                        .user(start.getUser())
+                        .challenge(challenge)
+                        .pubKeyCredParams(relyingParty.getPreferredPubkeyParams())
+                        .excludeCredentials(relyingParty.getCredentialRepository()
+                                .getCredentialIdsForUsername(start.getUser().getName()))
+                        .authenticatorSelection(start.getAuthenticatorSelection())
+                        .extensions(start.getExtensions().merge(RegistrationExtensionInputs.builder()
+                                .appidExclude(relyingParty.getAppId())
+                                .credProps()
+                                .build()))
+                        .timeout(start.getTimeout());
+        relyingParty.getAttestationConveyancePreference().ifPresent(builder::attestation);
+        return builder.build();
+    }
+    
+    /**
+     * 按 RelyingParty.startAssertion 的规则生成认证请求，挑战由调用方提供
+     * 
+     * 指定用户名（或用户句柄）时只允许该用户的凭证，否则不限制（可发现凭证）
+     */
+    static AssertionRequest assertionRequest(
+            RelyingParty relyingParty, StartAssertionOptions start, ByteArray challenge) {
+        CredentialRepository credentials = relyingParty.getCredentialRepository();
+        Optional<String> username = start.getUsername()
+                .or(() -> start.getUserHandle().flatMap(credentials::getUsernameForUserHandle));
+        
+        PublicKeyCredentialRequestOptions.PublicKeyCredentialRequestOptionsBuilder options =
+                PublicKeyCredentialRequestOptions.builder()
+                        .challenge(challenge)
+                        .rpId(relyingParty.getIdentity().getId())
+                        .allowCredentials(username.map(name ->
+                                new ArrayList<>(credentials.getCredentialIdsForUsername(name))))
+                        .extensions(start.getExtensions().merge(start.getExtensions().toBuilder()
+                                .appid(relyingParty.getAppId())
+                                .build()))
+                        .timeout(start.getTimeout());
+        start.getUserVerification().ifPresent(options::userVerification);
+        
+        return AssertionRequest.builder()
+                .publicKeyCredentialRequestOptions(options.build())
+                .username(start.getUsername())
+                .userHandle(start.getUserHandle())
+                .build();
+    }
+    
+    /**
+     * 生成挑战（与 RelyingParty 相同的 32 字节）
+     */
+    static ByteArray newChallenge(SecureRandomPool random) {
+        return new ByteArray(random.nextBytes(CHALLENGE_LENGTH));
+    }
+    
+    /**
+     * 认证成功的响应内容
+     */
+    static AuthenticationFinishResponse authenticationResponse(User user, String credentialId) {
+        return AuthenticationFinishResponse.of(user.getUsername(), user.getId(), user.getDisplayName(), credentialId);
+    }
+    
+    /**
+     * 生成随机标识（Base64Url，无填充）
+     */
+    static String randomId(SecureRandomPool random, int length) {
+        return new ByteArray(random.nextBytes(length)).getBase64Url();
+    }
     
     /**
      * 生成用户 ID
      */
     private String generateUserId() {
-        byte[] bytes = new byte[32];
-        random.nextBytes(bytes);
-        return new ByteArray(bytes).getBase64Url();
+        return randomId(random, 32);
+    }
+    
+    /**
+     * 编码分页游标（用户名的 Base64Url，对客户端不透明）
+     */
+    private String encodeCursor(String username) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(username.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解码分页游标
+     */
+    private String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
     }
     
     /**
      * 生成请求 ID
      */
     private String generateRequestId() {
-        byte[] bytes = new byte[16];
-        random.nextBytes(bytes);
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        return randomId(random, 16);
     }
     
     /**
-     * 查找注册请求
+     * 保存认证请求
      * 
-     * @param credential 客户端返回的凭证
-     * @param username 用户名
-     * @return 对应的注册选项
+     * @param request 认证请求
+     * @return 请求ID（无状态模式下为封装了请求的令牌）
      */
+    private String saveAssertionRequest(AssertionRequest request) {
+        if (sealedTokens != null) {
+            return sealedTokens.seal(request, CHALLENGE_TTL_MS);
+        }
+        String requestId = generateRequestId();
+        assertionRequests.put(requestId, request, CHALLENGE_TTL_MS);
+        return requestId;
+    }
+    
+    /**
+     * 注册完成时查找用户（用户在注册开始时已创建）
+     */
+    private User findRegistrationUser(
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+            String username) {
+        log.info("完成注册流程 - 用户名: {}, 凭证ID: {}", 
+                username, credential.getId().getBase64Url());
+        
+        long phaseStart = System.nanoTime();
+        Optional<User> existingUser = userRepository.findByUsername(username);
+        metrics.recordPhase(REGISTRATION, REPOSITORY_READ, phaseStart);
+        return existingUser
+                .orElseThrow(() -> new CeremonyException(Outcome.UNKNOWN_USER, "用户不存在: " + username));
+    }
+    
+    /**
+     * 取出对应的注册请求，组装注册校验参数
+     */
+    private FinishRegistrationOptions finishRegistrationOptions(
+            PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> credential,
+            String username) {
+        long phaseStart = System.nanoTime();
+        PublicKeyCredentialCreationOptions requestOptions;
+        try {
+            requestOptions = findRegistrationRequest(credential, username);
+        } finally {
+            metrics.recordPhase(REGISTRATION, CHALLENGE_STORE, phaseStart);
+        }
+        return FinishRegistrationOptions.builder()
+                .request(requestOptions)
+                .response(credential)
+                .build();
+    }
+    
+    /**
+     * 取出对应的认证请求，组装认证校验参数
+     */
+    private FinishAssertionOptions finishAssertionOptions(
+            PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> credential,
+            String requestId) {
+        long phaseStart = System.nanoTime();
+        AssertionRequest request;
+        try {
+            request = findAssertionRequest(requestId);
+        } finally {
+            metrics.recordPhase(AUTHENTICATION, CHALLENGE_STORE, phaseStart);
+        }
+        return FinishAssertionOptions.builder()
+                .request(request)
+                .response(credential)
+                .build();
+    }
+    
+    /**
+     * 签名校验，未通过时抛出 AssertionFailedException
+     */
+    private AssertionResult verifyAssertion(FinishAssertionOptions options) throws AssertionFailedException {
+        AssertionResult result = relyingParty.finishAssertion(options);
+        if (!result.isSuccess()) {
+            throw new AssertionFailedException("认证失败");
+        }
+        return result;
+    }
+    
     private PublicKeyCredentialCreationOptions findRegistrationRequest(
             PublicKeyCredential<AuthenticatorAttestationResponse, ?> credential,
             String username) {
         
-        PublicKeyCredentialCreationOptions options = registrationRequests.get(username);
+        // 取出即移除（防止重放攻击），已过期的请求视为不存在
+        PublicKeyCredentialCreationOptions options = registrationRequests.consume(username).orElse(null);
         
         if (options == null) {
             log.error("找不到用户 {} 的注册请求", username);
-            throw new IllegalArgumentException("找不到对应的注册请求，请重新开始注册流程");
+            throw new CeremonyException(Outcome.CHALLENGE_NOT_FOUND, "找不到对应的注册请求，请重新开始注册流程");
         }
         
         log.info("找到注册请求 - 用户名: {}, Challenge: {}", 
                 username, options.getChallenge().getBase64Url());
         
-        // 验证完成后移除请求（防止重放攻击）
-        registrationRequests.remove(username);
-        
         return options;
     }
     
@@ -308,20 +663,19 @@ public class WebAuthnService {
      * @return 对应的认证请求
      */
     private AssertionRequest findAssertionRequest(String requestId) {
-        AssertionRequest request = assertionRequests.get(requestId);
+        // 取出即移除（防止重放攻击），已过期的请求视为不存在
+        AssertionRequest request = (sealedTokens != null
+                ? sealedTokens.open(requestId)
+                : assertionRequests.consume(requestId)).orElse(null);
         
         if (request == null) {
             log.error("找不到请求ID {} 的认证请求", requestId);
-            throw new IllegalArgumentException("找不到对应的认证请求，请重新开始认证流程");
+            throw new CeremonyException(Outcome.CHALLENGE_NOT_FOUND, "找不到对应的认证请求，请重新开始认证流程");
         }
         
         log.info("找到认证请求 - 请求ID: {}, Challenge: {}", 
                 requestId, request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url());
         
-        // 验证完成后移除请求（防止重放攻击）
-        assertionRequests.remove(requestId);
-        
         return request;
     }
 }
-
@@ -0,0 +1,16 @@
+package com.example.passkeys.store;
+
+import java.io.IOException;
+
+/**
+ * 挑战值的序列化接口
+ * 供需要把值写出 JVM 的存储实现使用（如 Redis）
+ *
+ * @param <V> 值类型
+ */
+public interface ChallengeCodec<V> {
+
+    String encode(V value) throws IOException;
+
+    V decode(String encoded) throws IOException;
+}
@@ -0,0 +1,51 @@
+package com.example.passkeys.store;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 挑战存储接口
+ *
+ * 保存进行中的注册 / 认证仪式，供 finish 阶段取回。
+ * 实现必须保证同一个 key 只能被成功消费一次，并在 TTL 到期后自动丢弃条目。
+ *
+ * @param <V> 存储的值类型
+ */
+public interface ChallengeStore<V> {
+
+    /**
+     * 保存条目，已存在相同 key 时覆盖
+     *
+     * @param key 请求标识
+     * @param value 值
+     * @param ttlMillis 存活时间（毫秒）
+     */
+    void put(String key, V value, long ttlMillis);
+
+    /**
+     * 原子地取出并移除条目
+     *
+     * @param key 请求标识
+     * @return 未过期的值；不存在、已过期或已被消费时为空
+     */
+    Optional<V> consume(String key);
+
+    /**
+     * put 的非阻塞版本（供响应式接口使用）
+     *
+     * 默认实现同步执行 put，适用于内存存储；需要网络往返的实现应覆盖此方法
+     */
+    default CompletableFuture<Void> putAsync(String key, V value, long ttlMillis) {
+        put(key, value, ttlMillis);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * consume 的非阻塞版本（供响应式接口使用）
+     *
+     * 默认实现同步执行 consume，适用于内存存储；需要网络往返的实现应覆盖此方法
+     */
+    default CompletableFuture<Optional<V>> consumeAsync(String key) {
+        return CompletableFuture.completedFuture(consume(key));
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.passkeys.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 带过期时间的内存挑战存储（默认实现）
+ *
+ * 用于保存进行中的注册 / 认证仪式（start 与 finish 之间的状态）。
+ * 每个条目都有截止时间，过期条目由时间轮（hashed timing wheel）按槽位批量清理，
+ * 放入和消费都是 O(1)；同时有硬性容量上限，超出时淘汰最早到期的条目。
+ *
+ * @param <V> 存储的值类型
+ */
+public class ExpiringChallengeStore<V> implements ChallengeStore<V>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiringChallengeStore.class);
+
+    private final String name;
+    private final int capacity;
+    private final long tickMillis;
+    private final int wheelSize;
+    private final LongSupplier clock;
+
+    // Key: 请求标识, Value: 条目
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    // 时间轮：按截止时间所在的 tick 分槽
+    private final Queue<Entry<V>>[] wheel;
+
+    private final ScheduledExecutorService ticker;
+    private volatile long lastTick;
+
+    private final LongAdder expiredCount = new LongAdder();
+    private final LongAdder consumedCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    /**
+     * @param name 存储名称（用于日志和线程名）
+     * @param capacity 最大条目数
+     * @param tickMillis 时间轮每格的时长
+     * @param wheelSize 时间轮槽位数（tickMillis * wheelSize 应覆盖常见的 TTL）
+     */
+    public ExpiringChallengeStore(String name, int capacity, long tickMillis, int wheelSize) {
+        this(name, capacity, tickMillis, wheelSize, System::currentTimeMillis, true);
+    }
+
+    /**
+     * @param clock 当前时间（毫秒）
+     * @param scheduled 是否由后台线程定时推进时间轮（为 false 时由调用方调用 advance()）
+     */
+    @SuppressWarnings("unchecked")
+    ExpiringChallengeStore(String name, int capacity, long tickMillis, int wheelSize,
+                           LongSupplier clock, boolean scheduled) {
+        if (capacity <= 0 || tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("capacity、tickMillis 和 wheelSize 必须为正数");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.clock = clock;
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        // 构造时所在的 tick 尚未走完，从它开始清理
+        this.lastTick = currentTick() - 1;
+        if (scheduled) {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "challenge-wheel-" + name);
+                t.setDaemon(true);
+                return t;
+            });
+            this.ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.ticker = null;
+        }
+    }
+
+    /**
+     * 保存条目，已存在相同 key 时覆盖
+     *
+     * @param key 请求标识
+     * @param value 值
+     * @param ttlMillis 存活时间（毫秒）
+     */
+    @Override
+    public void put(String key, V value, long ttlMillis) {
+        if (entries.size() >= capacity && !entries.containsKey(key)) {
+            evictOne();
+        }
+        Entry<V> entry = new Entry<>(key, value, clock.getAsLong() + ttlMillis);
+        entries.put(key, entry);
+        wheel[slotOf(entry.deadline)].offer(entry);
+    }
+
+    /**
+     * 取出并移除条目（只能成功一次）
+     *
+     * @param key 请求标识
+     * @return 未过期的值；不存在或已过期时为空
+     */
+    @Override
+    public Optional<V> consume(String key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.deadline <= clock.getAsLong()) {
+            expiredCount.increment();
+            return Optional.empty();
+        }
+        consumedCount.increment();
+        return Optional.of(entry.value);
+    }
+
+    /**
+     * 当前存活条目数
+     */
+    public int getLiveCount() {
+        return entries.size();
+    }
+
+    /**
+     * 累计过期条目数
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * 累计被成功消费的条目数
+     */
+    public long getConsumedCount() {
+        return consumedCount.sum();
+    }
+
+    /**
+     * 累计因容量上限被淘汰的条目数
+     */
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    // ========== 时间轮 ==========
+
+    private long currentTick() {
+        return clock.getAsLong() / tickMillis;
+    }
+
+    private int slotOf(long deadline) {
+        return (int) ((deadline / tickMillis) % wheelSize);
+    }
+
+    /**
+     * 推进时间轮，清理已经走完的 tick 对应的槽位（补上因调度延迟错过的 tick）
+     *
+     * 当前 tick 还没走完，槽位中截止时间在本 tick 稍后的条目尚未过期；
+     * 如果现在清理并把 lastTick 推到当前 tick，这些条目要再等一整圈才会被清理，
+     * 期间仍然占用容量，put 会为它们淘汰存活的条目。因此只清理到上一个 tick。
+     */
+    void advance() {
+        try {
+            long now = clock.getAsLong();
+            long completed = now / tickMillis - 1;
+            long from = Math.max(lastTick + 1, completed - wheelSize + 1);
+            for (long t = from; t <= completed; t++) {
+                sweep(wheel[(int) (t % wheelSize)], now);
+            }
+            if (completed > lastTick) {
+                lastTick = completed;
+            }
+        } catch (RuntimeException e) {
+            log.error("挑战存储 {} 清理失败", name, e);
+        }
+    }
+
+    private void sweep(Queue<Entry<V>> slot, long now) {
+        Iterator<Entry<V>> it = slot.iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            if (entries.get(entry.key) != entry) {
+                // 已被消费、覆盖或淘汰
+                it.remove();
+            } else if (entry.deadline <= now) {
+                if (entries.remove(entry.key, entry)) {
+                    expiredCount.increment();
+                }
+                it.remove();
+            }
+            // 截止时间超过一圈的条目留到下一轮
+        }
+    }
+
+    /**
+     * 淘汰最早到期的一个条目
+     */
+    private void evictOne() {
+        long start = lastTick + 1;
+        for (int i = 0; i < wheelSize; i++) {
+            Iterator<Entry<V>> it = wheel[(int) ((start + i) % wheelSize)].iterator();
+            while (it.hasNext()) {
+                Entry<V> entry = it.next();
+                it.remove();
+                if (entries.remove(entry.key, entry)) {
+                    evictedCount.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        final String key;
+        final V value;
+        final long deadline;
+
+        Entry(String key, V value, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+}
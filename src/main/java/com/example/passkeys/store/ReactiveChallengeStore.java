@@ -0,0 +1,39 @@
+package com.example.passkeys.store;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * 挑战存储的响应式视图（供 WebFlux 接口使用）
+ *
+ * 基于 ChallengeStore 的 putAsync / consumeAsync：Redis 存储等待回复时不占用事件循环线程，
+ * 内存存储直接在调用线程上完成。订阅时才发出命令。
+ *
+ * @param <V> 存储的值类型
+ */
+public class ReactiveChallengeStore<V> {
+
+    private final ChallengeStore<V> store;
+
+    public ReactiveChallengeStore(ChallengeStore<V> store) {
+        this.store = store;
+    }
+
+    /**
+     * 保存条目，已存在相同 key 时覆盖
+     */
+    public Mono<Void> put(String key, V value, long ttlMillis) {
+        return Mono.defer(() -> Mono.fromFuture(store.putAsync(key, value, ttlMillis)));
+    }
+
+    /**
+     * 原子地取出并移除条目
+     *
+     * @return 未过期的值；不存在、已过期或已被消费时为空
+     */
+    public Mono<V> consume(String key) {
+        return Mono.defer(() -> Mono.fromFuture(store.consumeAsync(key)))
+                .flatMap(Mono::justOrEmpty);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.passkeys.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 基于 Redis 的共享挑战存储
+ *
+ * 多节点部署时使用：start 和 finish 可以落在不同节点上，无需粘性会话。
+ * 写入使用 SET ... PX（过期由 Redis 负责），消费使用 GETDEL 保证只能成功一次。
+ * 兼容任何实现了 RESP 协议及 GETDEL 命令的服务（Redis 6.2+、KeyDB、Valkey 等）。
+ *
+ * @param <V> 存储的值类型
+ */
+public class RedisChallengeStore<V> implements ChallengeStore<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisChallengeStore.class);
+
+    private final RespConnection connection;
+    private final String keyPrefix;
+    private final ChallengeCodec<V> codec;
+    private final long timeoutMillis;
+
+    /**
+     * @param connection 共享的 RESP 连接
+     * @param keyPrefix key 前缀（区分注册 / 认证等不同用途）
+     * @param codec 值的序列化方式
+     * @param timeoutMillis 单条命令的等待超时
+     */
+    public RedisChallengeStore(RespConnection connection, String keyPrefix,
+                               ChallengeCodec<V> codec, long timeoutMillis) {
+        this.connection = connection;
+        this.keyPrefix = keyPrefix;
+        this.codec = codec;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void put(String key, V value, long ttlMillis) {
+        try {
+            await(putAsync(key, value, ttlMillis));
+        } catch (IOException e) {
+            throw new IllegalStateException("写入挑战存储失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<V> consume(String key) {
+        try {
+            return await(consumeAsync(key));
+        } catch (IOException e) {
+            log.error("读取挑战存储失败 - key: {}", key, e);
+            throw new IllegalStateException("读取挑战存储失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 不占用调用线程等待回复，超时后以 TimeoutException 失败
+     */
+    @Override
+    public CompletableFuture<Void> putAsync(String key, V value, long ttlMillis) {
+        String encoded;
+        try {
+            encoded = codec.encode(value);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return connection.send("SET", keyPrefix + key, encoded, "PX", Long.toString(ttlMillis))
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(reply -> null);
+    }
+
+    /**
+     * 不占用调用线程等待回复，超时后以 TimeoutException 失败
+     */
+    @Override
+    public CompletableFuture<Optional<V>> consumeAsync(String key) {
+        return connection.send("GETDEL", keyPrefix + key)
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(reply -> {
+                    if (reply == null) {
+                        return Optional.empty();
+                    }
+                    try {
+                        return Optional.of(codec.decode((String) reply));
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待 Redis 回复时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw new IOException("等待 Redis 回复超时（" + timeoutMillis + "ms）", cause);
+            }
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new IOException("等待 Redis 回复超时（" + timeoutMillis + "ms）", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.passkeys.store;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多节点共享的重放过滤器（passkeys.challenge.store=redis 时用于无状态认证令牌）
+ *
+ * 先查本节点的过滤器（同一节点上的重放不需要网络往返），再用 SET key 1 NX PX 在 Redis 中占用令牌 ID：
+ * 只有第一个占用成功的节点放行，令牌在所有节点上都只能使用一次。key 随令牌一起过期。
+ * Redis 不可用时拒绝令牌（抛出异常），不退化为只在本节点检查。
+ */
+public class RedisReplayFilter extends ReplayFilter {
+
+    private final RespConnection connection;
+    private final String keyPrefix;
+    private final long timeoutMillis;
+
+    /**
+     * @param partitionMillis 本节点过滤器的分区时长
+     * @param connection 共享的 RESP 连接
+     * @param keyPrefix key 前缀
+     * @param timeoutMillis 单条命令的等待超时
+     */
+    public RedisReplayFilter(long partitionMillis, RespConnection connection, String keyPrefix, long timeoutMillis) {
+        super(partitionMillis);
+        this.connection = connection;
+        this.keyPrefix = keyPrefix;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @throws IllegalStateException Redis 不可用或超时
+     */
+    @Override
+    public boolean markUsed(String tokenId, long expiresAt) {
+        try {
+            return markUsedAsync(tokenId, expiresAt).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 Redis 回复时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("标记认证令牌失败: " + e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("等待 Redis 回复超时（" + timeoutMillis + "ms）", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> markUsedAsync(String tokenId, long expiresAt) {
+        if (!super.markUsed(tokenId, expiresAt)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        long ttlMillis = Math.max(1, expiresAt - System.currentTimeMillis());
+        // NX 成功时回复 OK，key 已存在（其他节点已使用）时回复 null
+        return connection.send("SET", keyPrefix + tokenId, "1", "NX", "PX", Long.toString(ttlMillis))
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(reply -> reply != null);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.passkeys.store;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按时间分区的重放过滤器
+ *
+ * 记录已使用过的一次性令牌 ID。每个 ID 按其过期时间落入一个分区，
+ * 分区整体过期后直接丢弃，因此内存只与 TTL 窗口内的令牌数量相关。
+ * 令牌过期后本身就会被拒绝，不需要继续记录。
+ */
+public class ReplayFilter {
+
+    private final long partitionMillis;
+
+    // Key: 分区编号（过期时间 / partitionMillis）, Value: 该分区内已使用的令牌 ID
+    private final Map<Long, Set<String>> partitions = new ConcurrentHashMap<>();
+
+    private volatile long purgedBefore;
+
+    /**
+     * @param partitionMillis 分区时长
+     */
+    public ReplayFilter(long partitionMillis) {
+        this.partitionMillis = partitionMillis;
+    }
+
+    /**
+     * 标记令牌为已使用
+     *
+     * @param tokenId 令牌 ID
+     * @param expiresAt 令牌过期时间
+     * @return 首次使用返回 true，重复使用返回 false
+     */
+    public boolean markUsed(String tokenId, long expiresAt) {
+        long now = System.currentTimeMillis();
+        purge(now);
+        long partition = expiresAt / partitionMillis;
+        return partitions.computeIfAbsent(partition, p -> ConcurrentHashMap.newKeySet()).add(tokenId);
+    }
+
+    /**
+     * markUsed 的非阻塞版本（供响应式接口使用）
+     *
+     * 默认实现同步执行 markUsed；需要网络往返的实现应覆盖此方法
+     */
+    public CompletableFuture<Boolean> markUsedAsync(String tokenId, long expiresAt) {
+        return CompletableFuture.completedFuture(markUsed(tokenId, expiresAt));
+    }
+
+    /**
+     * 当前记录的令牌数
+     */
+    public int size() {
+        int size = 0;
+        for (Set<String> ids : partitions.values()) {
+            size += ids.size();
+        }
+        return size;
+    }
+
+    private void purge(long now) {
+        long current = now / partitionMillis;
+        if (current <= purgedBefore) {
+            return;
+        }
+        purgedBefore = current;
+        // 分区内最晚的过期时间也已经过去，整个分区可以丢弃
+        partitions.keySet().removeIf(partition -> partition < current);
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.passkeys.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 精简的 Redis 协议（RESP2）客户端连接
+ *
+ * 所有调用方共享一条 TCP 连接：写线程把排队中的命令一次性写出再 flush（流水线），
+ * 读线程按发送顺序把回复分派给对应的 Future。连接断开时挂起的命令全部失败，
+ * 下一条命令会触发重连。
+ *
+ * 连接建立后 Redis 停止响应（进程卡住、网络黑洞）时 TCP 连接不会断开：
+ * 最早的挂起命令超过读超时仍没有回复时，视为连接失效，挂起的命令全部失败并断开，
+ * 下一条命令重新连接，而不是让所有调用方在同一条卡住的连接上一直等下去。
+ */
+public class RespConnection implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RespConnection.class);
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMillis;
+    private final long readTimeoutNanos;
+    private final int pollMillis;
+
+    private final BlockingQueue<Command> outgoing = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    // 使用 ReentrantLock 而不是 synchronized：持锁期间有网络 I/O，虚拟线程在监视器内阻塞会占住载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 以下字段由 lock 保护
+    private Socket socket;
+    private OutputStream out;
+    private Queue<Command> inflight;
+
+    /**
+     * @param connectTimeoutMillis 建立连接的超时
+     * @param readTimeoutMillis 挂起的命令等待回复的最长时间，超过后断开连接
+     */
+    public RespConnection(String host, int port, int connectTimeoutMillis, int readTimeoutMillis) {
+        if (readTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("readTimeoutMillis 必须为正数");
+        }
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        // 读线程按这个间隔醒来检查最早的挂起命令，检测到卡住的延迟不超过读超时的 1.25 倍
+        this.pollMillis = Math.max(1, readTimeoutMillis / 4);
+        this.writer = new Thread(this::writeLoop, "resp-writer-" + host + ":" + port);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 异步发送一条命令
+     *
+     * @param args 命令及参数
+     * @return 回复：String（简单字符串 / 批量字符串）、Long、List 或 null
+     */
+    public CompletableFuture<Object> send(String... args) {
+        Command command = new Command(args);
+        if (closed) {
+            command.future.completeExceptionally(new IOException("连接已关闭"));
+        } else {
+            outgoing.add(command);
+        }
+        return command.future;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        disconnect(new IOException("连接已关闭"));
+    }
+
+    // ========== 写线程 ==========
+
+    private void writeLoop() {
+        List<Command> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        for (Command command; (command = outgoing.poll()) != null; ) {
+            command.future.completeExceptionally(new IOException("连接已关闭"));
+        }
+    }
+
+    private void writeBatch(List<Command> batch) {
+        lock.lock();
+        try {
+            if (socket == null) {
+                connect();
+            }
+            for (Command command : batch) {
+                // 先登记再写出，保证读线程按发送顺序匹配回复
+                command.sentAt = System.nanoTime();
+                inflight.add(command);
+                writeCommand(out, command.args);
+            }
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Redis 写入失败 {}:{} - {}", host, port, e.getMessage());
+            for (Command command : batch) {
+                command.future.completeExceptionally(e);
+            }
+            disconnect(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+        s.setSoTimeout(pollMillis);
+        Queue<Command> pending = new ConcurrentLinkedQueue<>();
+        InputStream in = new BufferedInputStream(s.getInputStream());
+        socket = s;
+        out = new BufferedOutputStream(s.getOutputStream());
+        inflight = pending;
+
+        Thread reader = new Thread(() -> readLoop(s, in, pending), "resp-reader-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+        log.info("已连接 Redis {}:{}", host, port);
+    }
+
+    private void disconnect(IOException cause) {
+        Socket s;
+        Queue<Command> pending;
+        lock.lock();
+        try {
+            s = socket;
+            pending = inflight;
+            socket = null;
+            out = null;
+            inflight = null;
+        } finally {
+            lock.unlock();
+        }
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // 关闭失败无需处理
+            }
+        }
+        if (pending != null) {
+            for (Command command; (command = pending.poll()) != null; ) {
+                command.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    // ========== 读线程 ==========
+
+    private void readLoop(Socket s, InputStream in, Queue<Command> pending) {
+        try {
+            while (!s.isClosed()) {
+                Object reply = readReply(awaitReply(in, pending), in);
+                Command command = pending.poll();
+                if (command == null) {
+                    throw new IOException("收到无对应请求的回复");
+                }
+                if (reply instanceof RespError error) {
+                    command.future.completeExceptionally(new IOException(error.message));
+                } else {
+                    command.future.complete(reply);
+                }
+            }
+        } catch (IOException e) {
+            if (!s.isClosed()) {
+                log.warn("Redis 连接中断 {}:{} - {}", host, port, e.getMessage());
+            }
+            // 由写线程在下次写入时重连；这里只负责让挂起的请求失败
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // 关闭失败无需处理
+            }
+            for (Command command; (command = pending.poll()) != null; ) {
+                command.future.completeExceptionally(e);
+            }
+            lock.lock();
+            try {
+                if (socket == s) {
+                    socket = null;
+                    out = null;
+                    inflight = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 等待下一条回复的第一个字节
+     *
+     * 只在回复的边界上处理读超时：空闲或最早的命令尚未超时时继续等待；
+     * 回复读到一半时超时说明连接卡住，由 readReply 抛出的 SocketTimeoutException 直接断开。
+     */
+    private int awaitReply(InputStream in, Queue<Command> pending) throws IOException {
+        while (true) {
+            try {
+                return in.read();
+            } catch (SocketTimeoutException e) {
+                Command oldest = pending.peek();
+                if (oldest != null && System.nanoTime() - oldest.sentAt > readTimeoutNanos) {
+                    throw new SocketTimeoutException("Redis 超过 "
+                            + TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos) + "ms 没有回复");
+                }
+            }
+        }
+    }
+
+    // ========== RESP 编解码 ==========
+
+    private static void writeCommand(OutputStream out, String[] args) throws IOException {
+        out.write('*');
+        out.write(Integer.toString(args.length).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.write('$');
+            out.write(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(bytes);
+            out.write(CRLF);
+        }
+    }
+
+    private static Object readReply(int type, InputStream in) throws IOException {
+        switch (type) {
+            case '+':
+                return readLine(in);
+            case '-':
+                return new RespError(readLine(in));
+            case ':':
+                return Long.parseLong(readLine(in));
+            case '$': {
+                int length = Integer.parseInt(readLine(in));
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length != length) {
+                    throw new EOFException();
+                }
+                readLine(in);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int count = Integer.parseInt(readLine(in));
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(readReply(in.read(), in));
+                }
+                return items;
+            }
+            case -1:
+                throw new EOFException("连接被对端关闭");
+            default:
+                throw new IOException("无法识别的 RESP 类型: " + (char) type);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            sb.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("RESP 行结束符错误");
+        }
+        return sb.toString();
+    }
+
+    private record RespError(String message) {
+    }
+
+    private static final class Command {
+        final String[] args;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        // 写出时刻（System.nanoTime()），由写线程在登记到 inflight 之前设置
+        volatile long sentAt;
+
+        Command(String[] args) {
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.passkeys.store;
+
+import com.example.passkeys.SecureRandomPool;
+import com.yubico.webauthn.AssertionRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 无状态的认证请求令牌
+ *
+ * 把 AssertionRequest 连同签发 / 过期时间用 AES-GCM 加密封装成 requestId，
+ * finish 阶段直接解密还原，服务器端无需保存任何认证请求。
+ * 一次性使用由 {@link ReplayFilter} 保证。
+ *
+ * 多节点部署时所有节点必须配置相同的密钥，并使用共享的重放过滤器
+ * （passkeys.challenge.store=redis 时为 {@link RedisReplayFilter}），令牌在所有节点上都只能使用一次。
+ * 节点本地的过滤器只适用于单节点：很多认证器的签名计数始终为 0，不能依靠计数器发现重放。
+ *
+ * 令牌格式（Base64Url）：version(1) | nonce(12) | AES-GCM(issuedAt(8) | expiresAt(8) | JSON)
+ */
+public class SealedAssertionTokens {
+
+    private static final Logger log = LoggerFactory.getLogger(SealedAssertionTokens.class);
+
+    private static final byte VERSION = 1;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKeySpec key;
+    private final ReplayFilter replayFilter;
+    private final SecureRandomPool random;
+
+    /**
+     * @param key AES 密钥（16 / 24 / 32 字节）
+     * @param replayFilter 已使用令牌的过滤器
+     * @param random 共享的随机数源（生成每个令牌的 nonce，nonce 同时作为重放过滤的令牌 ID）
+     */
+    public SealedAssertionTokens(byte[] key, ReplayFilter replayFilter, SecureRandomPool random) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES 密钥长度必须为 16、24 或 32 字节");
+        }
+        this.key = new SecretKeySpec(key, "AES");
+        this.replayFilter = replayFilter;
+        this.random = random;
+    }
+
+    /**
+     * 封装认证请求
+     *
+     * @param request 认证请求
+     * @param ttlMillis 有效期（毫秒）
+     * @return 令牌（作为 requestId 返回给客户端）
+     */
+    public String seal(AssertionRequest request, long ttlMillis) {
+        try {
+            byte[] json = request.toJson().getBytes(StandardCharsets.UTF_8);
+            long issuedAt = System.currentTimeMillis();
+
+            byte[] nonce = new byte[NONCE_LENGTH];
+            random.nextBytes(nonce);
+
+            ByteBuffer plain = ByteBuffer.allocate(16 + json.length);
+            plain.putLong(issuedAt).putLong(issuedAt + ttlMillis).put(json);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(new byte[]{VERSION});
+            byte[] sealed = cipher.doFinal(plain.array());
+
+            ByteBuffer token = ByteBuffer.allocate(1 + NONCE_LENGTH + sealed.length);
+            token.put(VERSION).put(nonce).put(sealed);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("封装认证请求失败", e);
+        }
+    }
+
+    /**
+     * 解封令牌并标记为已使用
+     *
+     * @param token 令牌
+     * @return 认证请求；令牌无效、已过期或已被使用时为空
+     */
+    public Optional<AssertionRequest> open(String token) {
+        Unsealed unsealed = unseal(token);
+        if (unsealed == null) {
+            return Optional.empty();
+        }
+        if (!replayFilter.markUsed(unsealed.tokenId(), unsealed.expiresAt())) {
+            log.warn("认证令牌重复使用");
+            return Optional.empty();
+        }
+        return parse(unsealed);
+    }
+
+    /**
+     * open 的非阻塞版本（共享的重放过滤器需要网络往返，供响应式接口使用）
+     */
+    public CompletableFuture<Optional<AssertionRequest>> openAsync(String token) {
+        Unsealed unsealed = unseal(token);
+        if (unsealed == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return replayFilter.markUsedAsync(unsealed.tokenId(), unsealed.expiresAt())
+                .thenApply(firstUse -> {
+                    if (!firstUse) {
+                        log.warn("认证令牌重复使用");
+                        return Optional.empty();
+                    }
+                    return parse(unsealed);
+                });
+    }
+
+    /**
+     * 解密后的令牌内容
+     */
+    private record Unsealed(String tokenId, long expiresAt, String json) {
+    }
+
+    /**
+     * 解密并检查有效期（不标记为已使用）
+     *
+     * @return 令牌无效或已过期时为 null
+     */
+    private Unsealed unseal(String token) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            if (bytes.length <= 1 + NONCE_LENGTH || bytes[0] != VERSION) {
+                return null;
+            }
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 1, NONCE_LENGTH));
+            cipher.updateAAD(bytes, 0, 1);
+            ByteBuffer plain = ByteBuffer.wrap(
+                    cipher.doFinal(bytes, 1 + NONCE_LENGTH, bytes.length - 1 - NONCE_LENGTH));
+
+            plain.getLong(); // issuedAt
+            long expiresAt = plain.getLong();
+            if (expiresAt <= System.currentTimeMillis()) {
+                log.warn("认证令牌已过期");
+                return null;
+            }
+
+            // nonce 对每个令牌唯一，直接作为令牌 ID
+            String tokenId = Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, 1, 1 + NONCE_LENGTH));
+            String json = new String(plain.array(), plain.position(), plain.remaining(), StandardCharsets.UTF_8);
+            return new Unsealed(tokenId, expiresAt, json);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            log.warn("无法解析认证令牌: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Optional<AssertionRequest> parse(Unsealed unsealed) {
+        try {
+            return Optional.of(AssertionRequest.fromJson(unsealed.json()));
+        } catch (IOException e) {
+            log.warn("无法解析认证令牌: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 重放过滤器中记录的令牌数（尚未过期的已使用令牌）
+     */
+    public int getUsedTokenCount() {
+        return replayFilter.size();
+    }
+}
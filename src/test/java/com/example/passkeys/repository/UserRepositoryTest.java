@@ -0,0 +1,145 @@
+package com.example.passkeys.repository;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import com.yubico.webauthn.data.ByteArray;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 并发写入同一个用户名 / 凭证 ID 时的索引一致性
+ */
+class UserRepositoryTest {
+
+    private static final int ROUNDS = 500;
+
+    private final UserRepository repository = newRepository();
+
+    private static UserRepository newRepository() {
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        return new UserRepository(none.getBeanProvider(CredentialLog.class),
+                none.getBeanProvider(SignCountWriteBehind.class));
+    }
+
+    @Test
+    void parallelImportsOfOneCredentialIdAssignItToExactlyOneUser() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                User alice = user("alice-" + round);
+                User bob = user("bob-" + round);
+                String credentialId = id("credential-" + round);
+
+                List<UserRepository.BatchResult> results = race(executor,
+                        () -> repository.importBatch(Map.of(alice.getId(), alice),
+                                List.of(authenticator(credentialId, alice))),
+                        () -> repository.importBatch(Map.of(bob.getId(), bob),
+                                List.of(authenticator(credentialId, bob))));
+
+                // 一个批次导入成功，另一个按重复处理
+                assertThat(results.get(0).getImported().size() + results.get(1).getImported().size())
+                        .isEqualTo(1);
+                assertThat(results.get(0).getDuplicateCredentials() + results.get(1).getDuplicateCredentials())
+                        .isEqualTo(1);
+
+                // 凭证只出现在索引指向的那个用户的快照里
+                String ownerId = repository.findAuthenticatorByCredentialId(credentialId)
+                        .orElseThrow().getUserId();
+                User owner = repository.findById(ownerId).orElseThrow();
+                User other = repository.findById(ownerId.equals(alice.getId()) ? bob.getId() : alice.getId())
+                        .orElseThrow();
+                assertThat(owner.getAuthenticator(credentialId)).isNotNull();
+                assertThat(other.getAuthenticator(credentialId)).isNull();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(repository.getCredentialCount()).isEqualTo(ROUNDS);
+    }
+
+    @Test
+    void importSkipsCredentialAlreadyImportedForTheSameUser() {
+        User alice = user("alice");
+        String credentialId = id("credential");
+
+        UserRepository.BatchResult first = repository.importBatch(Map.of(alice.getId(), alice),
+                List.of(authenticator(credentialId, alice), authenticator(credentialId, alice)));
+        UserRepository.BatchResult second = repository.importBatch(Map.of(alice.getId(), alice),
+                List.of(authenticator(credentialId, alice)));
+
+        // 同一批次内和跨批次的重复都被跳过
+        assertThat(first.getImported()).hasSize(1);
+        assertThat(first.getDuplicateCredentials()).isEqualTo(1);
+        assertThat(second.getImportedUsers()).isZero();
+        assertThat(second.getImported()).isEmpty();
+        assertThat(second.getDuplicateCredentials()).isEqualTo(1);
+        assertThat(repository.findById(alice.getId()).orElseThrow().getAuthenticators()).hasSize(1);
+    }
+
+    @Test
+    void concurrentCreationOfOneUsernameReturnsTheWinningUser() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                String username = "user-" + round;
+                User first = new User(id(username + "-a"), username, "A");
+                User second = new User(id(username + "-b"), username, "B");
+
+                List<User> created = race(executor,
+                        () -> repository.createUser(first),
+                        () -> repository.createUser(second));
+
+                // 两次注册都继续进行，并且针对同一个用户
+                assertThat(created.get(0).getId()).isEqualTo(created.get(1).getId());
+                assertThat(repository.findByUsername(username).orElseThrow().getId())
+                        .isEqualTo(created.get(0).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(repository.findAllUsers()).hasSize(ROUNDS);
+    }
+
+    /**
+     * 让两个任务尽量同时开始，返回两者的结果
+     */
+    private static <T> List<T> race(ExecutorService executor, Callable<T> first, Callable<T> second)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Future<T> a = executor.submit(() -> {
+            start.await();
+            return first.call();
+        });
+        Future<T> b = executor.submit(() -> {
+            start.await();
+            return second.call();
+        });
+        start.countDown();
+        return List.of(a.get(), b.get());
+    }
+
+    private static User user(String username) {
+        return new User(id(username), username, username);
+    }
+
+    private static Authenticator authenticator(String credentialId, User user) {
+        return new Authenticator(credentialId, user.getId(), id("public-key"), 0, null, 0, 0, null, false);
+    }
+
+    private static String id(String seed) {
+        return new ByteArray(seed.getBytes(StandardCharsets.UTF_8)).getBase64Url();
+    }
+}
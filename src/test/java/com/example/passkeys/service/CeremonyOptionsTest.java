@@ -0,0 +1,129 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import com.example.passkeys.repository.UserRepository;
+import com.yubico.webauthn.AssertionRequest;
+import com.yubico.webauthn.RelyingParty;
+import com.yubico.webauthn.StartAssertionOptions;
+import com.yubico.webauthn.StartRegistrationOptions;
+import com.yubico.webauthn.data.AssertionExtensionInputs;
+import com.yubico.webauthn.data.AttestationConveyancePreference;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.RegistrationExtensionInputs;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.extension.appid.AppId;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 自行组装的注册选项 / 认证请求必须与 RelyingParty.startRegistration / startAssertion 逐字段一致
+ *
+ * creationOptions 和 assertionRequest 只替换了挑战的来源，其余规则照搬库的实现；
+ * 升级 webauthn-server-core 后库的规则如有变化（扩展、appid、超时等），这里会失败
+ */
+class CeremonyOptionsTest {
+
+    private final UserRepository repository = newRepository();
+    private final User alice = new User(id("alice"), "alice", "Alice");
+    private final User bob = new User(id("bob"), "bob", "Bob");
+
+    CeremonyOptionsTest() {
+        repository.saveUser(alice);
+        repository.saveUser(bob);
+        // alice 已有两个凭证（excludeCredentials / allowCredentials 非空），bob 没有
+        for (String credential : List.of("alice-1", "alice-2")) {
+            repository.saveAuthenticator(new Authenticator(id(credential), alice.getId(), id("public-key"),
+                    0, null, 0, 0, null, false));
+        }
+    }
+
+    @Test
+    void creationOptionsMatchStartRegistration() throws Exception {
+        for (RelyingParty relyingParty : relyingParties()) {
+            for (User user : List.of(alice, bob)) {
+                assertSameCreationOptions(relyingParty, WebAuthnService.registrationOptions(user));
+                assertSameCreationOptions(relyingParty, StartRegistrationOptions.builder()
+                        .user(user.toUserIdentity())
+                        .extensions(RegistrationExtensionInputs.builder().uvm().build())
+                        .build());
+            }
+        }
+    }
+
+    @Test
+    void assertionRequestMatchesStartAssertion() throws Exception {
+        for (RelyingParty relyingParty : relyingParties()) {
+            for (String username : new String[]{"alice", "bob", null}) {
+                assertSameAssertionRequest(relyingParty, WebAuthnService.assertionOptions(username));
+            }
+            // 按用户句柄指定用户、不指定用户验证、带扩展
+            assertSameAssertionRequest(relyingParty, StartAssertionOptions.builder()
+                    .userHandle(alice.getUserHandle())
+                    .build());
+            assertSameAssertionRequest(relyingParty, StartAssertionOptions.builder()
+                    .username("alice")
+                    .extensions(AssertionExtensionInputs.builder().uvm().build())
+                    .build());
+        }
+    }
+
+    private static void assertSameCreationOptions(RelyingParty relyingParty, StartRegistrationOptions start)
+            throws Exception {
+        PublicKeyCredentialCreationOptions expected = relyingParty.startRegistration(start);
+        PublicKeyCredentialCreationOptions actual =
+                WebAuthnService.creationOptions(relyingParty, start, expected.getChallenge());
+
+        assertThat(actual).usingRecursiveComparison().isEqualTo(expected);
+        assertThat(actual).isEqualTo(expected);
+        // 发给客户端的 JSON 也一致
+        assertThat(actual.toCredentialsCreateJson()).isEqualTo(expected.toCredentialsCreateJson());
+    }
+
+    private static void assertSameAssertionRequest(RelyingParty relyingParty, StartAssertionOptions start)
+            throws Exception {
+        AssertionRequest expected = relyingParty.startAssertion(start);
+        AssertionRequest actual = WebAuthnService.assertionRequest(relyingParty, start,
+                expected.getPublicKeyCredentialRequestOptions().getChallenge());
+
+        assertThat(actual).usingRecursiveComparison().isEqualTo(expected);
+        assertThat(actual).isEqualTo(expected);
+        assertThat(actual.toCredentialsGetJson()).isEqualTo(expected.toCredentialsGetJson());
+    }
+
+    /**
+     * 与 WebAuthnConfig 相同设置的依赖方，以及额外配置了 appid 和证明偏好的依赖方
+     */
+    private List<RelyingParty> relyingParties() throws Exception {
+        RelyingParty relyingParty = RelyingParty.builder()
+                .identity(RelyingPartyIdentity.builder().id("localhost").name("Passkeys Test").build())
+                .credentialRepository(repository)
+                .origins(Set.of("https://localhost"))
+                .allowOriginPort(true)
+                .allowOriginSubdomain(true)
+                .build();
+        return List.of(relyingParty, relyingParty.toBuilder()
+                .appId(new AppId("https://localhost/app-id.json"))
+                .attestationConveyancePreference(AttestationConveyancePreference.DIRECT)
+                .build());
+    }
+
+    private static UserRepository newRepository() {
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        return new UserRepository(none.getBeanProvider(CredentialLog.class),
+                none.getBeanProvider(SignCountWriteBehind.class));
+    }
+
+    private static String id(String seed) {
+        return new ByteArray(seed.getBytes(StandardCharsets.UTF_8)).getBase64Url();
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.passkeys.service;
+
+import com.example.passkeys.model.Authenticator;
+import com.example.passkeys.model.User;
+import com.example.passkeys.persistence.CredentialLog;
+import com.example.passkeys.persistence.SignCountWriteBehind;
+import com.example.passkeys.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yubico.webauthn.data.ByteArray;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * NDJSON 导入（小批次、多工作线程，让同一文件的块并行写入仓库）
+ */
+class CredentialImportServiceTest {
+
+    private static final int PARALLELISM = 4;
+    private static final int BATCH_SIZE = 7;
+    private static final int USERS = 100;
+
+    private final UserRepository repository = newRepository();
+    private final CredentialImportService service =
+            new CredentialImportService(repository, new ObjectMapper(), PARALLELISM, BATCH_SIZE);
+
+    @Test
+    void parallelBlocksImportEveryCredentialOnce() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int u = 0; u < USERS; u++) {
+            for (int c = 0; c < 3; c++) {
+                lines.add(line("user-" + u, "credential-" + u + "-" + c));
+            }
+        }
+
+        Map<String, Object> result = importLines(lines);
+
+        assertThat(result.get("records")).isEqualTo(3L * USERS);
+        assertThat(result.get("importedUsers")).isEqualTo((long) USERS);
+        assertThat(result.get("importedCredentials")).isEqualTo(3L * USERS);
+        assertThat(result.get("duplicateCredentials")).isEqualTo(0L);
+        assertThat(result.get("rejected")).isEqualTo(0L);
+        assertThat(result.get("consistent")).isEqualTo(true);
+        for (int u = 0; u < USERS; u++) {
+            assertThat(repository.findByUsername("user-" + u).orElseThrow().getAuthenticators()).hasSize(3);
+        }
+
+        // 重新导入是幂等的：全部按重复跳过
+        Map<String, Object> again = importLines(lines);
+        assertThat(again.get("importedUsers")).isEqualTo(0L);
+        assertThat(again.get("importedCredentials")).isEqualTo(0L);
+        assertThat(again.get("duplicateCredentials")).isEqualTo(3L * USERS);
+        assertThat(again.get("consistent")).isEqualTo(true);
+        assertThat(repository.getCredentialCount()).isEqualTo(3 * USERS);
+    }
+
+    @Test
+    void userSpreadAcrossBlocksIsCreatedOnceWithAllCredentials() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE * PARALLELISM * 3; i++) {
+            // 同一个用户的凭证分散在每一块中，各块并行创建同一个用户
+            lines.add(line("shared", "shared-" + i));
+            lines.add(line("user-" + i, "credential-" + i));
+        }
+
+        Map<String, Object> result = importLines(lines);
+
+        int perUser = BATCH_SIZE * PARALLELISM * 3;
+        assertThat(result.get("importedUsers")).isEqualTo(perUser + 1L);
+        assertThat(result.get("importedCredentials")).isEqualTo(2L * perUser);
+        assertThat(result.get("rejected")).isEqualTo(0L);
+        assertThat(result.get("consistent")).isEqualTo(true);
+        User shared = repository.findByUsername("shared").orElseThrow();
+        assertThat(shared.getAuthenticators()).hasSize(perUser);
+    }
+
+    @Test
+    void malformedLinesAreRejectedWithoutStoppingTheImport() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(line("alice", "alice-1"));
+        lines.add("not json");
+        lines.add("[1, 2]");
+        lines.add(line(null, "missing-username"));
+        lines.add(line("bob", "bob-1").replace(id("bob-1"), "***"));
+        lines.add(line("carol", "carol-1").replace(coseKey(), id("not a cose key")));
+        lines.add("");
+        lines.add(line("alice", "alice-2"));
+        // 同一凭证 ID 出现两次
+        lines.add(line("alice", "alice-1"));
+
+        Map<String, Object> result = importLines(lines);
+
+        // 空行不计入记录数
+        assertThat(result.get("records")).isEqualTo(8L);
+        assertThat(result.get("importedCredentials")).isEqualTo(2L);
+        assertThat(result.get("duplicateCredentials")).isEqualTo(1L);
+        assertThat(result.get("rejected")).isEqualTo(5L);
+        assertThat(result.get("consistent")).isEqualTo(true);
+        @SuppressWarnings("unchecked")
+        List<String> errors = (List<String>) result.get("errors");
+        assertThat(errors).anyMatch(e -> e.startsWith("第 2 行"))
+                .anyMatch(e -> e.contains("缺少 username"))
+                .anyMatch(e -> e.contains("credentialId 不是合法的 Base64Url"))
+                .anyMatch(e -> e.contains("publicKeyCose"));
+        assertThat(repository.findByUsername("alice").orElseThrow().getAuthenticators()).hasSize(2);
+        assertThat(repository.findByUsername("bob")).isEmpty();
+    }
+
+    @Test
+    void importIsInconsistentWhenImportedCredentialsCannotBeFound() throws IOException {
+        // 验证路径查不到刚导入的凭证（模拟索引与快照不一致）
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        UserRepository broken = new UserRepository(none.getBeanProvider(CredentialLog.class),
+                none.getBeanProvider(SignCountWriteBehind.class)) {
+            @Override
+            public Optional<Authenticator> findAuthenticatorByCredentialId(String credentialId) {
+                return Optional.empty();
+            }
+        };
+        CredentialImportService brokenService =
+                new CredentialImportService(broken, new ObjectMapper(), PARALLELISM, BATCH_SIZE);
+
+        Map<String, Object> result = brokenService.importNdjson(toStream(List.of(
+                line("alice", "alice-1"), line("bob", "bob-1"))));
+
+        assertThat(result.get("importedCredentials")).isEqualTo(2L);
+        assertThat(result.get("rejected")).isEqualTo(2L);
+        assertThat(result.get("consistent")).isEqualTo(false);
+    }
+
+    private Map<String, Object> importLines(List<String> lines) throws IOException {
+        return service.importNdjson(toStream(lines));
+    }
+
+    private static ByteArrayInputStream toStream(List<String> lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static UserRepository newRepository() {
+        StaticListableBeanFactory none = new StaticListableBeanFactory();
+        return new UserRepository(none.getBeanProvider(CredentialLog.class),
+                none.getBeanProvider(SignCountWriteBehind.class));
+    }
+
+    private static String line(String username, String credential) {
+        StringBuilder line = new StringBuilder("{");
+        if (username != null) {
+            line.append("\"username\":\"").append(username).append("\",")
+                    .append("\"userHandle\":\"").append(id("handle-" + username)).append("\",");
+        } else {
+            line.append("\"userHandle\":\"").append(id("handle-anonymous")).append("\",");
+        }
+        return line.append("\"credentialId\":\"").append(id(credential)).append("\",")
+                .append("\"publicKeyCose\":\"").append(coseKey()).append("\",")
+                .append("\"signCount\":0}")
+                .toString();
+    }
+
+    private static String id(String seed) {
+        return new ByteArray(seed.getBytes(StandardCharsets.UTF_8)).getBase64Url();
+    }
+
+    /**
+     * ES256 的 COSE_Key：{1: 2, 3: -7, -1: 1, -2: x, -3: y}（导入只校验结构和算法，坐标取固定值）
+     */
+    private static String coseKey() {
+        byte[] key = new byte[77];
+        byte[] header = {(byte) 0xA5, 0x01, 0x02, 0x03, 0x26, 0x20, 0x01, 0x21, 0x58, 0x20};
+        System.arraycopy(header, 0, key, 0, header.length);
+        key[42] = 0x22;
+        key[43] = 0x58;
+        key[44] = 0x20;
+        for (int i = 0; i < 32; i++) {
+            key[10 + i] = (byte) (i + 1);
+            key[45 + i] = (byte) (i + 33);
+        }
+        return new ByteArray(key).getBase64Url();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.passkeys.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 时间轮清理（使用手动推进的时钟）
+ */
+class ExpiringChallengeStoreTest {
+
+    private static final long TICK = 100;
+
+    private final AtomicLong now = new AtomicLong(10_000);
+
+    private ExpiringChallengeStore<String> store(int capacity) {
+        return new ExpiringChallengeStore<>("test", capacity, TICK, 8, now::get, false);
+    }
+
+    @Test
+    void entryExpiringLaterInPartialTickIsSweptAfterTheTickCompletes() {
+        ExpiringChallengeStore<String> store = store(10);
+        // 截止时间 10_150，落在 tick 101 的后半段
+        store.put("a", "challenge", 150);
+
+        // 在 tick 101 的前半段推进：条目尚未过期，必须保留
+        now.set(10_110);
+        store.advance();
+        assertThat(store.getLiveCount()).isEqualTo(1);
+
+        // 跨过 tick 边界后，tick 101 已经走完，条目应当被清理，而不是等时间轮转一整圈
+        now.set(10_200);
+        store.advance();
+        assertThat(store.getLiveCount()).isZero();
+        assertThat(store.getExpiredCount()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredEntriesDoNotCauseEvictionOfLiveEntries() {
+        ExpiringChallengeStore<String> store = store(2);
+        store.put("stale", "challenge", 150);
+        now.set(10_110);
+        store.advance();
+        now.set(10_200);
+        store.advance();
+
+        store.put("b", "challenge-b", 60_000);
+        store.put("c", "challenge-c", 60_000);
+
+        assertThat(store.getEvictedCount()).isZero();
+        assertThat(store.consume("b")).contains("challenge-b");
+        assertThat(store.consume("c")).contains("challenge-c");
+    }
+
+    @Test
+    void advanceCatchesUpOnMissedTicks() {
+        ExpiringChallengeStore<String> store = store(10);
+        store.put("a", "challenge", 50);
+        store.put("b", "challenge", 250);
+        store.put("c", "challenge", 450);
+
+        // 调度延迟：一次推进跨过多个 tick
+        now.set(10_320);
+        store.advance();
+
+        assertThat(store.getLiveCount()).isEqualTo(1);
+        assertThat(store.consume("c")).contains("challenge");
+    }
+
+    @Test
+    void consumeRejectsExpiredEntryBeforeItIsSwept() {
+        ExpiringChallengeStore<String> store = store(10);
+        store.put("a", "challenge", 50);
+
+        now.set(10_060);
+
+        assertThat(store.consume("a")).isEmpty();
+        assertThat(store.getExpiredCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.passkeys.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * RespConnection / RedisChallengeStore 对进程内 RESP 替身（SlowRedisServer）的行为
+ */
+class RedisChallengeStoreTest {
+
+    private static final ChallengeCodec<String> CODEC = new ChallengeCodec<>() {
+        @Override
+        public String encode(String value) {
+            return value;
+        }
+
+        @Override
+        public String decode(String encoded) {
+            return encoded;
+        }
+    };
+
+    private SlowRedisServer server;
+    private RespConnection connection;
+    private RedisChallengeStore<String> store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new SlowRedisServer(0);
+        server.start(0);
+        connection = new RespConnection("127.0.0.1", server.getPort(), 1000, 500);
+        store = new RedisChallengeStore<>(connection, "test:", CODEC, 5000);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connection.close();
+        server.close();
+    }
+
+    @Test
+    void putThenConsumeSucceedsOnlyOnce() {
+        store.put("a", "challenge", 60_000);
+
+        assertThat(store.consume("a")).contains("challenge");
+        // GETDEL 已经删除
+        assertThat(store.consume("a")).isEmpty();
+        assertThat(store.consume("missing")).isEmpty();
+    }
+
+    @Test
+    void entryExpiresAfterPx() throws InterruptedException {
+        store.put("a", "challenge", 20);
+        Thread.sleep(50);
+
+        assertThat(store.consume("a")).isEmpty();
+    }
+
+    @Test
+    void commandsArePipelinedOnOneConnection() throws Exception {
+        server.setDelayMillis(200);
+        int count = 50;
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            puts.add(store.putAsync("k" + i, "v" + i, 60_000));
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        List<CompletableFuture<Optional<String>>> consumes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            consumes.add(store.consumeAsync("k" + i));
+        }
+        for (int i = 0; i < count; i++) {
+            // 回复按发送顺序分派给对应的命令
+            assertThat(consumes.get(i).get(5, TimeUnit.SECONDS)).contains("v" + i);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 逐条等待需要 100 × 200ms；流水线只需要两轮往返
+        assertThat(elapsedMillis).isLessThan(2000);
+        assertThat(server.getAcceptedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void reconnectsAfterServerDropsConnection() throws Exception {
+        store.put("a", "before", 60_000);
+        server.dropConnections();
+
+        // 断开后第一条命令可能恰好写到已关闭的连接上而失败，之后的命令会重新连接
+        assertThat(sendUntilSuccess("PING")).isEqualTo("PONG");
+        assertThat(store.consume("a")).contains("before");
+        assertThat(server.getAcceptedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void stalledServerFailsInflightCommandsAndReconnects() throws Exception {
+        assertThat(connection.send("PING").get(1, TimeUnit.SECONDS)).isEqualTo("PONG");
+
+        // Redis 卡住：连接仍然存在，但不再回复
+        server.setDelayMillis(60_000);
+        CompletableFuture<Object> stalled = connection.send("PING");
+        assertThatThrownBy(() -> stalled.get(2, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(SocketTimeoutException.class);
+
+        server.setDelayMillis(0);
+        assertThat(connection.send("PING").get(1, TimeUnit.SECONDS)).isEqualTo("PONG");
+        assertThat(server.getAcceptedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void idleConnectionIsNotTreatedAsStalled() throws Exception {
+        assertThat(connection.send("PING").get(1, TimeUnit.SECONDS)).isEqualTo("PONG");
+        // 空闲时间超过读超时（500ms）
+        Thread.sleep(1200);
+
+        assertThat(connection.send("PING").get(1, TimeUnit.SECONDS)).isEqualTo("PONG");
+        assertThat(server.getAcceptedCount()).isEqualTo(1);
+    }
+
+    private Object sendUntilSuccess(String... command) throws Exception {
+        ExecutionException last = null;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            try {
+                return connection.send(command).get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                last = e;
+                Thread.sleep(50);
+            }
+        }
+        throw last;
+    }
+}
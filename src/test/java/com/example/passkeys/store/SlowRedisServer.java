@@ -0,0 +1,275 @@
+package com.example.passkeys.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 回复带固定延迟的进程内 Redis 替身（只实现挑战存储用到的 SET ... [NX] PX、GETDEL 和 PING）
+ *
+ * 模拟跨机房的共享挑战存储：每条命令在收到 --delay-millis 之后才回复，
+ * 流水线中的命令互不阻塞、按收到的顺序回复。测试中用来验证 RespConnection 和 RedisChallengeStore
+ * （延迟可以随时调整，模拟 Redis 卡住；可以断开所有连接，模拟重启），
+ * 压测时用来让服务器的请求线程大部分时间都在等待 I/O，对比平台线程池和虚拟线程在大量进行中仪式下的吞吐。
+ *
+ * 用法：
+ * mvn -Pbench test-compile exec:exec -Dbench.main=com.example.passkeys.store.SlowRedisServer \
+ *     -Dbench.args="--port 6380 --delay-millis 200"
+ */
+public final class SlowRedisServer implements AutoCloseable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private volatile long delayNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger acceptedCount = new AtomicInteger();
+    private ServerSocket listener;
+
+    private record Entry(String value, long expiresAtMillis) {
+    }
+
+    private record Reply(byte[] bytes, long dueNanos) {
+    }
+
+    public SlowRedisServer(long delayMillis) {
+        setDelayMillis(delayMillis);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 6380;
+        long delayMillis = 200;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--delay-millis" -> delayMillis = Long.parseLong(args[i + 1]);
+                default -> throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+        }
+        SlowRedisServer server = new SlowRedisServer(delayMillis);
+        server.start(port);
+        System.out.printf("SlowRedisServer 监听 127.0.0.1:%d，回复延迟 %dms%n", server.getPort(), delayMillis);
+        LockSupport.park();
+    }
+
+    /**
+     * 在 127.0.0.1 上开始监听
+     *
+     * @param port 端口，0 表示由系统分配
+     */
+    public void start(int port) throws IOException {
+        listener = new ServerSocket();
+        listener.bind(new InetSocketAddress("127.0.0.1", port));
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    serve(listener.accept());
+                }
+            } catch (IOException e) {
+                // 监听已关闭
+            }
+        }, "slow-redis-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return listener.getLocalPort();
+    }
+
+    /**
+     * 修改之后收到的命令的回复延迟
+     */
+    public void setDelayMillis(long delayMillis) {
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * 累计接受的连接数
+     */
+    public int getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * 断开所有客户端连接（模拟 Redis 重启），数据保留
+     */
+    public void dropConnections() {
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (listener != null) {
+            listener.close();
+        }
+        dropConnections();
+    }
+
+    /**
+     * 每个连接一个读线程和一个写线程：读线程登记回复的到期时刻，写线程到期后按顺序写出
+     */
+    private void serve(Socket socket) throws IOException {
+        acceptedCount.incrementAndGet();
+        connections.add(socket);
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        BlockingQueue<Reply> replies = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    byte[] reply = execute(readCommand(in));
+                    replies.add(new Reply(reply, System.nanoTime() + delayNanos));
+                }
+            } catch (IOException e) {
+                closeQuietly(socket);
+            }
+        }, "slow-redis-reader");
+        Thread writer = new Thread(() -> {
+            try {
+                while (!socket.isClosed()) {
+                    Reply reply = replies.poll(100, TimeUnit.MILLISECONDS);
+                    if (reply == null) {
+                        continue;
+                    }
+                    long wait = reply.dueNanos() - System.nanoTime();
+                    if (wait > 0) {
+                        out.flush();
+                        LockSupport.parkNanos(wait);
+                    }
+                    out.write(reply.bytes());
+                    if (replies.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                closeQuietly(socket);
+            }
+        }, "slow-redis-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    private byte[] execute(List<String> command) {
+        String name = command.isEmpty() ? "" : command.get(0).toUpperCase();
+        switch (name) {
+            case "SET" -> {
+                long ttlMillis = Long.MAX_VALUE;
+                boolean onlyIfAbsent = false;
+                for (int i = 3; i < command.size(); i++) {
+                    if ("PX".equalsIgnoreCase(command.get(i)) && i + 1 < command.size()) {
+                        ttlMillis = Long.parseLong(command.get(++i));
+                    } else if ("NX".equalsIgnoreCase(command.get(i))) {
+                        onlyIfAbsent = true;
+                    }
+                }
+                long now = System.currentTimeMillis();
+                Entry entry = new Entry(command.get(2),
+                        ttlMillis == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttlMillis);
+                if (onlyIfAbsent) {
+                    boolean[] stored = {false};
+                    entries.compute(command.get(1), (key, current) -> {
+                        if (current != null && current.expiresAtMillis() >= now) {
+                            return current;
+                        }
+                        stored[0] = true;
+                        return entry;
+                    });
+                    if (!stored[0]) {
+                        return "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+                    }
+                } else {
+                    entries.put(command.get(1), entry);
+                }
+                return "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+            }
+            case "GETDEL" -> {
+                Entry entry = entries.remove(command.get(1));
+                if (entry == null || entry.expiresAtMillis() < System.currentTimeMillis()) {
+                    return "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+                }
+                byte[] value = entry.value().getBytes(StandardCharsets.UTF_8);
+                byte[] header = ("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                byte[] reply = new byte[header.length + value.length + CRLF.length];
+                System.arraycopy(header, 0, reply, 0, header.length);
+                System.arraycopy(value, 0, reply, header.length, value.length);
+                System.arraycopy(CRLF, 0, reply, header.length + value.length, CRLF.length);
+                return reply;
+            }
+            case "PING" -> {
+                return "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+            }
+            default -> {
+                return ("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+    }
+
+    // ========== RESP 解析（只支持客户端发送的数组格式） ==========
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header.isEmpty() || header.charAt(0) != '*') {
+            throw new IOException("不支持的请求格式: " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String bulk = readLine(in);
+            if (bulk.isEmpty() || bulk.charAt(0) != '$') {
+                throw new IOException("不支持的参数格式: " + bulk);
+            }
+            byte[] data = in.readNBytes(Integer.parseInt(bulk.substring(1)));
+            readLine(in);
+            args.add(new String(data, StandardCharsets.UTF_8));
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException("连接已关闭");
+            }
+            line.append((char) b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("缺少换行符");
+        }
+        return line.toString();
+    }
+
+    private void closeQuietly(Socket socket) {
+        connections.remove(socket);
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 已经断开
+        }
+    }
+}
@@ -9,7 +9,7 @@ REM 检查 Java 是否安装
 where java >nul 2>nul
 if %errorlevel% neq 0 (
     echo ❌ 错误: 未检测到 Java
-    echo 请先安装 Java 17 或更高版本
+    echo 请先安装 Java 21 或更高版本
     pause
     exit /b 1
 )
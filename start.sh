@@ -10,7 +10,7 @@ echo ""
 # 检查 Java 是否安装
 if ! command -v java &> /dev/null; then
     echo "❌ 错误: 未检测到 Java"
-    echo "请先安装 Java 17 或更高版本"
+    echo "请先安装 Java 21 或更高版本"
     exit 1
 fi
 